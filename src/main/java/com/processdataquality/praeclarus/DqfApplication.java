@@ -16,23 +16,39 @@
 
 package com.processdataquality.praeclarus;
 
+import com.processdataquality.praeclarus.cli.HeadlessRunner;
+import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.Arrays;
 
 @SpringBootApplication
 @EnableJpaRepositories(basePackages = {
         "com.processdataquality.praeclarus.logging.repository",
+        "com.processdataquality.praeclarus.repo.cache",
         "com.processdataquality.praeclarus.repo.graph",
         "com.processdataquality.praeclarus.repo.user",
         "com.processdataquality.praeclarus.ui.repo"
 })
 //@ConfigurationPropertiesScan("com.processdataquality.praeclarus.config")
-public class DqfApplication extends SpringBootServletInitializer {
+@Push           // node progress is pushed to the browser from background runner threads
+@EnableScheduling                                  // for repository maintenance
+public class DqfApplication extends SpringBootServletInitializer
+        implements AppShellConfigurator {
 
     public static void main(String[] args) {
 
+        // 'run' runs a workflow headless, e.g. java -jar pdq.jar run --file wf.json
+        if (args.length > 0 && args[0].equals("run")) {
+            HeadlessRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         SpringApplication.run(DqfApplication.class, args);
 
     }
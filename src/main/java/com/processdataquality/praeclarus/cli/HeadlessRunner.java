@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.cli;
+
+import com.processdataquality.praeclarus.DqfApplication;
+import com.processdataquality.praeclarus.graph.Graph;
+import com.processdataquality.praeclarus.graph.GraphLoader;
+import com.processdataquality.praeclarus.graph.GraphRunner;
+import com.processdataquality.praeclarus.graph.GraphRunnerEvent;
+import com.processdataquality.praeclarus.logging.EventType;
+import com.processdataquality.praeclarus.node.Node;
+import com.processdataquality.praeclarus.node.NodeState;
+import com.processdataquality.praeclarus.node.PatternNode;
+import com.processdataquality.praeclarus.pattern.AbstractDataPattern;
+import com.processdataquality.praeclarus.plugin.uitemplate.PluginUI;
+import com.processdataquality.praeclarus.plugin.uitemplate.UITable;
+import com.processdataquality.praeclarus.reader.AbstractDataReader;
+import com.processdataquality.praeclarus.trace.TraceRecorder;
+import com.processdataquality.praeclarus.ui.repo.StoredWorkflow;
+import com.processdataquality.praeclarus.ui.repo.WorkflowStore;
+import com.processdataquality.praeclarus.writer.AbstractDataWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a stored or exported workflow from the command line, without a browser
+ * session. The application context is started without a web server, so the
+ * workflow's graph, nodes and repo commits are handled exactly as they are in the UI.
+ * <p>
+ * Usage: run (--file &lt;workflow.json&gt; | --id &lt;stored workflow id&gt;)
+ *            [--source &lt;node&gt;=&lt;path&gt;]... [--dest &lt;node&gt;=&lt;path&gt;]...
+ *            [--repair-all] [--trace &lt;trace.json&gt;]
+ * <p>
+ * where &lt;node&gt; is the label or id of a reader (for --source) or writer (for
+ * --dest) node in the workflow. Pattern nodes that pause for user input are resumed
+ * automatically: with no repairs selected, or with all detected repairs if
+ * --repair-all is given. If --trace is given, the timings of each phase of the run
+ * are written to the file in Chrome trace-event format.
+ *
+ * @author Michael Adams
+ * @date 15/7/2022
+ */
+public class HeadlessRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HeadlessRunner.class);
+
+    private static final String USAGE = "Usage: run (--file <workflow.json> | --id <stored id>) " +
+            "[--source <node>=<path>]... [--dest <node>=<path>]... [--repair-all] [--trace <trace.json>]";
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private final Map<String, String> _sources = new HashMap<>();
+    private final Map<String, String> _destinations = new HashMap<>();
+    private final List<Closeable> _openStreams = new ArrayList<>();
+    private String _file;
+    private String _storedID;
+    private boolean _repairAll;
+    private String _traceFile;
+
+
+    public static void main(String[] args) {
+        HeadlessRunner runner = new HeadlessRunner();
+        try {
+            runner.parseArgs(args);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE);
+        }
+
+        SpringApplication application = new SpringApplication(DqfApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        application.setBannerMode(Banner.Mode.OFF);
+        ConfigurableApplicationContext context = application.run();
+
+        int exitCode = runner.run();
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+
+    protected void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--file": _file = valueOf(args, ++i, arg); break;
+                case "--id": _storedID = valueOf(args, ++i, arg); break;
+                case "--source": addOverride(_sources, valueOf(args, ++i, arg)); break;
+                case "--dest": addOverride(_destinations, valueOf(args, ++i, arg)); break;
+                case "--repair-all": _repairAll = true; break;
+                case "--trace": _traceFile = valueOf(args, ++i, arg); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if ((_file == null) == (_storedID == null)) {
+            throw new IllegalArgumentException("One of --file or --id is required");
+        }
+    }
+
+
+    /**
+     * Loads and runs the workflow to completion
+     * @return the process exit code
+     */
+    protected int run() {
+        TraceRecorder recorder = new TraceRecorder();
+        if (_traceFile != null) {
+            recorder.start();
+        }
+        try {
+            Graph graph = new GraphLoader().load(readWorkflowJson());
+            applyOverrides(graph);
+            resetAll(graph);                               // always a fresh run
+            GraphRunner runner = new GraphRunner(graph);
+            runner.addNodeRunnerEventListener(this::report);
+
+            long start = System.nanoTime();
+            for (Node head : sortByLabel(graph.getNodes())) {
+                if (head.isHead() && head.canStart()) {
+                    runner.action(GraphRunner.RunnerAction.RUN, head);
+                    resumePaused(graph, runner);
+                }
+            }
+            printSummary(graph, (System.nanoTime() - start) / 1_000_000_000D);
+            return EXIT_OK;
+        }
+        catch (Exception e) {
+            LOG.error("Workflow run failed", e);
+            System.err.println("Workflow run failed: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+        finally {
+            closeStreams();
+            if (_traceFile != null) {
+                writeTrace(recorder);
+            }
+        }
+    }
+
+
+    private void writeTrace(TraceRecorder recorder) {
+        recorder.stop();
+        try {
+            recorder.write(new File(_traceFile));
+            System.out.println("Trace written to " + _traceFile);
+        }
+        catch (IOException e) {
+            System.err.println("Failed to write trace: " + e.getMessage());
+        }
+    }
+
+
+    private String readWorkflowJson() throws IOException {
+        if (_file != null) {
+            return new String(Files.readAllBytes(Paths.get(_file)), StandardCharsets.UTF_8);
+        }
+        Optional<StoredWorkflow> stored = WorkflowStore.get(_storedID);
+        if (stored.isPresent()) {
+            return stored.get().getJson();
+        }
+        throw new IOException("No stored workflow with id: " + _storedID);
+    }
+
+
+    private void applyOverrides(Graph graph) throws IOException {
+        for (Map.Entry<String, String> entry : _sources.entrySet()) {
+            Node node = findNode(graph, entry.getKey());
+            if (! (node.getPlugin() instanceof AbstractDataReader)) {
+                throw new IllegalArgumentException("Node '" + entry.getKey() + "' is not a reader");
+            }
+            ((AbstractDataReader) node.getPlugin()).setSource(entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : _destinations.entrySet()) {
+            Node node = findNode(graph, entry.getKey());
+            if (! (node.getPlugin() instanceof AbstractDataWriter)) {
+                throw new IllegalArgumentException("Node '" + entry.getKey() + "' is not a writer");
+            }
+            OutputStream stream = new BufferedOutputStream(
+                    new FileOutputStream(entry.getValue()));
+            _openStreams.add(stream);
+            AbstractDataWriter writer = (AbstractDataWriter) node.getPlugin();
+            writer.getOptions().get("Destination").setValue(entry.getValue());  // for AUTO compression
+            writer.setDestination(stream);
+        }
+    }
+
+
+    private Node findNode(Graph graph, String key) {
+        Node node = graph.getNode(key);
+        if (node != null) {
+            return node;
+        }
+        List<Node> matches = graph.getNodes().stream()
+                .filter(n -> key.equals(n.getID()) || key.equals(n.getLabel()))
+                .collect(Collectors.toList());
+        if (matches.isEmpty()) {
+            throw new IllegalArgumentException("No node with label or id: " + key);
+        }
+        if (matches.size() > 1) {
+            throw new IllegalArgumentException("Label '" + key + "' matches " +
+                    matches.size() + " nodes; use the node id instead");
+        }
+        return matches.get(0);
+    }
+
+
+    private void resetAll(Graph graph) throws Exception {
+        for (Node node : graph.getNodes()) {
+            node.reset();
+        }
+    }
+
+
+    // pattern nodes pause after detection, awaiting repair choices from the user
+    private void resumePaused(Graph graph, GraphRunner runner) throws Exception {
+        List<Node> paused = getPaused(graph);
+        while (! paused.isEmpty()) {
+            for (Node node : paused) {
+                selectRepairs(node);
+                runner.action(GraphRunner.RunnerAction.RESUME, node);
+            }
+            paused = getPaused(graph);
+        }
+    }
+
+
+    private List<Node> getPaused(Graph graph) {
+        return graph.getNodes().stream()
+                .filter(n -> n.getState() == NodeState.PAUSED)
+                .collect(Collectors.toList());
+    }
+
+
+    private void selectRepairs(Node node) {
+        if (node instanceof PatternNode) {
+            PluginUI ui = ((AbstractDataPattern) node.getPlugin()).getUI();
+            if (ui != null && _repairAll) {
+                for (UITable table : ui.extractTables()) {
+                    table.setSelectedRows(table.getTable());
+                }
+            }
+        }
+    }
+
+
+    private void report(GraphRunnerEvent event) {
+        Node node = event.getNode();
+        EventType type = event.getEventType();
+        if (type == EventType.NODE_COMPLETED || type == EventType.NODE_PAUSED) {
+            System.out.printf("%-30s %-10s %10d rows %10.3f s%n", node.getLabel(),
+                    type == EventType.NODE_PAUSED ? "detected" : "completed",
+                    rowCount(node), node.getStopWatch().getLastDurationAsSeconds());
+        }
+        else if (type == EventType.NODE_FAILED) {
+            System.out.printf("%-30s %-10s %s%n", node.getLabel(), "failed",
+                    event.getCause() != null ? event.getCause().getMessage() : "");
+        }
+    }
+
+
+    private void printSummary(Graph graph, double elapsed) {
+        System.out.println();
+        System.out.printf("%-30s %-10s %10s %12s%n", "Node", "State", "Rows", "Seconds");
+        for (Node node : sortByLabel(graph.getNodes())) {
+            System.out.printf("%-30s %-10s %10d %12.3f%n", node.getLabel(),
+                    node.getState(), rowCount(node),
+                    node.getStopWatch().getTotalDurationAsSeconds());
+        }
+        System.out.printf("Workflow '%s' completed in %.3f seconds%n", graph.getName(), elapsed);
+    }
+
+
+    private long rowCount(Node node) {
+        return node.getOutputRowCount();
+    }
+
+
+    private List<Node> sortByLabel(Set<Node> nodes) {
+        List<Node> list = new ArrayList<>(nodes);
+        list.sort(Comparator.comparing(Node::getLabel));
+        return list;
+    }
+
+
+    private void closeStreams() {
+        for (Closeable stream : _openStreams) {
+            try {
+                stream.close();
+            }
+            catch (IOException e) {
+                LOG.warn("Failed to close output stream", e);
+            }
+        }
+    }
+
+
+    private String valueOf(String[] args, int index, String arg) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + arg);
+        }
+        return args[index];
+    }
+
+
+    private void addOverride(Map<String, String> map, String value) {
+        int pos = value.indexOf('=');
+        if (pos < 1 || pos == value.length() - 1) {
+            throw new IllegalArgumentException("Expected <node>=<path>, found: " + value);
+        }
+        map.put(value.substring(0, pos), value.substring(pos + 1));
+    }
+
+}
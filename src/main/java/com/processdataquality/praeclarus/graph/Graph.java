@@ -28,10 +28,7 @@ import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Transient;
 import java.time.LocalDateTime;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 
 /**
  * @author Michael Adams
@@ -57,6 +54,12 @@ public class Graph implements HasOptions, OptionValueChangeListener {
     @Transient
     private final Set<Node> nodeSet = new HashSet<>();
 
+    @Transient
+    private final Map<String, Node> nodeIndex = new HashMap<>();      // id -> node
+
+    @Transient
+    private volatile List<Node> topologicalOrder;     // cached, null when invalidated
+
     @Transient
     private Options _options;
 
@@ -78,18 +81,39 @@ public class Graph implements HasOptions, OptionValueChangeListener {
     }
 
 
+    /**
+     * Connects two nodes
+     * @param source the source node of the connection
+     * @param target the target node of the connection
+     * @throws IllegalArgumentException if the connection would create a cycle
+     */
     public void connect(Node source, Node target) {
+        if (! canConnect(source, target)) {
+            throw new IllegalArgumentException(String.format(
+                    "Connecting '%s' to '%s' would create a cycle",
+                    source.getLabel(), target.getLabel()));
+        }
         source.connect(target);
+        invalidateOrder();
         EventLogger.addConnectorEvent(this, source, target);
     }
 
 
     public void disconnect(Node source, Node target) {
         source.disconnect(target);
+        invalidateOrder();
         EventLogger.removeConnectorEvent(this, source, target);
     }
 
 
+    /**
+     * @return true if a connection from source to target would not create a cycle
+     */
+    public boolean canConnect(Node source, Node target) {
+        return source != target && ! getDescendants(target).contains(source);
+    }
+
+
     @Override
     public Options getOptions() {
         return _options;
@@ -168,12 +192,27 @@ public class Graph implements HasOptions, OptionValueChangeListener {
     }
 
 
+    /**
+     * @return an unmodifiable view of all the nodes in this graph
+     */
+    public Set<Node> getNodes() { return Collections.unmodifiableSet(nodeSet); }
+
+
     public void addNode(Node node) {
         nodeSet.add(node);
+        nodeIndex.put(node.getID(), node);
+        invalidateOrder();
         EventLogger.nodeAddedEvent(this, node);
     }
 
 
+    /**
+     * @param id the id of a node
+     * @return the node in this graph with the id, or null if there is none
+     */
+    public Node getNode(String id) { return nodeIndex.get(id); }
+
+
     /**
      * Removes a node from the workspace, disconnecting it from all predecessor
      * and successor nodes
@@ -183,15 +222,35 @@ public class Graph implements HasOptions, OptionValueChangeListener {
         node.previous().forEach(previous -> previous.removeNext(node));
         node.next().forEach(next -> next.removePrevious(node));
         nodeSet.remove(node);
+        nodeIndex.remove(node.getID());
+        invalidateOrder();
         EventLogger.nodeRemovedEvent(this, node);
     }
 
 
+    /**
+     * @return the nodes of this graph in topological order, i.e. each node appears
+     * after all of its predecessors. The order is cached until the graph changes.
+     */
+    public List<Node> getTopologicalOrder() {
+        List<Node> order = topologicalOrder;
+        if (order == null) {
+            order = Collections.unmodifiableList(sortTopologically());
+            topologicalOrder = order;
+        }
+        return order;
+    }
+
+
+    /**
+     * @return the head nodes (those without predecessors) of all branches in this graph
+     */
     public Set<Node> getHeads() {
-        if (!nodeSet.isEmpty()) {
-            return getHeads(nodeSet.iterator().next());      // start from any node
+        Set<Node> heads = new LinkedHashSet<>();
+        for (Node node : getTopologicalOrder()) {
+            if (node.isHead()) heads.add(node);
         }
-        return Collections.emptySet();
+        return heads;
     }
 
 
@@ -202,22 +261,22 @@ public class Graph implements HasOptions, OptionValueChangeListener {
      */
     public Set<Node> getHeads(Node node) {
         Set<Node> heads = new HashSet<>();
-        for (Node previous : node.previous()) {
-            if (previous.isHead()) {
-                heads.add(previous);
-            }
-            else heads.addAll(getHeads(previous)); // check all pre-set nodes recursively
+        for (Node ancestor : reachable(node, true)) {
+            if (ancestor.isHead()) heads.add(ancestor);
         }
-        if (heads.isEmpty()) heads.add(node);              // the node passed is a head
         return heads;
     }
 
 
+    /**
+     * @return the tail nodes (those without successors) of all branches in this graph
+     */
     public Set<Node> getTails() {
-        if (!nodeSet.isEmpty()) {
-            return getTails(nodeSet.iterator().next());      // start from any node
+        Set<Node> tails = new LinkedHashSet<>();
+        for (Node node : getTopologicalOrder()) {
+            if (node.isTail()) tails.add(node);
         }
-        return Collections.emptySet();
+        return tails;
     }
 
     
@@ -228,15 +287,61 @@ public class Graph implements HasOptions, OptionValueChangeListener {
      */
     public Set<Node> getTails(Node node) {
         Set<Node> tails = new HashSet<>();
-        for (Node next : node.next()) {
-            if (next.isTail()) {
-                tails.add(next);
-            }
-            else tails.addAll(getTails(next));  // check all post-set nodes recursively
+        for (Node descendant : reachable(node, false)) {
+            if (descendant.isTail()) tails.add(descendant);
         }
-        if (tails.isEmpty()) tails.add(node);     // the node passed is a tail
         return tails;
-   }
+    }
+
+
+    /**
+     * @param node a node
+     * @return all nodes that are eventual targets of the node, not including itself
+     */
+    public Set<Node> getDescendants(Node node) {
+        Set<Node> descendants = reachable(node, false);
+        descendants.remove(node);
+        return descendants;
+    }
+
+
+    // the node and all nodes reachable from it, following predecessors or successors
+    private Set<Node> reachable(Node node, boolean backwards) {
+        Set<Node> visited = new HashSet<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (! stack.isEmpty()) {
+            Node current = stack.pop();
+            if (visited.add(current)) {
+                (backwards ? current.previous() : current.next()).forEach(stack::push);
+            }
+        }
+        return visited;
+    }
+
+
+    // Kahn's algorithm: repeatedly take nodes that have no unsorted predecessors
+    private List<Node> sortTopologically() {
+        Map<Node, Integer> inputs = new HashMap<>();
+        Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : nodeSet) {
+            inputs.put(node, node.previous().size());
+            if (node.isHead()) ready.add(node);
+        }
+        List<Node> order = new ArrayList<>(nodeSet.size());
+        while (! ready.isEmpty()) {
+            Node node = ready.poll();
+            order.add(node);
+            for (Node next : node.next()) {
+                Integer remaining = inputs.merge(next, -1, Integer::sum);
+                if (remaining == 0) ready.add(next);
+            }
+        }
+        return order;
+    }
+
+
+    private void invalidateOrder() { topologicalOrder = null; }
 
 
     public Options refreshOptions() {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.graph;
+
+import com.processdataquality.praeclarus.logging.EventLogger;
+import com.processdataquality.praeclarus.node.Node;
+import com.processdataquality.praeclarus.node.NodeLoader;
+import com.processdataquality.praeclarus.repo.graph.GraphStore;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.configurationprocessor.json.JSONArray;
+import org.springframework.boot.configurationprocessor.json.JSONException;
+import org.springframework.boot.configurationprocessor.json.JSONObject;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Builds a Graph and its connected Nodes from a stored workflow's json, independent
+ * of any UI.
+ *
+ * @author Michael Adams
+ * @date 15/7/2022
+ */
+public class GraphLoader {
+
+    /**
+     * Loads a complete graph
+     * @param jsonStr the workflow json, as stored or downloaded
+     * @return the loaded graph, with all its nodes added and connected
+     */
+    public Graph load(String jsonStr) throws JSONException, IOException {
+        EventLogger.ignoreEvents();                  // suppress events while loading
+        try {
+            JSONObject json = new JSONObject(jsonStr);
+            Graph graph = loadGraph(json, jsonStr);
+            Map<String, Node> nodes = loadNodes(json.getJSONArray("vertices"));
+            nodes.values().forEach(graph::addNode);
+            JSONArray connectors = json.getJSONArray("connectors");
+            for (int i=0; i < connectors.length(); i++) {
+                JSONObject connector = connectors.getJSONObject(i);
+                Node source = nodes.get(connector.getString("source"));
+                Node target = nodes.get(connector.getString("target"));
+                if (! (source == null || target == null)) {
+                    graph.connect(source, target);
+                }
+            }
+            return graph;
+        }
+        finally {
+            EventLogger.captureEvents();
+        }
+    }
+
+
+    public Graph loadGraph(JSONObject json, String content) throws JSONException {
+
+        // check if this one is persisted
+        String id = json.getString("id");
+        Optional<Graph> optional = GraphStore.get(id);
+        if (optional.isPresent()) {
+            Graph graph = optional.get();
+            graph.refreshOptions();
+            return graph;
+        }
+
+        // unknown to this deployment
+        Graph.Builder builder = new Graph.Builder(json.getString("creator"))
+                .id(id)
+                .name(json.getString("name"))
+                .owner(json.getString("owner"))
+                .creationTime(strToDateTime(json.getString("creationTime")))
+                .userContent(content);
+
+        String description = json.optString("description");
+        if (StringUtils.isNotEmpty(description)) {
+            builder.description(description);
+        }
+
+        String lastSaved = json.optString("lastSavedTime");
+        if (StringUtils.isNotEmpty(lastSaved)) {
+            builder.lastSavedTime(strToDateTime(lastSaved));
+        }
+
+        return builder.build();
+    }
+
+
+    /**
+     * @param array the json array of vertices, each of which contains a node
+     * @return a map of node id to node
+     */
+    private Map<String, Node> loadNodes(JSONArray array) throws JSONException, IOException {
+        Map<String, Node> nodeMap = new HashMap<>();
+        NodeLoader nodeLoader = new NodeLoader();
+        for (int i=0; i < array.length(); i++) {
+            Node node = nodeLoader.fromJson(array.getJSONObject(i).getJSONObject("node"));
+            if (node != null) {
+                nodeMap.put(node.getID(), node);
+            }
+        }
+        return nodeMap;
+    }
+
+
+    public static LocalDateTime strToDateTime(String s) {
+        return LocalDateTime.parse(s, EventLogger.dtFormatter);
+    }
+
+}
@@ -17,27 +17,59 @@
 package com.processdataquality.praeclarus.graph;
 
 import com.processdataquality.praeclarus.exception.NodeRunnerException;
+import com.processdataquality.praeclarus.exception.ReaderException;
 import com.processdataquality.praeclarus.logging.EventLogger;
 import com.processdataquality.praeclarus.logging.EventType;
 import com.processdataquality.praeclarus.node.*;
-
-import java.util.HashSet;
-import java.util.Set;
+import com.processdataquality.praeclarus.trace.Trace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
+ * Runs the nodes of a graph. Nodes are scheduled by in-degree: a node is submitted
+ * to the executor as soon as all of its predecessors within the current run have
+ * completed, so independent branches of a workflow run concurrently and join at
+ * any node with multiple inputs. Actions may be launched asynchronously, and a
+ * running workflow may be stopped, which cancels its executing nodes.
+ *
  * @author Michael Adams
  * @date 25/5/21
  */
 public class GraphRunner implements NodeStateChangeListener {
 
-    public enum RunnerState { RUNNING, STEPPING, IDLE }
+    public enum RunnerState { RUNNING, STEPPING, STOPPING, IDLE }
     public enum RunnerAction { RUN, STEP, STEP_BACK, RESUME, STOP }
 
-    private RunnerState _runnerState = RunnerState.IDLE;
+    private static final Logger LOG = LoggerFactory.getLogger(GraphRunner.class);
+
+    private volatile RunnerState _runnerState = RunnerState.IDLE;
     private Graph _graph;
-    private final Set<GraphRunnerEventListener> _eventListeners = new HashSet<>();
-    private final Set<GraphRunnerStateChangeListener> _stateListeners = new HashSet<>();
-    private Node _stepToNode = null;
+
+    // notified from node threads, while views add and remove themselves on the UI thread
+    private final Set<GraphRunnerEventListener> _eventListeners =
+            new CopyOnWriteArraySet<>();
+    private final Set<GraphRunnerStateChangeListener> _stateListeners =
+            new CopyOnWriteArraySet<>();
+    private Executor _executor;                      // null for the shared node executor
+
+    // scheduling state for the current run, guarded by 'this'
+    private final Map<Node, Integer> _pending = new HashMap<>();  // node -> unfinished inputs
+    private int _inFlight = 0;                       // nodes submitted but not yet returned
+    private Throwable _failure;                      // first failure of the current run
+    private Node _failedNode;
+    private boolean _cancelled;                      // the current run has been stopped
+    private final Map<Node, Thread> _executing = new HashMap<>();
+    private SecurityContext _securityContext;        // of the thread that started the run
 
     public GraphRunner() { }
 
@@ -71,7 +103,6 @@ public class GraphRunner implements NodeStateChangeListener {
 
     
     private void step(Node node) throws NodeRunnerException {
-        _stepToNode = node;
         launch(node, RunnerState.STEPPING);
     }
 
@@ -79,18 +110,35 @@ public class GraphRunner implements NodeStateChangeListener {
     public void setGraph(Graph graph) { _graph = graph; }
 
 
+    /**
+     * Sets the executor used to run nodes. By default, the bounded pool shared by all
+     * runners is used.
+     * @param executor the executor to use, or null for the default
+     */
+    public void setExecutor(Executor executor) {
+        _executor = executor;
+    }
+
+
+    private Executor getExecutor() {
+        return _executor != null ? _executor : RunnerExecutors.nodes();
+    }
+
+
     private void run(Node node) throws NodeRunnerException {
         launch(node, RunnerState.RUNNING);
     }
 
 
     private void resume(Node node) throws NodeRunnerException {
-        try {
+        captureSecurityContext();
+        try (Trace.Span span = Trace.begin("node", "run", node.getLabel())) {
             node.run();          // pattern node - run() will call part 2 of node's run cmd
         }
         catch (Throwable t) {
-            throw new NodeRunnerException(t.getMessage(), t.getCause());
+            fail(node, t);
         }
+        awaitQuiescence();       // any successors released by the resume
     }
 
 
@@ -101,7 +149,7 @@ public class GraphRunner implements NodeStateChangeListener {
             announceNodeRollback(node);
         }
         catch (Throwable t) {
-            throw new NodeRunnerException(t.getMessage(), t.getCause());
+            throw new NodeRunnerException(t.getMessage(), t);
         }
     }
 
@@ -112,14 +160,79 @@ public class GraphRunner implements NodeStateChangeListener {
             case STEP : step(node); break;
             case STEP_BACK : stepBack(node); break;
             case RESUME : resume(node); break;
-            case STOP : reset(); break;
+            case STOP : cancel(); break;
         }
     }
 
 
+    /**
+     * Performs an action on a background thread, so that the caller (e.g. a UI
+     * request thread) is not blocked for the duration of the run. A STOP action is
+     * performed immediately.
+     * @param runnerAction the action to perform
+     * @param node the node to perform it on
+     * @return a future that completes when the action has finished: exceptionally with
+     * a NodeRunnerException if a node failed, or a CancellationException if the run
+     * was stopped
+     */
+    public CompletableFuture<Void> actionAsync(RunnerAction runnerAction, Node node) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (runnerAction == RunnerAction.STOP) {
+            cancel();
+            future.complete(null);
+            return future;
+        }
+
+        Runnable task = () -> {
+            try {
+                action(runnerAction, node);
+                future.complete(null);
+            }
+            catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+        try {
+            RunnerExecutors.workflows().execute(new DelegatingSecurityContextRunnable(
+                    task, SecurityContextHolder.getContext()));
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(new NodeRunnerException(
+                    "Unable to start workflow: " + e.getMessage(), e));
+        }
+        return future;
+    }
+
+
+    /**
+     * Stops the current run. No further nodes are started, and the plugins of nodes
+     * currently executing are asked to cancel and their threads interrupted. The
+     * runner stays STOPPING until those nodes have returned, so that a new run can't
+     * start while they still count against the current one.
+     */
+    public void cancel() {
+        synchronized (this) {
+            _pending.clear();
+            if (_inFlight > 0) {
+                _cancelled = true;
+                _executing.forEach((node, thread) -> {
+                    node.getPlugin().cancel();
+                    thread.interrupt();
+                });
+                _runnerState = RunnerState.STOPPING;   // idle once the launch has drained
+            }
+            else _runnerState = RunnerState.IDLE;
+        }
+        announceStateChanged(_runnerState);
+    }
+
+
     public void reset() {
-        setState(RunnerState.IDLE);
-        _stepToNode = null;
+        synchronized (this) {
+            _pending.clear();
+            _runnerState = RunnerState.IDLE;
+        }
+        announceStateChanged(_runnerState);
     }
 
 
@@ -131,42 +244,234 @@ public class GraphRunner implements NodeStateChangeListener {
             throw new NodeRunnerException("No node selected to run");
         }
 
-        if (_runnerState == RunnerState.IDLE) {
-            setState(launchState);
+        synchronized (this) {
+            if (_runnerState != RunnerState.IDLE) {
+                throw new NodeRunnerException("Workflow is already running");
+            }
+            _runnerState = launchState;
         }
-        else throw new NodeRunnerException("Workflow is already running");
+        announceStateChanged(launchState);
 
-        try {
-            // check all previous have completed
-            if (node.hasCompleted()) {
-                runNext(node);
+        captureSecurityContext();
+        resetUnloadableInputs(node, launchState == RunnerState.RUNNING);
+        List<Node> ready = schedule(node, launchState == RunnerState.RUNNING);
+        ready.forEach(this::submit);
+        awaitQuiescence();
+    }
+
+
+    /**
+     * Builds the set of nodes to run for this launch - the target node and any
+     * incomplete ancestors, plus (for a full run) all descendants of the target and
+     * their incomplete ancestors - and the number of unfinished inputs each has
+     * @return the nodes that are ready to start now
+     */
+    private synchronized List<Node> schedule(Node target, boolean includeDescendants) {
+        _pending.clear();
+        _inFlight = 0;
+        _failure = null;
+        _failedNode = null;
+        _cancelled = false;
+
+        addWithIncompleteAncestors(target);
+        if (includeDescendants) {
+            _graph.getDescendants(target).forEach(this::addWithIncompleteAncestors);
+        }
+
+        List<Node> ready = new ArrayList<>();
+        for (Map.Entry<Node, Integer> entry : _pending.entrySet()) {
+            Node node = entry.getKey();
+            int inputs = 0;
+            for (Node previous : node.previous()) {
+                if (_pending.containsKey(previous)) inputs++;
             }
-            else if (completeAllPrevious(node)) {
-                start(node);
+            entry.setValue(inputs);
+            if (inputs == 0 && node.canStart()) {
+                ready.add(node);
             }
         }
-        catch (Exception e) {
-            throw new NodeRunnerException(e.getMessage(), e.getCause());
+        return ready;
+    }
+
+
+    private void addWithIncompleteAncestors(Node node) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (! stack.isEmpty()) {
+            Node current = stack.pop();
+            if (_pending.containsKey(current) || current.hasCompleted()) continue;
+            _pending.put(current, 0);
+            current.previous().forEach(stack::push);
         }
     }
 
 
-    private boolean completeAllPrevious(Node node) throws Exception {
-        for (Node previous : node.previous()) {
-            if (completeAllPrevious(previous)) {
-                if (previous.canStart()) {
-                    start(previous);
-                    return false;
+    /*
+     * Resets any completed node that would provide an input to this launch, but whose
+     * deferred output is no longer in the repo, so that the run re-executes it. This
+     * reads the repo, so is done before scheduling rather than while holding the lock;
+     * the outputs themselves are loaded by the nodes that take them as inputs.
+     */
+    private void resetUnloadableInputs(Node target, boolean includeDescendants) {
+        Deque<Node> stack = new ArrayDeque<>(target.previous());
+        if (includeDescendants) {
+            _graph.getDescendants(target).forEach(node -> stack.addAll(node.previous()));
+        }
+        Set<Node> visited = new HashSet<>();
+        while (! stack.isEmpty()) {
+            Node current = stack.pop();
+            if (! visited.add(current)) continue;
+            if (current.hasCompleted() && ! current.hasLoadableOutput()) {
+                try {
+                    current.reset();
                 }
-                else if (!previous.hasCompleted()) {
-                    return false;
+                catch (Exception e) {
+                    LOG.error("Failed to reset node '{}'", current.getLabel(), e);
                 }
             }
+            if (! current.hasCompleted()) {
+                stack.addAll(current.previous());
+            }
+        }
+    }
+
+
+    private void submit(Node node) {
+        synchronized (this) {
+            _inFlight++;
+        }
+        Runnable task = () -> execute(node);
+        if (_securityContext != null) {
+            task = new DelegatingSecurityContextRunnable(task, _securityContext);
+        }
+        try {
+            getExecutor().execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            fail(node, e);
+            taskFinished();
+        }
+    }
+
+
+    private void execute(Node node) {
+        try {
+            if (executionStarted(node)) {
+                start(node);
+            }
         }
+        catch (Throwable t) {
+            if (isCancelled() || t instanceof CancellationException
+                    || t instanceof InterruptedException) {
+                cancelled(node);
+            }
+            else {
+                fail(node, t);
+            }
+        }
+        finally {
+            executionEnded(node);
+            taskFinished();
+        }
+    }
+
+
+    // registers the thread running a node so it can be interrupted if the run is stopped
+    private synchronized boolean executionStarted(Node node) {
+        if (_cancelled) return false;
+        node.getPlugin().resetCancel();
+        _executing.put(node, Thread.currentThread());
         return true;
     }
 
 
+    private void executionEnded(Node node) {
+        synchronized (this) {
+            _executing.remove(node);
+        }
+        Thread.interrupted();               // don't leak an interrupt to the pool thread
+    }
+
+
+    private synchronized boolean isCancelled() { return _cancelled; }
+
+
+    private synchronized void taskFinished() {
+        if (--_inFlight <= 0) {
+            notifyAll();
+        }
+    }
+
+
+    private void fail(Node node, Throwable t) {
+        LOG.error("Node '{}' failed", node.getLabel(), t);
+        synchronized (this) {
+            if (_failure == null) {
+                _failure = t;
+                _failedNode = node;
+            }
+        }
+        announceNodeFailed(node, t);
+    }
+
+
+    private void cancelled(Node node) {
+        LOG.info("Node '{}' cancelled", node.getLabel());
+        resetQuietly(node);
+        announceNodeCancelled(node);
+    }
+
+
+    /**
+     * Blocks until no nodes of the current run are executing. The run is finished
+     * when nothing is left that can progress, i.e. no node in the run is paused
+     * awaiting user input.
+     * @throws NodeRunnerException if any node of the run failed
+     * @throws CancellationException if the run was stopped
+     */
+    private void awaitQuiescence() throws NodeRunnerException {
+        Throwable failure;
+        Node failedNode;
+        boolean finished;
+        boolean cancelled;
+        synchronized (this) {
+            while (_inFlight > 0) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NodeRunnerException("Interrupted while awaiting workflow", e);
+                }
+            }
+            failure = _failure;
+            failedNode = _failedNode;
+            cancelled = _cancelled;
+            _failure = null;
+            _failedNode = null;
+            _cancelled = false;
+            finished = failure != null || cancelled || _pending.keySet().stream().noneMatch(
+                    n -> n.getState() == NodeState.PAUSED);
+        }
+
+        if (finished) {
+            reset();
+        }
+        if (failure != null) {
+            resetQuietly(failedNode);
+            throw new NodeRunnerException(failure.getMessage(), failure);
+        }
+        if (cancelled) {
+            throw new CancellationException("Workflow run stopped");
+        }
+    }
+
+
+    private void captureSecurityContext() {
+        _securityContext = SecurityContextHolder.getContext();
+    }
+
+
     private void rollbackAllNext(Node node) throws Exception {
         for (Node next : node.next()) {
             if (next.hasCompleted()) {
@@ -179,9 +484,67 @@ public class GraphRunner implements NodeStateChangeListener {
 
 
     private void start(Node node) throws Exception {
+        node.removeStateListener(this);            // ensure added only once
         node.addStateListener(this);
         node.runPreTask();
-        node.run();
+
+        WriterNode writer = streamingWriter(node);
+        if (writer != null) {
+            writer.removeStateListener(this);
+            writer.addStateListener(this);
+            writer.runPreTask();
+            try (Trace.Span span = Trace.begin("node", "stream", node.getLabel())) {
+                new StreamingPipeline((ReaderNode) node, writer).run();
+            }
+        }
+        else {
+            awaitFullLoads(node);
+            int previewRows = previewRows(node);
+            try (Trace.Span span = Trace.begin("node", "run", node.getLabel())) {
+                if (previewRows > 0) {
+                    ((ReaderNode) node).runWithPreview(previewRows);
+                }
+                else node.run();
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of rows to preview if the node is a reader stepped to on its
+     * own, i.e. no other node in this run waits on its output, else 0
+     */
+    private synchronized int previewRows(Node node) {
+        if (_runnerState == RunnerState.STEPPING && node instanceof ReaderNode &&
+                node.next().stream().noneMatch(_pending::containsKey)) {
+            return RunnerExecutors.previewRows();
+        }
+        return 0;
+    }
+
+
+    // nodes run on full data, so wait on any reader input still loading after a preview
+    private void awaitFullLoads(Node node) throws ReaderException, InterruptedException {
+        for (Node previous : node.previous()) {
+            if (previous instanceof ReaderNode) {
+                ((ReaderNode) previous).awaitFullLoad();
+            }
+        }
+    }
+
+
+    /**
+     * @return the writer node that a reader node may stream its data into, if the
+     * writer is part of a full run, or null if it may not
+     */
+    private synchronized WriterNode streamingWriter(Node node) {
+        if (_runnerState == RunnerState.RUNNING) {
+            WriterNode writer = StreamingPipeline.fusableWriter(node);
+            if (writer != null && _pending.containsKey(writer)) {
+                return writer;
+            }
+        }
+        return null;
     }
 
 
@@ -189,37 +552,50 @@ public class GraphRunner implements NodeStateChangeListener {
         node.runPostTask();
         announceNodeCompleted(node);
 
-        switch (_runnerState) {
-            case STEPPING: if (node == _stepToNode) {
-                reset();
-                break;
-            } 
-            case RUNNING: runNext(node); break;
-            case IDLE: node.reset(); break;
+        if (_runnerState == RunnerState.IDLE || _runnerState == RunnerState.STOPPING) {
+            node.reset();
+        }
+        else {
+            release(node).forEach(this::submit);
         }
     }
 
 
-    private void runNext(Node node) throws Exception {
-        if (node.hasNext()) {
-            for (Node next : node.next()) {
-                if (next.canStart() && completeAllPrevious(next)) {
-                    start(next);
+    /**
+     * Removes a completed node from the current run, and decrements the count of
+     * unfinished inputs of each of its successors in the run
+     * @return the successors that are now ready to start
+     */
+    private synchronized List<Node> release(Node node) {
+        if (_pending.remove(node) == null || _failure != null) {
+            return Collections.emptyList();
+        }
+        List<Node> ready = new ArrayList<>();
+        for (Node next : node.next()) {
+            Integer inputs = _pending.get(next);
+            if (inputs != null) {
+                _pending.put(next, --inputs);
+                if (inputs == 0 && next.canStart()) {
+                    ready.add(next);
                 }
             }
         }
-        else {
-            reset();
-        }
+        return ready;
     }
 
 
-    private void setState(RunnerState state) {
-        _runnerState = state;
-        announceStateChanged(_runnerState);
+    private void resetQuietly(Node node) {
+        if (node != null) {
+            try {
+                node.reset();
+            }
+            catch (Exception e) {
+                LOG.error("Failed to reset node '{}'", node.getLabel(), e);
+            }
+        }
     }
 
-    
+
     private void announceStateChanged(RunnerState state) {
         _stateListeners.forEach(l -> l.runnerStateChanged(state));
     }
@@ -240,32 +616,49 @@ public class GraphRunner implements NodeStateChangeListener {
     }
 
 
+    private void announceNodeCancelled(Node node) {
+        announceNodeEvent(EventType.NODE_CANCELLED, node);
+    }
+
+
+    private void announceNodeFailed(Node node, Throwable cause) {
+        announceNodeEvent(new GraphRunnerEvent(EventType.NODE_FAILED, node, cause),
+                cause.getMessage());
+    }
+
+
     private void announceNodeEvent(EventType eventType, Node node) {
-        _eventListeners.forEach(l -> l.runnerEvent(new GraphRunnerEvent(eventType, node)));
-        EventLogger.nodeExecutionEvent(_graph, node, eventType,
+        announceNodeEvent(new GraphRunnerEvent(eventType, node),
                 getLogComment(eventType, node));
     }
 
 
+    private void announceNodeEvent(GraphRunnerEvent event, String comment) {
+        _eventListeners.forEach(l -> l.runnerEvent(event));
+        EventLogger.nodeExecutionEvent(_graph, event.getNode(), event.getEventType(),
+                comment);
+    }
+
+
     private String getLogComment(EventType eventType, Node node) {
         if (node instanceof ReaderNode) {
             if (eventType == EventType.NODE_COMPLETED) {
                 return getLogComment("loaded",
-                        node.getOutput().rowCount(),
+                        node.getOutputRowCount(),
                         node.getStopWatch().getDurationAsSeconds());
             }
         }
         if (node instanceof WriterNode) {
             if (eventType == EventType.NODE_COMPLETED) {
                 return getLogComment("wrote",
-                        node.getOutput().rowCount(),
+                        node.getOutputRowCount(),
                         node.getStopWatch().getDurationAsSeconds());
             }
         }
         if (node instanceof ActionNode) {
             if (eventType == EventType.NODE_COMPLETED) {
                 return getLogComment("acted on",
-                        node.getOutput().rowCount(),
+                        node.getOutputRowCount(),
                         node.getStopWatch().getDurationAsSeconds());
             }
         }
@@ -279,7 +672,7 @@ public class GraphRunner implements NodeStateChangeListener {
             }
             else if (eventType == EventType.NODE_COMPLETED) {
                 return getLogComment("repaired",
-                        node.getOutput().rowCount(),
+                        node.getOutputRowCount(),
                         node.getStopWatch().getLastDurationAsSeconds());
             }
         }
@@ -287,7 +680,7 @@ public class GraphRunner implements NodeStateChangeListener {
     }
 
 
-    private String getLogComment(String action, int rows, double seconds) {
+    private String getLogComment(String action, long rows, double seconds) {
         return String.format("%s %d rows in %.3f seconds", action, rows, seconds);
     }
 
@@ -27,10 +27,16 @@ public class GraphRunnerEvent {
 
     private final EventType eventType;
     private final Node node;
+    private final Throwable cause;             // set for failure events
 
     public GraphRunnerEvent(EventType eventType, Node node) {
+        this(eventType, node, null);
+    }
+
+    public GraphRunnerEvent(EventType eventType, Node node, Throwable cause) {
         this.eventType = eventType;
         this.node = node;
+        this.cause = cause;
     }
 
 
@@ -38,4 +44,7 @@ public class GraphRunnerEvent {
 
 
     public EventType getEventType() { return eventType; }
+
+
+    public Throwable getCause() { return cause; }
 }
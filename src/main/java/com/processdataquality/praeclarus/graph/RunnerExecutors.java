@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.graph;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the application-wide executors used to run workflows. The node executor is
+ * bounded, so concurrently executing nodes across all sessions share a fixed number
+ * of threads. The workflow executor runs each launched action on behalf of its
+ * caller (e.g. a UI request thread), which then returns immediately. The parse
+ * executor is separate from the node executor, so a running node can split its work
+ * across it without waiting on the threads other nodes are holding. The load executor
+ * completes reads in the background after a reader node has published a preview of
+ * its first rows.
+ *
+ * @author Michael Adams
+ * @date 14/7/2022
+ */
+@Component
+public class RunnerExecutors {
+
+    private static ExecutorService nodeExecutor;
+    private static ExecutorService workflowExecutor;
+    private static ExecutorService parseExecutor;
+    private static ExecutorService loadExecutor;
+    private static int previewRows = 1000;
+
+    public RunnerExecutors(@Value("${pdq.runner.node-threads:0}") int nodeThreads,
+                           @Value("${pdq.runner.parse-threads:0}") int parseThreads,
+                           @Value("${pdq.runner.preview-rows:1000}") int rows) {
+        init(nodeThreads, parseThreads);
+        previewRows = rows;
+    }
+
+
+    /**
+     * @return the executor on which individual nodes are run
+     */
+    public static synchronized ExecutorService nodes() {
+        if (nodeExecutor == null) init(0, 0);      // not running within a Spring context
+        return nodeExecutor;
+    }
+
+
+    /**
+     * @return the executor on which runner actions are launched and awaited
+     */
+    public static synchronized ExecutorService workflows() {
+        if (workflowExecutor == null) init(0, 0);
+        return workflowExecutor;
+    }
+
+
+    /**
+     * @return the executor on which readers parse parts of a single input in parallel
+     */
+    public static synchronized ExecutorService parsers() {
+        if (parseExecutor == null) init(0, 0);
+        return parseExecutor;
+    }
+
+
+    /**
+     * @return the executor on which reads continue after a preview has been published
+     */
+    public static synchronized ExecutorService loaders() {
+        if (loadExecutor == null) init(0, 0);
+        return loadExecutor;
+    }
+
+
+    /**
+     * @return the number of rows a reader node publishes as a preview when it is
+     * stepped to on its own, or 0 if previews are disabled
+     */
+    public static int previewRows() { return previewRows; }
+
+
+    /**
+     * @return the number of threads in the parse executor
+     */
+    public static int parserCount() {
+        ExecutorService executor = parsers();
+        return executor instanceof ThreadPoolExecutor ?
+                ((ThreadPoolExecutor) executor).getMaximumPoolSize() : 1;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown(workflowExecutor);
+        shutdown(nodeExecutor);
+        shutdown(parseExecutor);
+        shutdown(loadExecutor);
+    }
+
+
+    private static synchronized void init(int nodeThreads, int parseThreads) {
+        if (nodeExecutor != null) return;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int poolSize = nodeThreads > 0 ? nodeThreads : Math.max(2, cores);
+        nodeExecutor = Executors.newFixedThreadPool(poolSize, threadFactory("pdq-node-runner"));
+        parseExecutor = Executors.newFixedThreadPool(parseThreads > 0 ? parseThreads : cores,
+                threadFactory("pdq-parser"));
+
+        // launches mostly wait on nodes, so are cheap and unbounded
+        workflowExecutor = Executors.newCachedThreadPool(threadFactory("pdq-workflow"));
+        loadExecutor = Executors.newCachedThreadPool(threadFactory("pdq-loader"));
+    }
+
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+
+    private static void shutdown(ExecutorService executor) {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
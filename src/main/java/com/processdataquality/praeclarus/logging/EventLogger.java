@@ -22,13 +22,14 @@ import com.processdataquality.praeclarus.logging.repository.*;
 import com.processdataquality.praeclarus.node.Node;
 import com.processdataquality.praeclarus.option.Option;
 import com.processdataquality.praeclarus.security.SecurityService;
+import com.processdataquality.praeclarus.trace.Trace;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * @author Michael Adams
@@ -40,7 +41,7 @@ public class EventLogger {
     public static final DateTimeFormatter dtFormatter =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
-    private static final Set<LogEventListener> listeners = new HashSet<>();
+    private static final Set<LogEventListener> listeners = new CopyOnWriteArraySet<>();
     private static boolean capturing = true;
 
     private static AuthenticationEventRepository authenticationEventRepository;
@@ -172,6 +173,16 @@ public class EventLogger {
         NodeExecutionEvent event = new NodeExecutionEvent(graph, node, eventType,
                 loggedOnUserName(), outcome);
         save(nodeExecutionEventRepository, event);
+
+        // if the node's output commit is still queued, record its id once written
+        if (event.getCommitId() == null && capturing) {
+            node.getCommitFuture().thenAccept(commitID -> {
+                if (commitID != null) {
+                    event.setCommitId(commitID);
+                    nodeExecutionEventRepository.save(event);
+                }
+            });
+        }
     }
 
 
@@ -221,7 +232,9 @@ public class EventLogger {
 
     private static <T extends AbstractLogEvent> void save(CrudRepository<T, Long> repo, T event) {
         if (capturing) {
-            repo.save(event);
+            try (Trace.Span span = Trace.begin("log", "save")) {
+                repo.save(event);
+            }
             announce(event);
         }
     }
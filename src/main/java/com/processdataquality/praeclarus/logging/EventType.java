@@ -54,6 +54,8 @@ public enum EventType {
     NODE_COMPLETED("Node completed"),
     NODE_ROLLBACK("Node rolled back"),
     NODE_PAUSED("Node paused"),
+    NODE_FAILED("Node failed"),
+    NODE_CANCELLED("Node cancelled"),
     NODE_PATTERN_DETECTED("Pattern Node detect"),
     NODE_PATTERN_REPAIRED("Pattern node repair")
     ;
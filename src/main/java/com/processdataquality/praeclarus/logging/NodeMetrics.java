@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.logging;
+
+import com.processdataquality.praeclarus.logging.entity.AbstractLogEvent;
+import com.processdataquality.praeclarus.logging.entity.NodeExecutionEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the resource usage of each node execution as Micrometer meters, tagged
+ * by plugin class. The meters are available from the actuator metrics endpoint,
+ * e.g. /actuator/metrics/pdq.node.allocated?tag=plugin:CsvDataReader
+ *
+ * @author Michael Adams
+ * @date 4/8/2022
+ */
+@Component
+public class NodeMetrics implements LogEventListener {
+
+    private final MeterRegistry _registry;
+
+    public NodeMetrics(MeterRegistry registry) {
+        _registry = registry;
+        EventLogger.addEventListener(this);
+    }
+
+
+    @Override
+    public void eventLogged(AbstractLogEvent event) {
+        if (event instanceof NodeExecutionEvent) {
+            NodeExecutionEvent nodeEvent = (NodeExecutionEvent) event;
+            if (nodeEvent.hasResourceUsage()) {
+                record(nodeEvent);
+            }
+        }
+    }
+
+
+    private void record(NodeExecutionEvent event) {
+        Tags tags = Tags.of("plugin", simpleName(event.getPluginClass()),
+                "event", event.getLabel());
+        summary("pdq.node.rows.in", "rows", tags).record(event.getRowsIn());
+        summary("pdq.node.rows.out", "rows", tags).record(event.getRowsOut());
+        summary("pdq.node.output", "bytes", tags).record(event.getOutputBytes());
+        if (event.getAllocatedBytes() > -1) {
+            summary("pdq.node.allocated", "bytes", tags).record(event.getAllocatedBytes());
+        }
+        if (event.getCpuMillis() > -1) {
+            timer("pdq.node.cpu", tags).record(event.getCpuMillis(), TimeUnit.MILLISECONDS);
+        }
+        timer("pdq.node.gc.pause", tags).record(event.getGcMillis(), TimeUnit.MILLISECONDS);
+    }
+
+
+    private DistributionSummary summary(String name, String unit, Tags tags) {
+        return DistributionSummary.builder(name).baseUnit(unit).tags(tags)
+                .register(_registry);
+    }
+
+
+    private Timer timer(String name, Tags tags) {
+        return Timer.builder(name).tags(tags).register(_registry);
+    }
+
+
+    private String simpleName(String className) {
+        return className != null ? className.substring(className.lastIndexOf('.') + 1) : "unknown";
+    }
+
+}
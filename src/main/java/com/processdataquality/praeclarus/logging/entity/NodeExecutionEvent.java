@@ -19,6 +19,8 @@ package com.processdataquality.praeclarus.logging.entity;
 import com.processdataquality.praeclarus.logging.EventType;
 import com.processdataquality.praeclarus.graph.Graph;
 import com.processdataquality.praeclarus.node.Node;
+import com.processdataquality.praeclarus.node.NodeResourceMonitor;
+import com.processdataquality.praeclarus.util.TableSize;
 
 import javax.persistence.Entity;
 
@@ -32,6 +34,15 @@ public class NodeExecutionEvent extends NodeEvent {
     private String tableId;
     private String commitId;
     private String note;
+    private String pluginClass;
+
+    // resource usage, recorded for completed and paused events only
+    private Long rowsIn;
+    private Long rowsOut;
+    private Long outputBytes;
+    private Long allocatedBytes;
+    private Long cpuMillis;
+    private Long gcMillis;
 
     protected NodeExecutionEvent() { }
 
@@ -39,8 +50,23 @@ public class NodeExecutionEvent extends NodeEvent {
                               String user, String note) {
         super(graph, node, eventType, user);
         setTableId(node.getTableID());
-        setCommitId(node.getCommitID());
+        setCommitId(node.getCommitFuture().getNow(null));  // may still be queued
         setNote(note);
+        setPluginClass(node.getPlugin().getClass().getName());
+        if (eventType == EventType.NODE_COMPLETED || eventType == EventType.NODE_PAUSED) {
+            setResourceUsage(node);
+        }
+    }
+
+
+    private void setResourceUsage(Node node) {
+        NodeResourceMonitor monitor = node.getResourceMonitor();
+        setRowsIn(node.getInputRowCount());
+        setRowsOut(node.getOutputRowCount());
+        setOutputBytes(TableSize.estimateBytes(node.getOutput()));
+        setAllocatedBytes(monitor.getAllocatedBytes());
+        setCpuMillis(monitor.getCpuMillis());
+        setGcMillis(monitor.getGcMillis());
     }
 
 
@@ -59,6 +85,44 @@ public class NodeExecutionEvent extends NodeEvent {
     public void setNote(String outcome) { this.note = outcome; }
 
 
+    public String getPluginClass() { return pluginClass; }
+
+    public void setPluginClass(String pluginClass) { this.pluginClass = pluginClass; }
+
+
+    public boolean hasResourceUsage() { return rowsOut != null; }
+
+
+    public Long getRowsIn() { return rowsIn; }
+
+    public void setRowsIn(Long rowsIn) { this.rowsIn = rowsIn; }
+
+
+    public Long getRowsOut() { return rowsOut; }
+
+    public void setRowsOut(Long rowsOut) { this.rowsOut = rowsOut; }
+
+
+    public Long getOutputBytes() { return outputBytes; }
+
+    public void setOutputBytes(Long outputBytes) { this.outputBytes = outputBytes; }
+
+
+    public Long getAllocatedBytes() { return allocatedBytes; }
+
+    public void setAllocatedBytes(Long allocatedBytes) { this.allocatedBytes = allocatedBytes; }
+
+
+    public Long getCpuMillis() { return cpuMillis; }
+
+    public void setCpuMillis(Long cpuMillis) { this.cpuMillis = cpuMillis; }
+
+
+    public Long getGcMillis() { return gcMillis; }
+
+    public void setGcMillis(Long gcMillis) { this.gcMillis = gcMillis; }
+
+
     @Override
     public String toString() {
         return super.toString() + "; Result: " + note;
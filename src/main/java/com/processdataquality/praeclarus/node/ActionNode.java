@@ -39,7 +39,7 @@ public class ActionNode extends Node {
     @Override
     public void run() throws Exception {
         setState(NodeState.EXECUTING);
-        setOutput(((AbstractAction) getPlugin()).run(getInputs()));
+        runCached(() -> ((AbstractAction) getPlugin()).run(getInputs()));
         setState(NodeState.COMPLETED);
     }
 }
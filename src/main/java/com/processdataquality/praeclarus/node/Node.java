@@ -19,15 +19,24 @@ package com.processdataquality.praeclarus.node;
 import com.processdataquality.praeclarus.annotations.Plugin;
 import com.processdataquality.praeclarus.logging.EventLogger;
 import com.processdataquality.praeclarus.plugin.AbstractPlugin;
+import com.processdataquality.praeclarus.repo.CommitQueue;
 import com.processdataquality.praeclarus.repo.Repo;
+import com.processdataquality.praeclarus.repo.cache.NodeResult;
+import com.processdataquality.praeclarus.repo.cache.NodeResultCache;
+import com.processdataquality.praeclarus.util.CopyOnWriteTable;
 import com.processdataquality.praeclarus.util.DataCollection;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.configurationprocessor.json.JSONException;
 import org.springframework.boot.configurationprocessor.json.JSONObject;
 import tech.tablesaw.api.Table;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A node in a workflow, representing a plugin. This class provides base functionality
@@ -38,9 +47,13 @@ import java.util.*;
  */
 public abstract class Node {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Node.class);
+
     private final NodeStopWatch _stopWatch = new NodeStopWatch();
+    private final NodeResourceMonitor _resourceMonitor = new NodeResourceMonitor();
 
-    private String _commitID;           // the commit version of the table in the repo
+    private volatile String _commitID;  // the commit version of the table in the repo
+    private volatile CompletableFuture<String> _pendingCommit;   // while commit is queued
     private String _tableID;            // the file name of the table in the repo
     private String _label;
 
@@ -49,8 +62,12 @@ public abstract class Node {
 
     private AbstractPlugin _plugin;
     private List<NodeStateChangeListener> _listeners;
-    private NodeState _state;
-    private Table _output;        // a table with the result of running this plugin
+    private volatile NodeState _state;
+    private volatile Table _output;   // a table with the result of running this plugin
+    private volatile boolean _outputDeferred;   // output is in the repo, not yet loaded
+    private long _deferredRowCount = -1;        // row count of a deferred output, if known
+    private final Object _outputLock = new Object();
+    private long _streamedRowCount = -1;   // rows passed through when output is streamed
     private NodeTask _preTask;          // optional code to run before plugin is run
     private NodeTask _postTask;         // optional code to run after plugin is run
 
@@ -61,7 +78,7 @@ public abstract class Node {
         _plugin = plugin;
         _next = new HashSet<>();
         _previous = new HashSet<>();
-        _listeners = new ArrayList<>();
+        _listeners = new CopyOnWriteArrayList<>();
         _state = NodeState.UNSTARTED;
     }
 
@@ -83,6 +100,7 @@ public abstract class Node {
         if (_state != state) {
             _state = state;
             _stopWatch.stateChange(state);
+            _resourceMonitor.stateChange(state);
              announceStateChange();
         }
     }
@@ -96,6 +114,9 @@ public abstract class Node {
     public NodeStopWatch getStopWatch() { return _stopWatch; }
 
 
+    public NodeResourceMonitor getResourceMonitor() { return _resourceMonitor; }
+
+
     /**
      * Allows UIs to run any preliminary code before the plugin's run
      * @param task the code to run
@@ -231,9 +252,50 @@ public abstract class Node {
 
     public String getID() { return _plugin.getID(); }
 
-    public String getCommitID() { return _commitID; }
+    /**
+     * @return the commit version of this node's output table in the repo. If the
+     * output's commit is still queued, waits until it has been written.
+     */
+    public String getCommitID() {
+        CompletableFuture<String> pending = _pendingCommit;
+        if (pending != null) {
+            String commitID = null;
+            try {
+                commitID = pending.get();
+            }
+            catch (ExecutionException e) {
+                LOG.error("Failed to commit table to repo for node '{}'", getLabel(),
+                        e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            synchronized (this) {
+                if (_pendingCommit == pending) {           // not superseded by a rerun
+                    _pendingCommit = null;
+                    _commitID = commitID;
+                }
+            }
+        }
+        return _commitID;
+    }
+
+
+    /**
+     * @return a future that completes with the commit version of this node's output
+     * table, once it has been written to the repo
+     */
+    public CompletableFuture<String> getCommitFuture() {
+        CompletableFuture<String> pending = _pendingCommit;
+        return pending != null ? pending : CompletableFuture.completedFuture(_commitID);
+    }
+
 
-    public void setCommitID(String id) { _commitID = id; }
+    public synchronized void setCommitID(String id) {
+        _pendingCommit = null;
+        _commitID = id;
+    }
 
 
     /**
@@ -273,17 +335,33 @@ public abstract class Node {
 
 
     /**
+     * Gets a view of the output table of each predecessor node. Each view shares its
+     * columns with the predecessor's output, so replacing a column in a view does not
+     * change the predecessor's output or any sibling's input.
      * @return the set of output tables from all predecessor nodes
      */
     public List<Table> getInputs() {
         List<Table> inputs = new ArrayList<>();
         _previous.forEach(node -> {
-            if (node.getOutput() != null) inputs.add(node.getOutput());
+            Table output = node.getOutput();
+            if (output != null) inputs.add(CopyOnWriteTable.view(output));
         });
         return inputs;
     }
 
 
+    /**
+     * @return the total number of rows output by all predecessor nodes
+     */
+    public long getInputRowCount() {
+        long count = 0;
+        for (Node node : _previous) {
+            count += node.getOutputRowCount();
+        }
+        return count;
+    }
+
+
     /**
      * @return a map of auxiliary datasets from all predecessor nodes
      */
@@ -299,6 +377,7 @@ public abstract class Node {
      */
     public void reset() throws Exception {
         clearOutput();
+        _streamedRowCount = -1;
         setState(NodeState.UNSTARTED);
     }
 
@@ -309,9 +388,51 @@ public abstract class Node {
 
 
     /**
-     * @return the output table (if any) for this node
+     * @return the output table (if any) for this node. A deferred output is loaded
+     * from the repo on the first call.
      */
-    public Table getOutput() { return _output; }
+    public Table getOutput() {
+        if (_outputDeferred) {
+            loadDeferredOutput();
+        }
+        return _output;
+    }
+
+
+    /**
+     * @return the number of rows output by this node, whether held as an output table
+     * or streamed through to a successor
+     */
+    public long getOutputRowCount() {
+        long count = getKnownRowCount();
+        if (count > -1) return count;
+        Table output = getOutput();                  // deferred, with no stored count
+        return output != null ? output.rowCount() : 0;
+    }
+
+
+    // the output row count if it can be had without loading a deferred output, else -1
+    private long getKnownRowCount() {
+        Table output = _output;
+        if (output != null) return output.rowCount();
+        if (_outputDeferred) return _deferredRowCount;
+        return Math.max(_streamedRowCount, 0);
+    }
+
+
+    /**
+     * Records the number of rows streamed through this node, for nodes that don't
+     * hold an output table
+     * @param count the number of rows
+     */
+    protected void setStreamedRowCount(long count) { _streamedRowCount = count; }
+
+
+    /**
+     * @return true if this node's last run streamed its data rather than setting
+     * an output table
+     */
+    public boolean isStreamed() { return _streamedRowCount > -1; }
 
 
     /**
@@ -319,11 +440,25 @@ public abstract class Node {
      * @param t the table to set as output
      */
     protected void setOutput(Table t) {
+        _outputDeferred = false;
         _output = t;
         _tableID = t.name();
         commit(t);
     }
 
+
+    /**
+     * Sets a provisional output table for this node, such as a preview of a reader's
+     * first rows, which is neither committed to the repo nor cached
+     * @param t the table to set as output
+     */
+    protected void setProvisionalOutput(Table t) {
+        synchronized (_outputLock) {
+            _outputDeferred = false;
+            _output = t;
+        }
+    }
+
     
     protected DataCollection getAuxiliaryDatasets() {
         return _plugin.getAuxiliaryDatasets();
@@ -331,18 +466,132 @@ public abstract class Node {
 
 
     public void loadOutput(String tableID) throws IOException {
-        _output = Repo.getTable(_commitID, tableID);
-        if (_output != null) {
-            _tableID = tableID;
+        loadOutput(tableID, -1);
+    }
+
+
+    /**
+     * Sets this node's output to a table committed to the repo at this node's commit
+     * version, and marks the node completed. So that stored workflows open quickly,
+     * the table is not read until the output is first needed.
+     * @param tableID the file name of the table
+     * @param rowCount the table's row count, if known, else -1
+     */
+    public void loadOutput(String tableID, long rowCount) throws IOException {
+        String commitID = getCommitID();
+        if (commitID != null && Repo.getObjectID(commitID, tableID) != null) {
+            synchronized (_outputLock) {
+                _output = null;
+                _tableID = tableID;
+                _deferredRowCount = rowCount;
+                _outputDeferred = true;
+            }
             _state = NodeState.COMPLETED;
         }
     }
 
 
+    /*
+     * Loads a deferred output from the repo. If it can't be loaded, the node is reset
+     * to unstarted, so that a run re-executes it rather than passing its successors
+     * no input.
+     */
+    private void loadDeferredOutput() {
+        synchronized (_outputLock) {
+            if (! _outputDeferred) return;                // loaded by another thread
+            try {
+                _output = Repo.getTable(getCommitID(), _tableID);
+                if (_output == null) {
+                    LOG.error("Output of node '{}' not found in repo", getLabel());
+                }
+            }
+            catch (IOException e) {
+                LOG.error("Failed to load output of node '{}' from repo", getLabel(), e);
+            }
+            finally {
+                _outputDeferred = false;
+            }
+            if (_output != null) return;
+        }
+        try {
+            reset();
+        }
+        catch (Exception e) {
+            LOG.error("Failed to reset node '{}'", getLabel(), e);
+        }
+    }
+
+
+    /**
+     * Sets this node's output to a table previously committed to the repo
+     * @param commitID the commit version of the table
+     * @param tableID the file name of the table
+     * @return true if the table was loaded
+     */
+    protected boolean restoreOutput(String commitID, String tableID) throws IOException {
+        Table table = Repo.getTable(commitID, tableID);
+        if (table != null) {
+            _outputDeferred = false;
+            _output = table;
+            setCommitID(commitID);
+            _tableID = tableID;
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Runs this node from a previous result if there is one with the same plugin,
+     * options and inputs, else runs the plugin and caches its output
+     * @param body the node's plugin run, returning its output
+     */
+    protected void runCached(Callable<Table> body) throws Exception {
+        String key = NodeResultCache.keyFor(this);
+        Optional<NodeResult> cached = NodeResultCache.get(key);
+        if (cached.isPresent()) {
+            try {
+                if (restoreOutput(cached.get().getCommitId(), cached.get().getTableId())) {
+                    return;
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                LOG.warn("Failed to restore cached result for node '{}'", getLabel(), e);
+            }
+            NodeResultCache.evict(key);                // stale, so run as normal
+        }
+        setOutput(body.call());
+        NodeResultCache.put(key, this);
+    }
+
+
     /**
      * @return true if this node has an output table set
      */
-    public boolean hasOutput() { return _output != null; }
+    public boolean hasOutput() { return _output != null || _outputDeferred; }
+
+
+    /**
+     * Checks, without loading it, that this node's output can be passed to its
+     * successors, which read a deferred output through getInputs()
+     * @return false if this node's output is deferred to a table that is no longer in
+     * the repo, else true
+     */
+    public boolean hasLoadableOutput() {
+        String tableID;
+        synchronized (_outputLock) {
+            if (! _outputDeferred) return true;
+            tableID = _tableID;
+        }
+        String commitID = _commitID;          // a deferred output's commit isn't queued
+        try {
+            return commitID != null && Repo.getObjectID(commitID, tableID) != null;
+        }
+        catch (IOException e) {
+            LOG.error("Output of node '{}' not found in repo", getLabel(), e);
+            return false;
+        }
+    }
 
 
     /**
@@ -350,19 +599,20 @@ public abstract class Node {
      * @return the output table removed (if any)
      */
     public Table clearOutput() {
-        Table table = _output;
-        _output = null;
-        return table;
+        synchronized (_outputLock) {
+            _outputDeferred = false;
+            Table table = _output;
+            _output = null;
+            return table;
+        }
     }
 
 
-    private void commit(Table t) {
-        try {
-            _commitID = Repo.commit(t, getCommitMessage(), EventLogger.loggedOnUserName());
-        }
-        catch (IOException | GitAPIException e) {
-            System.out.println("Failed to commit table to repo: " + e.getMessage());
-        }
+    // queues the table to be written to the repo in the background
+    private synchronized void commit(Table t) {
+        _commitID = null;
+        _pendingCommit = CommitQueue.submit(t, getCommitMessage(),
+                EventLogger.loggedOnUserName());
     }
 
 
@@ -376,8 +626,10 @@ public abstract class Node {
         JSONObject json = new JSONObject();
         json.put("id", getID());
         json.put("label", _label);
-        if (_commitID != null) json.put("commitID", _commitID);
+        String commitID = getCommitID();
+        if (commitID != null) json.put("commitID", commitID);
         if (_tableID != null) json.put("tableID", _tableID);
+        if (hasOutput() && getKnownRowCount() > -1) json.put("rowCount", getKnownRowCount());
 
         json.put("plugin", _plugin.getClass().getName());
         json.put("options", _plugin.getOptions().getChangesAsJson());
@@ -51,7 +51,8 @@ public class NodeLoader {
             if (!commitID.isEmpty()) {
                 node.setCommitID(commitID);
                 if (!tableID.isEmpty()) {
-                    node.loadOutput(tableID);           // loads from repo
+                    // deferred: the table is read from the repo when first used
+                    node.loadOutput(tableID, json.optLong("rowCount", -1));
                 }
             }
         }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.node;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the resources used by the thread running a node: bytes allocated, CPU
+ * time, and the (JVM-wide) garbage collection time while the node runs. Like the
+ * NodeStopWatch, totals are accumulated over each stage of a run (e.g. detect and
+ * repair) and cleared when the node starts executing again.
+ *
+ * @author Michael Adams
+ * @date 4/8/2022
+ */
+public class NodeResourceMonitor {
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    private long _allocatedStart;
+    private long _cpuStart;
+    private long _gcStart;
+
+    private long _allocated;            // bytes
+    private long _cpu;                  // nanoseconds
+    private long _gc;                   // milliseconds
+
+
+    public NodeResourceMonitor() { }
+
+
+    public void stateChange(NodeState state) {
+        switch (state) {
+            case EXECUTING: clear();                           // deliberate fallthrough
+            case RESUMED: start(); break;
+            case COMPLETED:                                    // deliberate fallthrough
+            case PAUSED: stop(); break;
+        }
+    }
+
+
+    /**
+     * @return the bytes allocated by the node's thread, or -1 if not supported
+     */
+    public long getAllocatedBytes() { return _allocated; }
+
+
+    /**
+     * @return the CPU time used by the node's thread in milliseconds, or -1 if not
+     * supported
+     */
+    public long getCpuMillis() { return _cpu < 0 ? -1 : _cpu / 1000000; }
+
+
+    /**
+     * @return the time spent in garbage collection by the JVM while the node ran,
+     * in milliseconds
+     */
+    public long getGcMillis() { return _gc; }
+
+
+    private void clear() {
+        _allocated = 0;
+        _cpu = 0;
+        _gc = 0;
+    }
+
+
+    private void start() {
+        _allocatedStart = allocatedBytes();
+        _cpuStart = cpuTime();
+        _gcStart = gcTime();
+    }
+
+
+    private void stop() {
+        _allocated = accumulate(_allocated, _allocatedStart, allocatedBytes());
+        _cpu = accumulate(_cpu, _cpuStart, cpuTime());
+        _gc += gcTime() - _gcStart;
+    }
+
+
+    private long accumulate(long total, long start, long now) {
+        if (total < 0 || start < 0 || now < 0) return -1;       // not supported
+        return total + now - start;
+    }
+
+
+    private long allocatedBytes() {
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_BEAN;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+
+    private long cpuTime() {
+        if (THREAD_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_BEAN.isThreadCpuTimeEnabled()) {
+            return THREAD_BEAN.getCurrentThreadCpuTime();
+        }
+        return -1;
+    }
+
+
+    private long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(bean.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+}
@@ -78,6 +78,19 @@ public class NodeStopWatch {
     public double getDurationAsSeconds(int index) { return getDuration(index) / NANO; }
 
 
+    /**
+     * @return the sum of the durations of all stages (e.g. detect and repair), in
+     * seconds
+     */
+    public double getTotalDurationAsSeconds() {
+        long total = 0;
+        for (Pair<Long, Long> stage : stages) {
+            total += stage.getSecond() - stage.getFirst();
+        }
+        return total / NANO;
+    }
+
+
     private long now() { return System.nanoTime(); }
 
 }
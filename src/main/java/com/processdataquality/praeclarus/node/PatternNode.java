@@ -19,8 +19,11 @@ package com.processdataquality.praeclarus.node;
 import com.processdataquality.praeclarus.pattern.AbstractDataPattern;
 import com.processdataquality.praeclarus.plugin.AbstractPlugin;
 import com.processdataquality.praeclarus.plugin.uitemplate.PluginUI;
+import com.processdataquality.praeclarus.trace.Trace;
 import tech.tablesaw.api.Table;
 
+import java.util.List;
+
 /**
  * A container node for an imperfection pattern plugin
  *
@@ -44,15 +47,19 @@ public class PatternNode extends Node {
     @Override
     public void run() throws Exception {
         AbstractDataPattern imperfectionPattern = (AbstractDataPattern) getPlugin();
-        imperfectionPattern.getInputs().addAll(getInputs());
-        Table master = getInputs().get(0);         // first input is the master
+        List<Table> inputs = getInputs();
+        imperfectionPattern.getInputs().clear();        // replace those of any prior run
+        imperfectionPattern.getInputs().addAll(inputs);
+        Table master = inputs.get(0);              // first input is the master
         if (getState() == NodeState.UNSTARTED && imperfectionPattern.canDetect()) {
 
             // load plugin with all incoming plugins' aux datasets
             imperfectionPattern.getAuxiliaryDatasets().putAll(getAuxiliaryInputs());
             
             setState(NodeState.EXECUTING);
-            detected = imperfectionPattern.detect(master);
+            try (Trace.Span span = Trace.begin("pattern", "detect", getLabel())) {
+                detected = imperfectionPattern.detect(master);
+            }
             if (imperfectionPattern.canRepair()) {
                 setState(NodeState.PAUSED);
             }
@@ -63,7 +70,11 @@ public class PatternNode extends Node {
         }
         else if (getState() != NodeState.COMPLETED && imperfectionPattern.canRepair()) {
             setState(NodeState.RESUMED);
-            setOutput(imperfectionPattern.repair(master));
+            Table repaired;
+            try (Trace.Span span = Trace.begin("pattern", "repair", getLabel())) {
+                repaired = imperfectionPattern.repair(master);
+            }
+            setOutput(repaired);
             setState(NodeState.COMPLETED);
         }
     }
@@ -17,11 +17,24 @@
 package com.processdataquality.praeclarus.node;
 
 import com.processdataquality.praeclarus.exception.ReaderException;
+import com.processdataquality.praeclarus.graph.RunnerExecutors;
 import com.processdataquality.praeclarus.plugin.AbstractPlugin;
 import com.processdataquality.praeclarus.reader.DataReader;
+import com.processdataquality.praeclarus.reader.StreamingDataReader;
+import com.processdataquality.praeclarus.repo.cache.NodeResultCache;
+import com.processdataquality.praeclarus.trace.Trace;
+import com.processdataquality.praeclarus.util.TableStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import tech.tablesaw.api.Table;
 
+import java.io.IOException;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * A container node for a log data reader
@@ -31,6 +44,13 @@ import java.util.UUID;
  */
 public class ReaderNode extends Node {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ReaderNode.class);
+
+    private static final int BATCH_SIZE = 10000;       // rows per batch
+    private static final int CAPACITY = 4;             // max batches waiting in stream
+
+    private volatile Load _load;           // the rest of a read, after a preview
+
     public ReaderNode(AbstractPlugin plugin) {
         super(plugin);
     }
@@ -45,9 +65,13 @@ public class ReaderNode extends Node {
         setState(NodeState.EXECUTING);
 
         try {
-            Table table = ((DataReader) getPlugin()).read();     // load from source
-            table.setName(UUID.randomUUID().toString());
-            setOutput(table);
+            runCached(() -> {
+                try (Trace.Span span = Trace.begin("reader", "read", getLabel())) {
+                    Table table = ((DataReader) getPlugin()).read();     // load from source
+                    table.setName(UUID.randomUUID().toString());
+                    return table;
+                }
+            });
             setState(NodeState.COMPLETED);
         }
         catch (Exception e) {
@@ -65,4 +89,187 @@ public class ReaderNode extends Node {
 
     }
 
+
+    /**
+     * Reads the first rows of the source and sets them as this node's output at once,
+     * then completes the read on a background task, swapping the full table in when
+     * it is done. Readers that can't stream their data, and reads that can be restored
+     * from the result cache, are run in full as normal. A streamed result is committed
+     * but not added to the result cache, which holds only full reads.
+     * @param rows the number of rows to preview (0 to run in full)
+     */
+    public void runWithPreview(int rows) throws Exception {
+        if (rows <= 0 || ! (getPlugin() instanceof StreamingDataReader) ||
+                NodeResultCache.get(NodeResultCache.keyFor(this)).isPresent()) {
+            run();
+            return;
+        }
+        setState(NodeState.EXECUTING);
+
+        StreamingDataReader reader = (StreamingDataReader) getPlugin();
+        TableStream stream = new TableStream(CAPACITY);
+        Future<?> producer = RunnerExecutors.loaders().submit(() -> {
+            try (Trace.Span span = Trace.begin("reader", "read", getLabel())) {
+                reader.read(BATCH_SIZE, stream);
+            }
+            catch (Throwable t) {
+                stream.fail(t);
+            }
+        });
+
+        Table table = null;
+        boolean ended = false;
+        try {
+            while (! ended && (table == null || table.rowCount() < rows)) {
+                Table batch = stream.next();
+                if (batch == null) {
+                    ended = true;
+                }
+                else if (table == null) {
+                    table = batch;
+                }
+                else table.append(batch);
+            }
+        }
+        catch (IOException | InterruptedException | RuntimeException e) {
+            stream.abandon();
+            producer.cancel(true);
+            throw new ReaderException(e.getMessage(), e);
+        }
+        Table loaded = table != null ? table : Table.create();
+
+        if (ended) {                                    // the source fit in the preview
+            setOutput(named(loaded));
+            setState(NodeState.COMPLETED);
+            return;
+        }
+
+        Load load = new Load(stream, producer);
+        _load = load;
+        setProvisionalOutput(named(loaded.first(rows)));
+        RunnerExecutors.loaders().execute(() -> load.complete(loaded));
+        setState(NodeState.COMPLETED);
+    }
+
+
+    /**
+     * @return true if this node's output is a preview, while the rest of its read
+     * continues in the background
+     */
+    public boolean isPreview() { return _load != null; }
+
+
+    /**
+     * Waits for a read that continued in the background after a preview to finish,
+     * so that the full table is this node's output
+     * @throws ReaderException if the read failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitFullLoad() throws ReaderException, InterruptedException {
+        Load load = _load;
+        if (load != null) {
+            try {
+                load.swapped.get();
+            }
+            catch (ExecutionException e) {
+                throw new ReaderException("Failed to load '" + getLabel() + "': " +
+                        e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+
+    @Override
+    public void reset() throws Exception {
+        Load load;
+        synchronized (this) {
+            load = _load;
+            _load = null;
+        }
+        if (load != null) {
+            load.cancel();
+        }
+        super.reset();
+    }
+
+
+    // replaces the preview with the full table, unless the node was reset meanwhile
+    private void swapIn(Load load, Table table, Throwable failure) {
+        synchronized (this) {
+            if (_load != load) return;
+            _load = null;
+        }
+        try {
+            if (failure == null) {
+                setOutput(named(table));
+                announceStateChange();
+                return;
+            }
+            LOG.error("Failed to load the rest of '{}' after its preview", getLabel(), failure);
+        }
+        catch (Exception e) {
+            LOG.error("Failed to set the full output of '{}'", getLabel(), e);
+            throw new CompletionException(e);
+        }
+
+        // don't leave a preview looking like the full data
+        try {
+            reset();
+        }
+        catch (Exception e) {
+            LOG.error("Failed to reset node '{}'", getLabel(), e);
+        }
+        throw new CompletionException(failure);
+    }
+
+
+    private Table named(Table table) {
+        table.setName(UUID.randomUUID().toString());
+        return table;
+    }
+
+
+    // the rest of a read after a preview: takes the remaining batches from the stream
+    private class Load {
+
+        final TableStream stream;
+        final Future<?> producer;
+        final CompletableFuture<Table> result = new CompletableFuture<>();
+        final CompletableFuture<Void> swapped;
+
+        Load(TableStream stream, Future<?> producer) {
+            this.stream = stream;
+            this.producer = producer;
+            swapped = result.handle((table, t) -> {
+                swapIn(this, table, t);
+                return null;
+            });
+        }
+
+
+        void complete(Table table) {
+            try {
+                Table batch;
+                while ((batch = stream.next()) != null) {
+                    table.append(batch);
+                }
+                result.complete(table);
+            }
+            catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            catch (InterruptedException e) {
+                result.completeExceptionally(new CancellationException("Read interrupted"));
+            }
+        }
+
+
+        void cancel() {
+            stream.abandon();
+            stream.fail(new CancellationException("Read cancelled"));   // wakes the taker
+            producer.cancel(true);
+            result.cancel(false);
+        }
+    }
+
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.node;
+
+import com.processdataquality.praeclarus.graph.RunnerExecutors;
+import com.processdataquality.praeclarus.reader.StreamingDataReader;
+import com.processdataquality.praeclarus.trace.Trace;
+import com.processdataquality.praeclarus.util.TableStream;
+import com.processdataquality.praeclarus.writer.StreamingDataWriter;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a reader node and its writer node as a single pipeline, streaming batches of
+ * rows from reader to writer so that the full dataset is never held in memory.
+ * The reader runs on a loader thread, as the run's user; the writer runs on the
+ * calling thread. Only the number of rows, and not the data itself, is recorded by
+ * each node.
+ *
+ * @author Michael Adams
+ * @date 2/8/2022
+ */
+public class StreamingPipeline {
+
+    private static final int BATCH_SIZE = 10000;       // rows per batch
+    private static final int CAPACITY = 4;             // max batches waiting in stream
+
+    private final ReaderNode _reader;
+    private final WriterNode _writer;
+
+
+    public StreamingPipeline(ReaderNode reader, WriterNode writer) {
+        _reader = reader;
+        _writer = writer;
+    }
+
+
+    /**
+     * Gets the writer node that a node can stream its data directly into, if any.
+     * That is so only when the node is a reader configured for streaming, its only
+     * successor is a writer that can consume a stream, and the reader is that
+     * writer's only input.
+     * @param node the node to check
+     * @return the writer node, or null if the node can't be streamed
+     */
+    public static WriterNode fusableWriter(Node node) {
+        if (! (node instanceof ReaderNode && node.getPlugin() instanceof StreamingDataReader
+                && ((StreamingDataReader) node.getPlugin()).isStreaming()
+                && node.next().size() == 1)) {
+            return null;
+        }
+        Node next = node.next().iterator().next();
+        if (next instanceof WriterNode && next.getPlugin() instanceof StreamingDataWriter
+                && next.previous().size() == 1 && next.canStart()) {
+            return (WriterNode) next;
+        }
+        return null;
+    }
+
+
+    /**
+     * Streams the reader's data through the writer. On success, both nodes are set
+     * to completed, reader first.
+     * @throws Exception if either the read or the write fails
+     */
+    public void run() throws Exception {
+        _reader.setState(NodeState.EXECUTING);
+        _writer.setState(NodeState.EXECUTING);
+
+        TableStream stream = new TableStream(CAPACITY);
+        AtomicReference<Throwable> readFailure = new AtomicReference<>();
+        StreamingDataReader reader = (StreamingDataReader) _reader.getPlugin();
+        Future<?> producer = RunnerExecutors.loaders().submit(
+                new DelegatingSecurityContextRunnable(() -> {
+                    try (Trace.Span span = Trace.begin("reader", "read",
+                            _reader.getLabel())) {
+                        reader.read(BATCH_SIZE, stream);
+                    }
+                    catch (Throwable t) {
+                        readFailure.set(t);
+                        stream.fail(t);
+                    }
+                }));
+
+        try {
+            ((StreamingDataWriter) _writer.getPlugin()).write(stream,
+                    _reader.getAuxiliaryDatasets());
+        }
+        catch (Exception e) {
+            stream.abandon();
+            producer.cancel(true);
+            _writer.reset();
+            if (readFailure.get() instanceof Exception) {
+                throw (Exception) readFailure.get();          // report the root cause
+            }
+            throw e;
+        }
+        producer.get();                  // the stream has ended, so the read is done
+
+        _reader.setStreamedRowCount(stream.getRowCount());
+        _writer.setStreamedRowCount(stream.getRowCount());
+        _reader.setState(NodeState.COMPLETED);
+        _writer.setState(NodeState.COMPLETED);
+    }
+
+}
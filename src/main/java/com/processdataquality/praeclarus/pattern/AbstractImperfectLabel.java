@@ -61,6 +61,7 @@ public abstract class AbstractImperfectLabel extends AbstractDataPattern {
         List<String> tested = new ArrayList<>();    // cache of strings already tested
         List<String> compared = new ArrayList<>();  // cache of strings already compared to
         for (int i = 0; i < column.size(); i++) {
+            checkCancelled();
             String testValue = column.getString(i);
             if (testValue == null || tested.contains(testValue)) continue;
             tested.add(testValue);
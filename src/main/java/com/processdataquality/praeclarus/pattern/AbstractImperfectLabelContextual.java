@@ -131,18 +131,25 @@ public abstract class AbstractImperfectLabelContextual extends AbstractImperfect
 	protected void detect(Table table, StringColumn selectedColumn, String sortColName) throws InvalidOptionException {
 		parser = new ParseTable(table, selectedColumn.name(), sortColName);
 		parser.parse();
+		checkCancelled();
 		rs = new ResourceSimilarity(parser.getActivities()).getSimilarity();
+		checkCancelled();
 		ds = new DurationSimilarity(parser.getActivities()).getSimilarity();
+		checkCancelled();
 		ts = new TimeSimilarity(parser.getActivities()).getSimilarity();
+		checkCancelled();
 		dcfs = new ControlFlowSimilarity(parser.getActivities(), parser.getTraces(),
 				getOptions().get("Direct Control Flow Noise Threshold").asDouble()).getDirectControlFlowSimilarity();
+		checkCancelled();
 		eds = new EventDataSimilarity(parser.getActivities(),
 				getOptions().get("Data Attribute Name Similarity Threshold").asDouble()).getSimilarity();
+		checkCancelled();
 		ls = new StringSimilarity(parser.getActivities()).getSimilarity();
 
 		grouped = new boolean[parser.getActivities().size()][parser.getActivities().size()];
 		activityContextSimilariy = new double[parser.getActivities().size()][parser.getActivities().size()];
 		for (int i = 0; i < parser.getActivities().size(); i++) {
+			checkCancelled();
 			for (int j = 0; j < parser.getActivities().size(); j++) {
 				if (j > i) {
 					double overS = overallSimilarity(i, j);
@@ -25,6 +25,7 @@ import tech.tablesaw.api.Table;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /**
  * The base abstract class for plugins - all plugins must extend from this class.
@@ -44,6 +45,9 @@ public abstract class AbstractPlugin implements PDQPlugin, OptionValueChangeList
     // a concatenated list of input tables from all immediately prior plugins
     private final List<Table> inputs = new ArrayList<>();
 
+    // set when a run of this plugin has been asked to stop
+    private volatile boolean cancelled = false;
+
     /**
      * The constructor
      */
@@ -103,5 +107,26 @@ public abstract class AbstractPlugin implements PDQPlugin, OptionValueChangeList
     public String getID() { return id; }
 
     public void setID(String id) { this.id = id; }
+
+
+    /**
+     * Asks a running plugin to stop. Long-running plugins should call
+     * checkCancelled() periodically to honour the request.
+     */
+    public void cancel() { cancelled = true; }
+
+    public void resetCancel() { cancelled = false; }
+
+    public boolean isCancelled() { return cancelled; }
+
+
+    /**
+     * @throws CancellationException if this plugin has been asked to stop
+     */
+    protected void checkCancelled() {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException(getLabel() + " cancelled");
+        }
+    }
     
 }
@@ -19,14 +19,26 @@ package com.processdataquality.praeclarus.reader;
 import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
 import com.processdataquality.praeclarus.option.FileOption;
 import com.processdataquality.praeclarus.plugin.AbstractPlugin;
+import com.processdataquality.praeclarus.util.Compression;
+import com.univocity.parsers.common.AbstractParser;
 import org.apache.commons.io.input.ReaderInputStream;
+import tech.tablesaw.api.ColumnType;
 import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.AbstractColumnParser;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.io.ColumnTypeDetector;
 import tech.tablesaw.io.ReadOptions;
 import tech.tablesaw.io.Source;
+import tech.tablesaw.selection.BitmapBackedSelection;
+import tech.tablesaw.selection.Selection;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * @author Michael Adams
@@ -34,6 +46,9 @@ import java.nio.charset.StandardCharsets;
  */
 public abstract class AbstractDataReader extends AbstractPlugin implements DataReader {
 
+    protected static final int TYPE_SAMPLE_ROWS = 50000;   // rows used to detect types
+    private static final int CANCEL_CHECK_INTERVAL = 10000;
+
     protected Source _source;             // the data input source
 
 
@@ -60,7 +75,20 @@ public abstract class AbstractDataReader extends AbstractPlugin implements DataR
      */
     @Override
     public Table read() throws IOException {
-        return Table.read().usingOptions(getReadOptions());
+        Source source = getSource();
+        if (source.reader() != null || (source.file() != null &&
+                Compression.detect(source.file()) == Compression.NONE)) {
+            return Table.read().usingOptions(getReadOptions());
+        }
+
+        // read compressed files and all streams through a decompressing stream source
+        try (InputStream in = getSourceAsInputStream()) {
+            setSource(new Source(in, source.getCharset()));
+            return Table.read().usingOptions(getReadOptions());
+        }
+        finally {
+            setSource(source);
+        }
     }
 
 
@@ -80,7 +108,8 @@ public abstract class AbstractDataReader extends AbstractPlugin implements DataR
 
 
     /**
-     * Extracts an InputStream from a Source (if possible)
+     * Extracts an InputStream from a Source (if possible). Byte sources are buffered,
+     * and decompressed if they start with the magic number of a known codec.
      * @return A source's InputStream
      * @throws IOException if the source is null or an InputStream cannot be extracted
      */
@@ -88,10 +117,10 @@ public abstract class AbstractDataReader extends AbstractPlugin implements DataR
         Source source = getSource();
         if (source != null) {
             if (source.inputStream() != null) {
-                return source.inputStream(); 
+                return Compression.decompress(source.inputStream());
             }
             if (source.file() != null) {
-                return new FileInputStream(source.file());
+                return Compression.decompress(new FileInputStream(source.file()));
             }
             if (source.reader() != null) {
                 return new ReaderInputStream(source.reader(), StandardCharsets.UTF_8);
@@ -101,6 +130,32 @@ public abstract class AbstractDataReader extends AbstractPlugin implements DataR
     }
 
 
+    /**
+     * Gets the source as a file, for formats that must be read with random access. If
+     * the source isn't an uncompressed file, its (decompressed) content is copied to a
+     * temporary file, which the caller should delete when done (i.e. if it isn't the
+     * source's own file).
+     * @return the source's file, or a temporary copy of its content
+     * @throws IOException if the source can't be read
+     */
+    protected File getSourceAsFile() throws IOException {
+        Source source = getSource();
+        if (source.file() != null && Compression.detect(source.file()) == Compression.NONE) {
+            return source.file();
+        }
+        File temp = File.createTempFile("pdq-source-", ".tmp");
+        try (InputStream in = getSourceAsInputStream();
+             OutputStream out = new FileOutputStream(temp)) {
+            in.transferTo(out);
+        }
+        catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        return temp;
+    }
+
+
     // thw methods below set the Source object from various supported sources
 
     public void setSource(File file) {
@@ -134,12 +189,17 @@ public abstract class AbstractDataReader extends AbstractPlugin implements DataR
 
 
     public void setSource(String pathOrURL) {
+        File file = new File(pathOrURL);
+        if (file.isFile()) {
+            setSource(file);                        // a local file path
+            return;
+        }
         Source source;
         try {
-            source = Source.fromUrl(pathOrURL);     // try URL first
+            source = Source.fromUrl(pathOrURL);     // try URL
         }
         catch (IOException e) {
-            source = Source.fromString(pathOrURL);  // ok, must be a file path
+            source = Source.fromString(pathOrURL);  // ok, must be the content itself
         }
         setSource(source);
     }
@@ -150,4 +210,256 @@ public abstract class AbstractDataReader extends AbstractPlugin implements DataR
         getOptions().addDefault(new FileOption("Source", ""));
     }
 
+
+    /**
+     * @return the columns and rows to load, as set in this reader's options
+     */
+    protected ReadSelection getSelection() {
+        return new ReadSelection(getOptions());
+    }
+
+
+    /**
+     * Parses a source with a univocity parser into a single table. The parser's
+     * settings should already have the selection applied.
+     */
+    protected Table parse(AbstractParser<?> parser, Reader reader, ReadOptions options,
+                          ReadSelection selection) throws IOException {
+        List<Table> result = new ArrayList<>(1);
+        try {
+            parse(parser, reader, options, selection, TYPE_SAMPLE_ROWS, Integer.MAX_VALUE,
+                    result::add);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(getLabel() + " interrupted");
+        }
+        return result.get(0);
+    }
+
+
+    /**
+     * Parses a source with a univocity parser, passing tables of up to batchSize
+     * rows to the consumer. The last table passed may be empty.
+     */
+    protected void parse(AbstractParser<?> parser, Reader reader, ReadOptions options,
+                         ReadSelection selection, int sampleSize, int batchSize,
+                         TableConsumer consumer) throws IOException, InterruptedException {
+        try {
+            parser.beginParsing(reader);
+            RowTableBuilder builder = null;
+            String[] row;
+            int count = 0;
+            while ((row = parser.parseNext()) != null) {
+                if (builder == null) {
+                    builder = new RowTableBuilder(getColumnNames(parser, options, selection),
+                            options, selection, sampleSize, batchSize);
+                }
+                if (++count % CANCEL_CHECK_INTERVAL == 0) {
+                    checkCancelled();
+                }
+                Table batch = builder.add(row);
+                if (batch != null) {
+                    consumer.accept(batch);
+                }
+            }
+            if (builder == null) {
+                builder = new RowTableBuilder(getColumnNames(parser, options, selection),
+                        options, selection, sampleSize, batchSize);
+            }
+            consumer.accept(builder.finish());
+        }
+        finally {
+            parser.stopParsing();
+        }
+    }
+
+
+    protected ColumnType[] detectColumnTypes(List<String[]> rows, ReadOptions options) {
+        return new ColumnTypeDetector(options.columnTypesToDetect())
+                .detectColumnTypes(rows.iterator(), options);
+    }
+
+
+    /**
+     * @return an empty table with a column of each type, named by the headers
+     */
+    protected Table createTable(String[] headers, ColumnType[] types, ReadOptions options) {
+        Table table = Table.create(options.tableName());
+        for (int i = 0; i < types.length; i++) {
+            String name = headers != null && i < headers.length && headers[i] != null ?
+                    headers[i].trim() : "C" + i;
+            table.addColumns(types[i].create(name));
+        }
+        return table;
+    }
+
+
+    protected AbstractColumnParser<?>[] getParsers(ColumnType[] types, ReadOptions options) {
+        AbstractColumnParser<?>[] parsers = new AbstractColumnParser<?>[types.length];
+        for (int i = 0; i < types.length; i++) {
+            parsers[i] = types[i].customParser(options);
+        }
+        return parsers;
+    }
+
+
+    /**
+     * Appends a parsed row to a table created by createTable()
+     * @throws IOException if a value can't be parsed as its column's type
+     */
+    protected void appendRow(Table table, AbstractColumnParser<?>[] parsers, String[] row)
+            throws IOException {
+        for (int i = 0; i < parsers.length; i++) {
+            Column<?> column = table.column(i);
+            String value = i < row.length ? row[i] : "";
+            try {
+                column.appendCell(value, parsers[i]);
+            }
+            catch (RuntimeException e) {
+                throw new IOException(String.format(
+                        "Unable to parse value '%s' for column '%s' as %s; " +
+                        "column types are detected from a sample of rows",
+                        value, column.name(), column.type().name()), e);
+            }
+        }
+    }
+
+
+    /**
+     * @return a filter for typed values of the selection's filter column in the table,
+     * or null if the selection has no row filter
+     */
+    protected Predicate<Object> getRowFilter(Table table, ReadSelection selection) {
+        if (! selection.isFiltered()) return null;
+        return selection.typedFilter(table.column(selection.getFilterColumn()).type());
+    }
+
+
+    /**
+     * Filters the rows of a table already loaded with typed columns, for formats that
+     * are read a block of rows at a time
+     * @param filter a filter from getRowFilter(), or null to keep all rows
+     */
+    protected Table filterRows(Table table, ReadSelection selection, Predicate<Object> filter) {
+        if (filter == null) return table;
+        Column<?> column = table.column(selection.getFilterColumn());
+        Selection keep = new BitmapBackedSelection();
+        for (int row = 0; row < column.size(); row++) {
+            if (! column.isMissing(row) && filter.test(column.get(row))) {
+                keep.add(row);
+            }
+        }
+        return keep.size() == table.rowCount() ? table : table.where(keep);
+    }
+
+
+    /**
+     * @return the 'Table Name' option's value, or if it isn't set the name of the
+     * source's file (if any)
+     */
+    protected String getTableName() {
+        String name = getOptions().get("Table Name").asString();
+        File file = getSource().file();
+        return name.isEmpty() && file != null ? file.getName() : name;
+    }
+
+
+    // the names of the parsed columns, once the parser has read the header row
+    private String[] getColumnNames(AbstractParser<?> parser, ReadOptions options,
+                                    ReadSelection selection) {
+        if (! options.header()) {
+            return selection.columnNames(null);
+        }
+        String[] headers = parser.getContext().headers();
+        return headers != null ? selection.columnNames(headers) :
+                selection.getParsedColumns();                 // no header row found
+    }
+
+
+    protected interface TableConsumer {
+        void accept(Table table) throws IOException, InterruptedException;
+    }
+
+
+    /**
+     * Builds tables from rows of parsed string values. Column types are detected
+     * from the first sampleSize rows, after which each row that passes the
+     * selection's filter is appended directly to the current table.
+     */
+    protected class RowTableBuilder {
+
+        private final String[] _names;
+        private final ReadOptions _options;
+        private final ReadSelection _selection;
+        private final int _sampleSize;
+        private final int _batchSize;
+        private List<String[]> _sample = new ArrayList<>();
+        private ColumnType[] _types;
+        private AbstractColumnParser<?>[] _parsers;
+        private Predicate<String[]> _filter;
+        private Table _table;
+
+        public RowTableBuilder(String[] names, ReadOptions options, ReadSelection selection,
+                               int sampleSize, int batchSize) {
+            _names = names;
+            _options = options;
+            _selection = selection;
+            _sampleSize = sampleSize;
+            _batchSize = batchSize;
+        }
+
+
+        /**
+         * @return a completed batch, or null if the current batch isn't full
+         */
+        public Table add(String[] row) throws IOException {
+            if (_types == null) {
+                _sample.add(row);
+                if (_sample.size() < _sampleSize) return null;
+                endSample();
+            }
+            else if (_filter.test(row)) {
+                appendRow(_table, _parsers, row);
+            }
+            return _table.rowCount() >= _batchSize ? takeBatch() : null;
+        }
+
+
+        /**
+         * @return the last batch, which may be empty
+         */
+        public Table finish() throws IOException {
+            if (_types == null) endSample();
+            return takeBatch();
+        }
+
+
+        private void endSample() throws IOException {
+            if (_sample.isEmpty()) {
+                _types = new ColumnType[_names != null ? _names.length : 0];
+                Arrays.fill(_types, ColumnType.STRING);
+            }
+            else {
+                _types = detectColumnTypes(_sample, _options);
+            }
+            _parsers = getParsers(_types, _options);
+            _filter = _selection.rowFilter(_names, _types, _options);
+            _table = createTable(_names, _types, _options);
+            for (String[] row : _sample) {
+                if (_filter.test(row)) {
+                    appendRow(_table, _parsers, row);
+                }
+            }
+            _sample = null;
+        }
+
+
+        private Table takeBatch() {
+            Table batch = _table;
+            _table = createTable(_names, _types, _options);
+            return _selection.finish(batch);
+        }
+    }
+
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.processdataquality.praeclarus.annotations.Plugin;
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import tech.tablesaw.api.*;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.io.ReadOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reads an Arrow IPC file (the random access format, as .arrow or .feather v2) into
+ * typed columns, one record batch at a time. Only the selected columns are converted,
+ * and the row filter is applied to each batch as it's read. Compressed (LZ4 or ZSTD)
+ * batches are decompressed transparently. Columns of nested types are loaded as
+ * strings.
+ *
+ * @author Michael Adams
+ * @date 25/8/2022
+ */
+@Plugin(
+        name = "Arrow Reader",
+        author = "Michael Adams",
+        version = "1.0",
+        synopsis = "Loads a log file stored in Arrow IPC (Feather) format.",
+        fileDescriptors = "application/vnd.apache.arrow.file;.arrow;.feather"
+)
+public class ArrowDataReader extends AbstractDataReader {
+
+    public ArrowDataReader() {
+        super();
+        ReadSelection.addDefaults(getOptions());
+    }
+
+
+    @Override
+    protected ReadOptions getReadOptions() {             // N/A
+        return null;
+    }
+
+
+    @Override
+    public Table read() throws IOException {
+        ReadSelection selection = getSelection();
+        File file = getSourceAsFile();
+        try (BufferAllocator allocator = new RootAllocator();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             ArrowFileReader reader = new ArrowFileReader(channel, allocator,
+                     CommonsCompressionFactory.INSTANCE)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            List<Integer> indexes = project(root.getSchema().getFields(), selection);
+            Table table = Table.create(getTableName());
+            for (int index : indexes) {
+                Field field = root.getSchema().getFields().get(index);
+                table.addColumns(columnType(field).create(field.getName()));
+            }
+            Predicate<Object> rowFilter = getRowFilter(table, selection);
+
+            while (reader.loadNextBatch()) {
+                checkCancelled();
+                Table batch = table.emptyCopy();
+                for (int i = 0; i < indexes.size(); i++) {
+                    FieldVector vector = root.getVector(indexes.get(i));
+                    readVector(vector, batch.column(i), root.getRowCount());
+                }
+                table.append(filterRows(batch, selection, rowFilter));
+            }
+            return selection.finish(table);
+        }
+        finally {
+            if (! file.equals(getSource().file())) {
+                file.delete();                                   // temporary copy
+            }
+        }
+    }
+
+
+    // the indexes of the selected fields, or of all fields
+    private List<Integer> project(List<Field> fields, ReadSelection selection) {
+        List<Integer> indexes = new ArrayList<>();
+        String[] names = selection.getParsedColumns();
+        if (names != null) {
+            for (String name : names) {
+                int index = indexOf(fields, name);
+                if (index < 0) {
+                    throw new InvalidOptionValueException("Column '" + name + "' not found");
+                }
+                indexes.add(index);
+            }
+        }
+        else {
+            for (int i = 0; i < fields.size(); i++) indexes.add(i);
+        }
+        return indexes;
+    }
+
+
+    private int indexOf(List<Field> fields, String name) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).getName().equals(name)) return i;
+        }
+        return -1;
+    }
+
+
+    private ColumnType columnType(Field field) {
+        ArrowType type = field.getType();
+        switch (type.getTypeID()) {
+            case Bool: return ColumnType.BOOLEAN;
+            case Int:
+                ArrowType.Int intType = (ArrowType.Int) type;
+                return intType.getBitWidth() < 32 ||
+                        (intType.getBitWidth() == 32 && intType.getIsSigned()) ?
+                        ColumnType.INTEGER : ColumnType.LONG;
+            case FloatingPoint:
+                return ((ArrowType.FloatingPoint) type).getPrecision() ==
+                        FloatingPointPrecision.DOUBLE ?
+                        ColumnType.DOUBLE : ColumnType.FLOAT;
+            case Decimal: return ColumnType.DOUBLE;
+            case Date: return ColumnType.LOCAL_DATE;
+            case Time: return ColumnType.LOCAL_TIME;
+            case Timestamp: return ColumnType.LOCAL_DATE_TIME;
+            default: return ColumnType.STRING;
+        }
+    }
+
+
+    private void readVector(FieldVector vector, Column<?> column, int rowCount) {
+        for (int row = 0; row < rowCount; row++) {
+            if (vector.isNull(row)) {
+                column.appendMissing();
+            }
+            else {
+                appendValue(vector, row, column);
+            }
+        }
+    }
+
+
+    private void appendValue(FieldVector vector, int row, Column<?> column) {
+        if (vector instanceof BitVector) {
+            ((BooleanColumn) column).append(((BitVector) vector).get(row) != 0);
+        }
+        else if (vector instanceof BaseIntVector) {
+            long value = ((BaseIntVector) vector).getValueAsLong(row);
+            if (column instanceof IntColumn) {
+                ((IntColumn) column).append((int) value);
+            }
+            else {
+                ((LongColumn) column).append(value);
+            }
+        }
+        else if (vector instanceof Float8Vector) {
+            ((DoubleColumn) column).append(((Float8Vector) vector).get(row));
+        }
+        else if (vector instanceof Float4Vector) {
+            ((FloatColumn) column).append(((Float4Vector) vector).get(row));
+        }
+        else if (vector instanceof VarCharVector) {
+            ((StringColumn) column).append(new String(((VarCharVector) vector).get(row),
+                    StandardCharsets.UTF_8));
+        }
+        else if (vector instanceof DateDayVector) {
+            ((DateColumn) column).append(LocalDate.ofEpochDay(
+                    ((DateDayVector) vector).get(row)));
+        }
+        else if (vector instanceof DateMilliVector) {
+            ((DateColumn) column).append(LocalDate.ofEpochDay(Math.floorDiv(
+                    ((DateMilliVector) vector).get(row), 86400000L)));
+        }
+        else if (vector instanceof TimeStampVector) {
+            ArrowType.Timestamp type = (ArrowType.Timestamp) vector.getField().getType();
+            ((DateTimeColumn) column).append(toDateTime(((TimeStampVector) vector).get(row),
+                    type.getUnit(), type.getTimezone() != null));
+        }
+        else if (vector instanceof TimeSecVector) {
+            ((TimeColumn) column).append(LocalTime.ofSecondOfDay(
+                    ((TimeSecVector) vector).get(row)));
+        }
+        else if (vector instanceof TimeMilliVector) {
+            ((TimeColumn) column).append(LocalTime.ofNanoOfDay(
+                    ((TimeMilliVector) vector).get(row) * 1000000L));
+        }
+        else if (vector instanceof TimeMicroVector) {
+            ((TimeColumn) column).append(LocalTime.ofNanoOfDay(
+                    ((TimeMicroVector) vector).get(row) * 1000L));
+        }
+        else if (vector instanceof TimeNanoVector) {
+            ((TimeColumn) column).append(LocalTime.ofNanoOfDay(
+                    ((TimeNanoVector) vector).get(row)));
+        }
+        else if (vector instanceof DecimalVector) {
+            BigDecimal value = ((DecimalVector) vector).getObject(row);
+            ((DoubleColumn) column).append(value.doubleValue());
+        }
+        else {
+            ((StringColumn) column).append(String.valueOf(vector.getObject(row)));
+        }
+    }
+
+
+    private LocalDateTime toDateTime(long value, TimeUnit unit, boolean zoned) {
+        long unitsPerSecond;
+        switch (unit) {
+            case SECOND: unitsPerSecond = 1; break;
+            case MILLISECOND: unitsPerSecond = 1000; break;
+            case MICROSECOND: unitsPerSecond = 1000000; break;
+            default: unitsPerSecond = 1000000000;
+        }
+        long seconds = Math.floorDiv(value, unitsPerSecond);
+        int nanos = (int) (Math.floorMod(value, unitsPerSecond) * (1000000000 / unitsPerSecond));
+        if (zoned) {                                 // an instant, shown in local time
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos),
+                    ZoneId.systemDefault());
+        }
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+}
@@ -19,8 +19,17 @@ package com.processdataquality.praeclarus.reader;
 
 import com.processdataquality.praeclarus.annotations.Plugin;
 import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.processdataquality.praeclarus.util.TableStream;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+import tech.tablesaw.api.Table;
 import tech.tablesaw.io.csv.CsvReadOptions;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
 /**
  * @author Michael Adams
  * @date 29/3/21
@@ -30,13 +39,59 @@ import tech.tablesaw.io.csv.CsvReadOptions;
         author = "Michael Adams",
         version = "1.0",
         synopsis = "Loads a log file consisting of lines of comma separated values.",
-        fileDescriptors = "text/csv;text/plain;.csv"
+        fileDescriptors = "text/csv;text/plain;.csv;.gz;.zst;.bz2;.xz"
 )
-public class CsvDataReader extends AbstractDataReader {
+public class CsvDataReader extends AbstractDataReader implements StreamingDataReader {
 
     public CsvDataReader() {
         super();
         getOptions().addDefault("Separator", ',');
+        getOptions().addDefault("Streaming", false);
+        ReadSelection.addDefaults(getOptions());
+    }
+
+
+    @Override
+    public boolean isStreaming() {
+        return getOptions().get("Streaming").asBoolean();
+    }
+
+
+    /**
+     * Reads the csv source into a table. If only some columns or rows are selected, the
+     * source is parsed directly so that unselected values are dropped as they're read.
+     */
+    @Override
+    public Table read() throws IOException {
+        ReadSelection selection = getSelection();
+        if (selection.isEmpty()) {
+            return super.read();
+        }
+        CsvReadOptions options = getReadOptions();
+        try (Reader reader = getSourceReader(options)) {
+            return parse(new CsvParser(getParserSettings(options, selection)), reader,
+                    options, selection);
+        }
+    }
+
+
+    /**
+     * Reads the csv source row by row, adding rows to the stream in batches. Column
+     * types are detected from the same number of leading rows as a full read (or
+     * from the first batch, if that is larger), so a streamed read types its columns
+     * as a full read would.
+     */
+    @Override
+    public void read(int batchSize, TableStream sink) throws IOException, InterruptedException {
+        CsvReadOptions options = getReadOptions();
+        ReadSelection selection = getSelection();
+        try (Reader reader = getSourceReader(options)) {
+            parse(new CsvParser(getParserSettings(options, selection)), reader, options,
+                    selection, Math.max(batchSize, TYPE_SAMPLE_ROWS), batchSize, batch -> {
+                        if (! batch.isEmpty()) sink.put(batch);
+                    });
+            sink.close();
+        }
     }
 
 
@@ -60,6 +115,37 @@ public class CsvDataReader extends AbstractDataReader {
         }
         return builder.build();
     }
+
+
+    protected CsvParserSettings getParserSettings(CsvReadOptions options) {
+        CsvParserSettings settings = new CsvParserSettings();
+        settings.getFormat().setDelimiter(options.separator());
+        if (options.quoteChar() != null) {
+            settings.getFormat().setQuote(options.quoteChar());
+        }
+        settings.setLineSeparatorDetectionEnabled(true);
+        settings.setMaxColumns(options.maxNumberOfColumns());
+        settings.setSkipEmptyLines(true);
+        settings.setNullValue("");
+        settings.setEmptyValue("");
+        return settings;
+    }
+
+
+    protected CsvParserSettings getParserSettings(CsvReadOptions options,
+                                                  ReadSelection selection) {
+        CsvParserSettings settings = getParserSettings(options);
+        selection.select(settings, null, options.header());
+        return settings;
+    }
+
+
+    protected Reader getSourceReader(CsvReadOptions options) throws IOException {
+        Charset charset = options.source().getCharset();
+        return new InputStreamReader(getSourceAsInputStream(),
+                charset != null ? charset : Charset.defaultCharset());
+    }
+
         
 //        return CsvReadOptions.builder(fileName)
 //                .separator(_options.get("Separator").asChar())
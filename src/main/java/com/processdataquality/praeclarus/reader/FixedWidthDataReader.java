@@ -18,8 +18,18 @@ package com.processdataquality.praeclarus.reader;
 
 import com.processdataquality.praeclarus.annotations.Plugin;
 import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.univocity.parsers.fixed.FixedWidthFields;
+import com.univocity.parsers.fixed.FixedWidthParser;
+import com.univocity.parsers.fixed.FixedWidthParserSettings;
+import org.apache.commons.lang3.StringUtils;
+import tech.tablesaw.api.Table;
 import tech.tablesaw.io.fixed.FixedWidthReadOptions;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
 /**
  * @author Michael Adams
  * @date 30/3/21
@@ -36,6 +46,29 @@ public class FixedWidthDataReader extends AbstractDataReader {
         super();
         getOptions().addDefault("Separator", ",");
         getOptions().addDefault("Ends on New Line", true);
+        getOptions().addDefault("Field Widths", "");
+        ReadSelection.addDefaults(getOptions());
+    }
+
+
+    /**
+     * Reads the source into a table. If only some columns or rows are selected, the
+     * source is parsed directly so that unselected values are dropped as they're read.
+     */
+    @Override
+    public Table read() throws IOException {
+        ReadSelection selection = getSelection();
+        if (selection.isEmpty()) {
+            return super.read();
+        }
+        FixedWidthReadOptions options = getReadOptions();
+        FixedWidthParserSettings settings = getParserSettings(options);
+        selection.select(settings, null, options.header());
+        Charset charset = options.source().getCharset();
+        try (Reader reader = new InputStreamReader(getSourceAsInputStream(),
+                charset != null ? charset : Charset.defaultCharset())) {
+            return parse(new FixedWidthParser(settings), reader, options, selection);
+        }
     }
 
 
@@ -49,7 +82,37 @@ public class FixedWidthDataReader extends AbstractDataReader {
                 .tableName(getOptions().get("Table Name").asString())
                 .sample(getOptions().get("Sample").asBoolean())
                 .recordEndsOnNewline(getOptions().get("Ends on New Line").asBoolean())
+                .columnSpecs(getFieldWidths())
                 .build();
     }
 
+
+    private FixedWidthParserSettings getParserSettings(FixedWidthReadOptions options) {
+        FixedWidthParserSettings settings = new FixedWidthParserSettings(options.columnSpecs());
+        settings.getFormat().setPadding(options.padding());
+        settings.setRecordEndsOnNewline(options.recordEndsOnNewline());
+        settings.setLineSeparatorDetectionEnabled(true);
+        settings.setSkipEmptyLines(true);
+        settings.setNullValue("");
+        return settings;
+    }
+
+
+    // field widths are a list of integers, separated by commas or spaces
+    private FixedWidthFields getFieldWidths() {
+        String value = getOptions().get("Field Widths").asString();
+        String[] items = StringUtils.split(value, ", ");
+        if (items == null || items.length == 0) {
+            throw new InvalidOptionValueException("Parameter 'Field Widths' requires a value");
+        }
+        int[] widths = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            if (! StringUtils.isNumeric(items[i]) || Integer.parseInt(items[i]) < 1) {
+                throw new InvalidOptionValueException("Invalid field width: " + items[i]);
+            }
+            widths[i] = Integer.parseInt(items[i]);
+        }
+        return new FixedWidthFields(widths);
+    }
+
 }
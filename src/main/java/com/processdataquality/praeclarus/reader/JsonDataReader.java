@@ -17,9 +17,19 @@
 package com.processdataquality.praeclarus.reader;
 
 import com.processdataquality.praeclarus.annotations.Plugin;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import tech.tablesaw.api.Table;
 import tech.tablesaw.io.json.JsonReadOptions;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Michael Adams
  * @date 29/3/21
@@ -32,9 +42,31 @@ import tech.tablesaw.io.json.JsonReadOptions;
 )
 public class JsonDataReader extends AbstractDataReader {
 
+    private static final int CANCEL_CHECK_INTERVAL = 10000;          // records
+
     public JsonDataReader() {
         super();
+        ReadSelection.addDefaults(getOptions());
+    }
+
+
+    /**
+     * Reads the source into a table. If only some columns or rows are selected, the
+     * source is read as a stream of JSON tokens, and the values of unselected fields
+     * are skipped rather than loaded.
+     */
+    @Override
+    public Table read() throws IOException {
+        ReadSelection selection = getSelection();
+        if (selection.isEmpty()) {
+            return super.read();
+        }
+        JsonReadOptions options = getReadOptions();
+        try (JsonParser json = new JsonFactory().createParser(getSourceAsInputStream())) {
+            return new RecordParser(json, options, selection).parse();
+        }
     }
+
     protected JsonReadOptions getReadOptions() throws InvalidOptionValueException {
         return JsonReadOptions.builder(getSource())
                 .missingValueIndicator(getOptions().get("Missing Value").asString())
@@ -47,4 +79,186 @@ public class JsonDataReader extends AbstractDataReader {
                 .build();
     }
 
+
+    /**
+     * Parses an array of records, each either an object or an array of values. Nested
+     * objects are flattened into columns named 'parent.child', and nested arrays into
+     * columns named 'parent[0]' etc. If the records are arrays, the first holds the
+     * column names when the 'Header' option is set.
+     */
+    private class RecordParser {
+
+        private final JsonParser _json;
+        private final JsonReadOptions _options;
+        private final ReadSelection _selection;
+        private final Map<String, Integer> _columns = new LinkedHashMap<>();
+        private final boolean _projected;
+        private List<Integer> _positions;           // column index of each array value
+
+        RecordParser(JsonParser json, JsonReadOptions options, ReadSelection selection) {
+            _json = json;
+            _options = options;
+            _selection = selection;
+            String[] names = selection.getParsedColumns();
+            _projected = names != null;
+            if (_projected) {
+                for (String name : names) _columns.put(name, _columns.size());
+            }
+        }
+
+
+        Table parse() throws IOException {
+            if (_json.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of records");
+            }
+
+            // the columns are known in advance only if projected
+            RowTableBuilder builder = _projected ? newBuilder() : null;
+            List<String[]> rows = _projected ? null : new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            int count = 0;
+            JsonToken token;
+            while ((token = _json.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                values.clear();
+                if (token == JsonToken.START_OBJECT) {
+                    readObject("", values);
+                }
+                else if (token == JsonToken.START_ARRAY) {
+                    if (_positions == null && _options.header()) {
+                        readHeader();
+                        continue;
+                    }
+                    readArray(values);
+                }
+                else {
+                    throw new IOException("Expected a JSON object or array at " +
+                            _json.getCurrentLocation());
+                }
+                String[] row = values.toArray(new String[0]);
+                if (builder != null) {
+                    builder.add(row);
+                }
+                else {
+                    rows.add(row);
+                }
+                if (++count % CANCEL_CHECK_INTERVAL == 0) {
+                    checkCancelled();
+                }
+            }
+            if (builder == null) {
+                builder = newBuilder();
+                for (String[] row : rows) builder.add(row);
+            }
+            return builder.finish();
+        }
+
+
+        private RowTableBuilder newBuilder() {
+            return new RowTableBuilder(_columns.keySet().toArray(new String[0]), _options,
+                    _selection, TYPE_SAMPLE_ROWS, Integer.MAX_VALUE);
+        }
+
+
+        private void readObject(String prefix, List<String> values) throws IOException {
+            while (_json.nextToken() == JsonToken.FIELD_NAME) {
+                readValue(prefix + _json.getCurrentName(), values);
+            }
+        }
+
+
+        private void readValue(String name, List<String> values) throws IOException {
+            JsonToken token = _json.nextToken();
+            if (_projected && (token == JsonToken.START_OBJECT ||
+                    token == JsonToken.START_ARRAY) && ! isSelectedPrefix(name)) {
+                _json.skipChildren();
+            }
+            else {
+                readNested(name, values);
+            }
+        }
+
+
+        // reads a value whose first token has already been consumed
+        private void readNested(String name, List<String> values) throws IOException {
+            JsonToken token = _json.currentToken();
+            if (token == JsonToken.START_OBJECT) {
+                readObject(name + ".", values);
+            }
+            else if (token == JsonToken.START_ARRAY) {
+                int i = 0;
+                while (_json.nextToken() != JsonToken.END_ARRAY) {
+                    readNested(name + "[" + i++ + "]", values);
+                }
+            }
+            else {
+                Integer index = getColumnIndex(name);
+                if (index != null) set(values, index, scalar(token));
+            }
+        }
+
+
+        private void readHeader() throws IOException {
+            _positions = new ArrayList<>();
+            while (_json.nextToken() != JsonToken.END_ARRAY) {
+                _positions.add(getColumnIndex(scalar(_json.currentToken())));
+            }
+        }
+
+
+        private void readArray(List<String> values) throws IOException {
+            int position = 0;
+            JsonToken token;
+            while ((token = _json.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    _json.skipChildren();
+                }
+                else {
+                    Integer index = getPositionIndex(position);
+                    if (index != null) set(values, index, scalar(token));
+                }
+                position++;
+            }
+        }
+
+
+        // the index of a column in each row, or null if the column isn't selected
+        private Integer getColumnIndex(String name) {
+            Integer index = _columns.get(name);
+            if (index == null && ! _projected) {
+                index = _columns.size();
+                _columns.put(name, index);
+            }
+            return index;
+        }
+
+
+        private Integer getPositionIndex(int position) {
+            if (_positions != null) {
+                return position < _positions.size() ? _positions.get(position) : null;
+            }
+            return getColumnIndex("C" + position);
+        }
+
+
+        private boolean isSelectedPrefix(String name) {
+            for (String column : _columns.keySet()) {
+                if (column.startsWith(name + ".") || column.startsWith(name + "[")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+
+        private String scalar(JsonToken token) throws IOException {
+            return token == JsonToken.VALUE_NULL ? "" : _json.getText();
+        }
+
+
+        private void set(List<String> values, int index, String value) {
+            while (values.size() <= index) values.add("");
+            values.set(index, value);
+        }
+    }
+
 }
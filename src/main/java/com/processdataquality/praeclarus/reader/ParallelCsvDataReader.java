@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.processdataquality.praeclarus.annotations.Plugin;
+import com.processdataquality.praeclarus.graph.RunnerExecutors;
+import com.processdataquality.praeclarus.util.Compression;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.AbstractColumnParser;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * Reads a csv file by splitting it into byte ranges that each begin on a record
+ * boundary, then parsing the ranges concurrently into typed tables that are appended
+ * in order. Column types are detected once, from a sample of the leading rows. Column
+ * and row selections are applied as each range is parsed.
+ * <p>
+ * Boundaries are found with a single pass over the raw bytes that tracks whether each
+ * newline falls inside a quoted value, so quoted values spanning lines are never split.
+ * This needs a file source and a charset in which the quote and newline characters
+ * are single bytes that can't occur within another character (e.g. UTF-8). Other
+ * sources, small files, and files with values that don't fit the sampled column
+ * types are read sequentially instead.
+ *
+ * @author Michael Adams
+ * @date 21/8/2022
+ */
+@Plugin(
+        name = "Parallel CSV Reader",
+        author = "Michael Adams",
+        version = "1.0",
+        synopsis = "Loads a large log file of comma separated values, using all available " +
+                "processors to parse it.",
+        fileDescriptors = "text/csv;text/plain;.csv;.gz;.zst;.bz2;.xz"
+)
+public class ParallelCsvDataReader extends CsvDataReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelCsvDataReader.class);
+
+    private static final int CHECK_INTERVAL = 10000;
+    private static final int RANGES_PER_THREAD = 4;            // evens out uneven ranges
+    private static final long MIN_RANGE_BYTES = 4L * 1024 * 1024;
+    private static final int SCAN_BUFFER_BYTES = 1 << 20;
+
+    public ParallelCsvDataReader() {
+        super();
+        getOptions().addDefault("Threads", 0);
+    }
+
+
+    @Override
+    public Table read() throws IOException {
+        CsvReadOptions options = getReadOptions();
+        ReadSelection selection = getSelection();
+        File file = getSource().file();
+        Charset charset = getCharset(options);
+        char quote = options.quoteChar() != null ? options.quoteChar() : '"';
+        if (file == null || ! isAsciiCompatible(charset) || quote > 0x7F ||
+                file.length() < 2 * MIN_RANGE_BYTES ||
+                Compression.detect(file) != Compression.NONE) {      // can't split
+            return super.read();
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long start = bomLength(channel, charset);
+            String[] headers = null;
+            if (options.header()) {
+                long headerEnd = skipToRecordEnd(channel, start, (byte) quote);
+                headers = parseHeader(channel, start, headerEnd, charset, options);
+                start = headerEnd;
+            }
+            String[] names = selection.columnNames(headers);
+            List<String[]> sample = sample(channel, start, charset, options, headers, selection);
+            if (sample.isEmpty()) {
+                return super.read();
+            }
+            ColumnType[] types = detectColumnTypes(sample, options);
+            sample = null;                                          // allow gc
+
+            List<long[]> ranges = split(channel, start, (byte) quote);
+            RangeParser rangeParser = new RangeParser(file, headers, names, types, charset,
+                    options, selection);
+            return selection.finish(parse(ranges, rangeParser));
+        }
+        catch (SampleMismatchException e) {
+            LOG.warn("{}; reading '{}' sequentially", e.getMessage(), file.getName());
+            return super.read();
+        }
+    }
+
+
+    private Table parse(List<long[]> ranges, RangeParser rangeParser) throws IOException {
+        List<Future<Table>> futures = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            futures.add(RunnerExecutors.parsers().submit(() -> rangeParser.parse(range)));
+        }
+        try {
+            Table table = null;
+            for (int i = 0; i < futures.size(); i++) {
+                Table part = futures.get(i).get();
+                futures.set(i, null);                               // allow gc
+                if (table == null) {
+                    table = part;
+                }
+                else {
+                    table.append(part);
+                }
+            }
+            return table;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(getLabel() + " cancelled");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+        finally {
+            for (Future<Table> future : futures) {
+                if (future != null) future.cancel(true);
+            }
+        }
+    }
+
+
+    /**
+     * Splits the bytes from start to the end of the file into ranges that each end
+     * just after a newline that isn't within a quoted value. Doubled (escaped) quotes
+     * toggle the quoted state twice, so leave it unchanged.
+     * @return a list of [start, end) byte offsets
+     */
+    private List<long[]> split(FileChannel channel, long start, byte quote) throws IOException {
+        long size = channel.size();
+        long rangeBytes = Math.max(MIN_RANGE_BYTES, (size - start) /
+                ((long) getThreadCount() * RANGES_PER_THREAD));
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        byte[] bytes = buffer.array();
+        boolean quoted = false;
+        long rangeStart = start;
+        long position = start;
+        long next = start + rangeBytes;
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                if (b == quote) {
+                    quoted = ! quoted;
+                }
+                else if (b == '\n' && ! quoted && position + i >= next) {
+                    long end = position + i + 1;
+                    ranges.add(new long[] { rangeStart, end });
+                    rangeStart = end;
+                    next = end + rangeBytes;
+                }
+            }
+            position += read;
+            buffer.clear();
+            checkCancelled();
+        }
+        if (rangeStart < size) {
+            ranges.add(new long[] { rangeStart, size });
+        }
+        return ranges;
+    }
+
+
+    /**
+     * @return the offset just after the first non-empty record from start
+     */
+    private long skipToRecordEnd(FileChannel channel, long start, byte quote)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        byte[] bytes = buffer.array();
+        boolean quoted = false;
+        boolean empty = true;
+        long position = start;
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                if (b == quote) {
+                    quoted = ! quoted;
+                }
+                if (b == '\n' && ! quoted) {
+                    if (! empty) return position + i + 1;
+                }
+                else if (b != '\r') {
+                    empty = false;
+                }
+            }
+            position += read;
+            buffer.clear();
+        }
+        return position;
+    }
+
+
+    private String[] parseHeader(FileChannel channel, long start, long end, Charset charset,
+                                 CsvReadOptions options) throws IOException {
+        CsvParser parser = new CsvParser(getParserSettings(options));
+        try (Reader reader = rangeReader(channel, start, end, charset)) {
+            parser.beginParsing(reader);
+            return parser.parseNext();
+        }
+        finally {
+            parser.stopParsing();
+        }
+    }
+
+
+    private List<String[]> sample(FileChannel channel, long start, Charset charset,
+                                  CsvReadOptions options, String[] headers,
+                                  ReadSelection selection) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        CsvParserSettings settings = getParserSettings(options);
+        selection.select(settings, headers, false);
+        CsvParser parser = new CsvParser(settings);
+        try (Reader reader = rangeReader(channel, start, channel.size(), charset)) {
+            parser.beginParsing(reader);
+            String[] row;
+            while (rows.size() < TYPE_SAMPLE_ROWS && (row = parser.parseNext()) != null) {
+                rows.add(row);
+            }
+            return rows;
+        }
+        finally {
+            parser.stopParsing();
+        }
+    }
+
+
+    // reads [start, end) of the channel without moving the channel's own position
+    private Reader rangeReader(FileChannel channel, long start, long end, Charset charset) {
+        InputStream in = new InputStream() {
+            private final ByteBuffer one = ByteBuffer.allocate(1);
+            private long position = start;
+
+            @Override
+            public int read() throws IOException {
+                one.clear();
+                int n = read(one.array(), 0, 1);
+                return n < 0 ? -1 : one.get(0) & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= end) return -1;
+                int n = channel.read(ByteBuffer.wrap(b, off,
+                        (int) Math.min(len, end - position)), position);
+                if (n > 0) position += n;
+                return n;
+            }
+
+            @Override
+            public void close() { }                            // channel closed by owner
+        };
+        return new InputStreamReader(in, charset);
+    }
+
+
+    private long bomLength(FileChannel channel, Charset charset) throws IOException {
+        if (! StandardCharsets.UTF_8.equals(charset)) return 0;
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        channel.read(buffer, 0);
+        byte[] bytes = buffer.array();
+        return buffer.position() == 3 && (bytes[0] & 0xFF) == 0xEF &&
+                (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF ? 3 : 0;
+    }
+
+
+    private Charset getCharset(CsvReadOptions options) {
+        Charset charset = options.source().getCharset();
+        return charset != null ? charset : Charset.defaultCharset();
+    }
+
+
+    // true if quotes and newlines are single bytes that never occur within another char
+    private boolean isAsciiCompatible(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) ||
+                StandardCharsets.US_ASCII.equals(charset) ||
+                StandardCharsets.ISO_8859_1.equals(charset) ||
+                charset.name().startsWith("ISO-8859-") ||
+                charset.name().startsWith("windows-125");
+    }
+
+
+    private int getThreadCount() {
+        int threads = getOptions().get("Threads").asInt();
+        int available = RunnerExecutors.parserCount();
+        return threads > 0 ? Math.min(threads, available) : available;
+    }
+
+
+    // parses a byte range of the file into a table of the selected columns and rows
+    private class RangeParser {
+
+        private final File _file;
+        private final String[] _headers;
+        private final String[] _names;
+        private final ColumnType[] _types;
+        private final Charset _charset;
+        private final CsvReadOptions _options;
+        private final ReadSelection _selection;
+
+        RangeParser(File file, String[] headers, String[] names, ColumnType[] types,
+                    Charset charset, CsvReadOptions options, ReadSelection selection) {
+            _file = file;
+            _headers = headers;
+            _names = names;
+            _types = types;
+            _charset = charset;
+            _options = options;
+            _selection = selection;
+        }
+
+
+        Table parse(long[] range) throws IOException {
+            Table table = createTable(_names, _types, _options);
+            AbstractColumnParser<?>[] parsers = getParsers(_types, _options);
+            Predicate<String[]> filter = _selection.rowFilter(_names, _types, _options);
+            CsvParserSettings settings = getParserSettings(_options);
+            _selection.select(settings, _headers, false);
+            CsvParser parser = new CsvParser(settings);
+            try (FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+                 Reader reader = rangeReader(channel, range[0], range[1], _charset)) {
+                parser.beginParsing(reader);
+                String[] row;
+                int count = 0;
+                while ((row = parser.parseNext()) != null) {
+                    if (++count % CHECK_INTERVAL == 0) {
+                        checkCancelled();
+                    }
+                    if (! filter.test(row)) continue;
+                    try {
+                        appendRow(table, parsers, row);
+                    }
+                    catch (IOException e) {
+                        throw new SampleMismatchException(e.getMessage());
+                    }
+                }
+                return table;
+            }
+            finally {
+                parser.stopParsing();
+            }
+        }
+    }
+
+
+    // a value in a range that doesn't fit the column type detected from the sample
+    private static class SampleMismatchException extends IOException {
+        SampleMismatchException(String message) { super(message); }
+    }
+
+}
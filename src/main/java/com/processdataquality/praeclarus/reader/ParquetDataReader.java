@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.processdataquality.praeclarus.annotations.Plugin;
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.processdataquality.praeclarus.util.ParquetFiles;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.statisticslevel.StatisticsFilter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.DateLogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.DecimalLogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimeLogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimeUnit;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimestampLogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tech.tablesaw.api.*;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.io.ReadOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reads a Parquet file directly into typed columns, one row group at a time. Only
+ * the selected columns are decoded, and row groups whose min/max statistics show
+ * that none of their rows can pass the row filter are skipped without being read.
+ * Nested and repeated fields aren't supported, and are left out of the table.
+ *
+ * @author Michael Adams
+ * @date 24/8/2022
+ */
+@Plugin(
+        name = "Parquet Reader",
+        author = "Michael Adams",
+        version = "1.0",
+        synopsis = "Loads a log file stored in Parquet format.",
+        fileDescriptors = "application/vnd.apache.parquet;.parquet"
+)
+public class ParquetDataReader extends AbstractDataReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParquetDataReader.class);
+
+    private static final int CANCEL_CHECK_INTERVAL = 100000;        // values
+    private static final long JULIAN_EPOCH_DAY = 2440588;          // 1970-01-01
+
+    public ParquetDataReader() {
+        super();
+        ReadSelection.addDefaults(getOptions());
+    }
+
+
+    @Override
+    protected ReadOptions getReadOptions() {             // N/A
+        return null;
+    }
+
+
+    @Override
+    public Table read() throws IOException {
+        ReadSelection selection = getSelection();
+        File file = getSourceAsFile();
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                new ParquetFiles.LocalInputFile(file), ParquetReadOptions.builder().build())) {
+            MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+            String createdBy = reader.getFooter().getFileMetaData().getCreatedBy();
+            MessageType projection = project(schema, selection);
+            reader.setRequestedSchema(projection);
+
+            List<ColumnDescriptor> descriptors = projection.getColumns();
+            ColumnType[] types = new ColumnType[descriptors.size()];
+            Table table = Table.create(getTableName());
+            for (int i = 0; i < types.length; i++) {
+                types[i] = columnType(descriptors.get(i).getPrimitiveType());
+                table.addColumns(types[i].create(projection.getFieldName(i)));
+            }
+            FilterPredicate predicate = getStatisticsPredicate(projection, selection);
+            Predicate<Object> rowFilter = getRowFilter(table, selection);
+
+            int skipped = 0;
+            for (BlockMetaData block : reader.getRowGroups()) {
+                checkCancelled();
+                if (predicate != null && StatisticsFilter.canDrop(predicate, block.getColumns())) {
+                    reader.skipNextRowGroup();
+                    skipped++;
+                    continue;
+                }
+                PageReadStore pages = reader.readNextRowGroup();
+                Table group = table.emptyCopy();
+                ColumnReadStoreImpl store = new ColumnReadStoreImpl(pages,
+                        new GroupRecordConverter(projection).getRootConverter(),
+                        projection, createdBy);
+                for (int i = 0; i < descriptors.size(); i++) {
+                    readColumn(store.getColumnReader(descriptors.get(i)), descriptors.get(i),
+                            group.column(i));
+                }
+                table.append(filterRows(group, selection, rowFilter));
+            }
+            if (skipped > 0) {
+                LOG.debug("Skipped {} of {} row groups of '{}' by their statistics",
+                        skipped, reader.getRowGroups().size(), file.getName());
+            }
+            return selection.finish(table);
+        }
+        finally {
+            if (! file.equals(getSource().file())) {
+                file.delete();                                   // temporary copy
+            }
+        }
+    }
+
+
+    // the selected fields, or all the flat (non-nested, non-repeated) fields
+    private MessageType project(MessageType schema, ReadSelection selection) {
+        List<Type> fields = new ArrayList<>();
+        String[] names = selection.getParsedColumns();
+        if (names != null) {
+            for (String name : names) {
+                if (! schema.containsField(name)) {
+                    throw new InvalidOptionValueException("Column '" + name + "' not found");
+                }
+                Type field = schema.getType(name);
+                if (! isFlat(field)) {
+                    throw new InvalidOptionValueException("Column '" + name +
+                            "' is a nested or repeated field, which can't be loaded");
+                }
+                fields.add(field);
+            }
+        }
+        else {
+            for (Type field : schema.getFields()) {
+                if (isFlat(field)) {
+                    fields.add(field);
+                }
+                else {
+                    LOG.warn("Nested or repeated field '{}' not loaded", field.getName());
+                }
+            }
+        }
+        return new MessageType(schema.getName(), fields);
+    }
+
+
+    private boolean isFlat(Type field) {
+        return field.isPrimitive() && ! field.isRepetition(Type.Repetition.REPEATED);
+    }
+
+
+    // reads all the values of a column in the current row group
+    private void readColumn(ColumnReader reader, ColumnDescriptor descriptor,
+                            Column<?> column) {
+        PrimitiveType type = descriptor.getPrimitiveType();
+        LogicalTypeAnnotation logical = type.getLogicalTypeAnnotation();
+        int maxDefinition = descriptor.getMaxDefinitionLevel();
+        long count = reader.getTotalValueCount();
+        for (long i = 0; i < count; i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0) {
+                checkCancelled();
+            }
+            if (reader.getCurrentDefinitionLevel() < maxDefinition) {
+                column.appendMissing();
+            }
+            else {
+                appendValue(reader, type, logical, column);
+            }
+            reader.consume();
+        }
+    }
+
+
+    private void appendValue(ColumnReader reader, PrimitiveType type,
+                             LogicalTypeAnnotation logical, Column<?> column) {
+        switch (type.getPrimitiveTypeName()) {
+            case BOOLEAN:
+                ((BooleanColumn) column).append(reader.getBoolean());
+                break;
+            case INT32:
+                int intValue = reader.getInteger();
+                if (logical instanceof DateLogicalTypeAnnotation) {
+                    ((DateColumn) column).append(LocalDate.ofEpochDay(intValue));
+                }
+                else if (logical instanceof TimeLogicalTypeAnnotation) {
+                    ((TimeColumn) column).append(LocalTime.ofNanoOfDay(intValue * 1000000L));
+                }
+                else if (logical instanceof DecimalLogicalTypeAnnotation) {
+                    ((DoubleColumn) column).append(BigDecimal.valueOf(intValue,
+                            ((DecimalLogicalTypeAnnotation) logical).getScale()).doubleValue());
+                }
+                else {
+                    ((IntColumn) column).append(intValue);
+                }
+                break;
+            case INT64:
+                long longValue = reader.getLong();
+                if (logical instanceof TimestampLogicalTypeAnnotation) {
+                    TimestampLogicalTypeAnnotation timestamp =
+                            (TimestampLogicalTypeAnnotation) logical;
+                    ((DateTimeColumn) column).append(toDateTime(longValue,
+                            timestamp.getUnit(), timestamp.isAdjustedToUTC()));
+                }
+                else if (logical instanceof TimeLogicalTypeAnnotation) {
+                    ((TimeColumn) column).append(LocalTime.ofNanoOfDay(toNanos(longValue,
+                            ((TimeLogicalTypeAnnotation) logical).getUnit())));
+                }
+                else if (logical instanceof DecimalLogicalTypeAnnotation) {
+                    ((DoubleColumn) column).append(BigDecimal.valueOf(longValue,
+                            ((DecimalLogicalTypeAnnotation) logical).getScale()).doubleValue());
+                }
+                else {
+                    ((LongColumn) column).append(longValue);
+                }
+                break;
+            case INT96:
+                ((DateTimeColumn) column).append(fromInt96(reader.getBinary()));
+                break;
+            case FLOAT:
+                ((FloatColumn) column).append(reader.getFloat());
+                break;
+            case DOUBLE:
+                ((DoubleColumn) column).append(reader.getDouble());
+                break;
+            default:                                   // BINARY, FIXED_LEN_BYTE_ARRAY
+                Binary binary = reader.getBinary();
+                if (logical instanceof DecimalLogicalTypeAnnotation) {
+                    ((DoubleColumn) column).append(new BigDecimal(
+                            new BigInteger(binary.getBytes()),
+                            ((DecimalLogicalTypeAnnotation) logical).getScale()).doubleValue());
+                }
+                else {
+                    ((StringColumn) column).append(binary.toStringUsingUTF8());
+                }
+        }
+    }
+
+
+    private ColumnType columnType(PrimitiveType type) {
+        LogicalTypeAnnotation logical = type.getLogicalTypeAnnotation();
+        if (logical instanceof DecimalLogicalTypeAnnotation) return ColumnType.DOUBLE;
+        switch (type.getPrimitiveTypeName()) {
+            case BOOLEAN: return ColumnType.BOOLEAN;
+            case INT32:
+                if (logical instanceof DateLogicalTypeAnnotation) return ColumnType.LOCAL_DATE;
+                if (logical instanceof TimeLogicalTypeAnnotation) return ColumnType.LOCAL_TIME;
+                return ColumnType.INTEGER;
+            case INT64:
+                if (logical instanceof TimestampLogicalTypeAnnotation) {
+                    return ColumnType.LOCAL_DATE_TIME;
+                }
+                if (logical instanceof TimeLogicalTypeAnnotation) return ColumnType.LOCAL_TIME;
+                return ColumnType.LONG;
+            case INT96: return ColumnType.LOCAL_DATE_TIME;
+            case FLOAT: return ColumnType.FLOAT;
+            case DOUBLE: return ColumnType.DOUBLE;
+            default: return ColumnType.STRING;
+        }
+    }
+
+
+    /**
+     * Converts the row filter to a predicate over the filter column's physical values,
+     * for testing against row group statistics. Returns null if there's no filter, or
+     * it can't be expressed in the column's physical type.
+     */
+    private FilterPredicate getStatisticsPredicate(MessageType projection,
+                                                   ReadSelection selection) {
+        if (! selection.isFiltered()) return null;
+        String name = selection.getFilterColumn();
+        if (name.contains(".")) return null;                  // read as a column path
+        PrimitiveType type = projection.getType(name).asPrimitiveType();
+        LogicalTypeAnnotation logical = type.getLogicalTypeAnnotation();
+        if (logical instanceof DecimalLogicalTypeAnnotation) return null;
+        ColumnType columnType = columnType(type);
+        Object from = selection.getFrom(columnType);
+        Object to = selection.getTo(columnType);
+        List<FilterPredicate> predicates = new ArrayList<>();
+
+        switch (type.getPrimitiveTypeName()) {
+            case INT32: {
+                if (from != null) {
+                    predicates.add(FilterApi.gtEq(FilterApi.intColumn(name), toInt(from)));
+                }
+                if (to != null) {
+                    predicates.add(FilterApi.ltEq(FilterApi.intColumn(name), toInt(to)));
+                }
+                break;
+            }
+            case INT64: {
+                if (from != null) {
+                    predicates.add(FilterApi.gtEq(FilterApi.longColumn(name),
+                            toLong(from, logical)));
+                }
+                if (to != null) {
+                    predicates.add(FilterApi.ltEq(FilterApi.longColumn(name),
+                            toLong(to, logical)));
+                }
+                break;
+            }
+            case FLOAT: {
+                if (from != null) {
+                    predicates.add(FilterApi.gtEq(FilterApi.floatColumn(name), (Float) from));
+                }
+                if (to != null) {
+                    predicates.add(FilterApi.ltEq(FilterApi.floatColumn(name), (Float) to));
+                }
+                break;
+            }
+            case DOUBLE: {
+                if (from != null) {
+                    predicates.add(FilterApi.gtEq(FilterApi.doubleColumn(name), (Double) from));
+                }
+                if (to != null) {
+                    predicates.add(FilterApi.ltEq(FilterApi.doubleColumn(name), (Double) to));
+                }
+                break;
+            }
+            case BINARY: {
+                String prefix = selection.getPrefix();
+                if (from != null) {
+                    predicates.add(FilterApi.gtEq(FilterApi.binaryColumn(name),
+                            Binary.fromString(from.toString())));
+                }
+                if (to != null) {
+                    predicates.add(FilterApi.ltEq(FilterApi.binaryColumn(name),
+                            Binary.fromString(to.toString())));
+                }
+                if (! prefix.isEmpty()) {
+                    predicates.add(FilterApi.gtEq(FilterApi.binaryColumn(name),
+                            Binary.fromString(prefix)));
+                    Binary upper = prefixUpperBound(prefix);
+                    if (upper != null) {
+                        predicates.add(FilterApi.lt(FilterApi.binaryColumn(name), upper));
+                    }
+                }
+                break;
+            }
+            default: return null;
+        }
+        FilterPredicate predicate = null;
+        for (FilterPredicate p : predicates) {
+            predicate = predicate == null ? p : FilterApi.and(predicate, p);
+        }
+        return predicate;
+    }
+
+
+    // the smallest value greater than all values starting with the prefix
+    private Binary prefixUpperBound(String prefix) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if ((bytes[i] & 0xFF) != 0xFF) {
+                byte[] upper = Arrays.copyOf(bytes, i + 1);
+                upper[i]++;
+                return Binary.fromConstantByteArray(upper);
+            }
+        }
+        return null;
+    }
+
+
+    private int toInt(Object value) {
+        if (value instanceof LocalDate) return (int) ((LocalDate) value).toEpochDay();
+        if (value instanceof LocalTime) {
+            return (int) (((LocalTime) value).toNanoOfDay() / 1000000);
+        }
+        return ((Number) value).intValue();
+    }
+
+
+    private long toLong(Object value, LogicalTypeAnnotation logical) {
+        if (value instanceof LocalDateTime) {
+            TimestampLogicalTypeAnnotation timestamp = (TimestampLogicalTypeAnnotation) logical;
+            LocalDateTime dateTime = (LocalDateTime) value;
+            Instant instant = timestamp.isAdjustedToUTC() ?
+                    dateTime.atZone(ZoneId.systemDefault()).toInstant() :
+                    dateTime.toInstant(ZoneOffset.UTC);
+            long nanos = instant.getEpochSecond() * 1000000000L + instant.getNano();
+            return fromNanos(nanos, timestamp.getUnit());
+        }
+        if (value instanceof LocalTime) {
+            return fromNanos(((LocalTime) value).toNanoOfDay(),
+                    ((TimeLogicalTypeAnnotation) logical).getUnit());
+        }
+        return ((Number) value).longValue();
+    }
+
+
+    private LocalDateTime toDateTime(long value, TimeUnit unit, boolean adjustedToUTC) {
+        long nanosPerUnit = toNanos(1, unit);
+        long unitsPerSecond = 1000000000L / nanosPerUnit;
+        long seconds = Math.floorDiv(value, unitsPerSecond);
+        int nanos = (int) (Math.floorMod(value, unitsPerSecond) * nanosPerUnit);
+        if (adjustedToUTC) {
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos),
+                    ZoneId.systemDefault());
+        }
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+
+    private long toNanos(long value, TimeUnit unit) {
+        switch (unit) {
+            case MILLIS: return value * 1000000L;
+            case MICROS: return value * 1000L;
+            default: return value;
+        }
+    }
+
+
+    private long fromNanos(long nanos, TimeUnit unit) {
+        switch (unit) {
+            case MILLIS: return Math.floorDiv(nanos, 1000000L);
+            case MICROS: return Math.floorDiv(nanos, 1000L);
+            default: return nanos;
+        }
+    }
+
+
+    // legacy timestamps: nanos of the day then the Julian day, little endian, in UTC
+    private LocalDateTime fromInt96(Binary binary) {
+        ByteBuffer buffer = binary.toByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        long nanosOfDay = buffer.getLong();
+        long epochDay = buffer.getInt() - JULIAN_EPOCH_DAY;
+        return LocalDateTime.ofInstant(LocalDate.ofEpochDay(epochDay).atStartOfDay()
+                .plusNanos(nanosOfDay).toInstant(ZoneOffset.UTC), ZoneId.systemDefault());
+    }
+
+}
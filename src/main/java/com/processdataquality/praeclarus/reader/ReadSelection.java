@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.processdataquality.praeclarus.option.MultiLineOption;
+import com.processdataquality.praeclarus.option.Options;
+import com.univocity.parsers.common.CommonParserSettings;
+import org.apache.commons.lang3.StringUtils;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.AbstractColumnParser;
+import tech.tablesaw.io.ReadOptions;
+import tech.tablesaw.io.Source;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The columns and rows a reader loads, from its 'Columns to Load' and 'Filter' options.
+ * Readers apply a selection while parsing, so unselected columns and rows that fail
+ * the filter are never converted to column values.
+ * <p>
+ * The filter keeps rows whose value in the filter column starts with the prefix and
+ * falls between the From and To values inclusive (each is optional). Bounds are
+ * parsed as the filter column's type, so a range of a date-time column is compared
+ * as date-times. Rows with a missing filter value are dropped.
+ *
+ * @author Michael Adams
+ * @date 22/8/2022
+ */
+public class ReadSelection {
+
+    public static final String COLUMNS = "Columns to Load";
+    public static final String FILTER_COLUMN = "Filter Column";
+    public static final String FILTER_FROM = "Filter From";
+    public static final String FILTER_TO = "Filter To";
+    public static final String FILTER_PREFIX = "Filter Prefix";
+
+    private final List<String> _columns;         // empty if all columns are loaded
+    private final String _filterColumn;
+    private final String _from;
+    private final String _to;
+    private final String _prefix;
+
+
+    public ReadSelection(Options options) {
+        _columns = split(asString(options, COLUMNS));
+        _filterColumn = asString(options, FILTER_COLUMN).trim();
+        _from = asString(options, FILTER_FROM).trim();
+        _to = asString(options, FILTER_TO).trim();
+        _prefix = asString(options, FILTER_PREFIX);
+        if (_filterColumn.isEmpty() && ! (_from.isEmpty() && _to.isEmpty() && _prefix.isEmpty())) {
+            throw new InvalidOptionValueException("A filter value requires a '" +
+                    FILTER_COLUMN + "'");
+        }
+    }
+
+
+    public static void addDefaults(Options options) {
+        options.addDefault(new MultiLineOption(COLUMNS, ""));
+        options.addDefault(FILTER_COLUMN, "");
+        options.addDefault(FILTER_FROM, "");
+        options.addDefault(FILTER_TO, "");
+        options.addDefault(FILTER_PREFIX, "");
+    }
+
+
+    /**
+     * @return true if all columns and rows are to be loaded
+     */
+    public boolean isEmpty() { return ! isProjected() && ! isFiltered(); }
+
+    public boolean isProjected() { return ! _columns.isEmpty(); }
+
+    public boolean isFiltered() { return ! _filterColumn.isEmpty(); }
+
+
+    /**
+     * @return true if the column named is to be parsed: either it is selected, or
+     * it is the filter column
+     */
+    public boolean isParsed(String name) {
+        return ! isProjected() || _columns.contains(name) || _filterColumn.equals(name);
+    }
+
+
+    /**
+     * @return the names of the columns to parse, in load order (the selected columns
+     * followed by the filter column if it isn't one of them), or null if all columns
+     * are to be parsed
+     */
+    public String[] getParsedColumns() {
+        if (! isProjected()) return null;
+        List<String> names = new ArrayList<>(_columns);
+        if (isFiltered() && ! names.contains(_filterColumn)) {
+            names.add(_filterColumn);
+        }
+        return names.toArray(new String[0]);
+    }
+
+
+    /**
+     * @param headers a file's column headers, or null if it has none (in which case
+     *                columns are named by position, as 'C0', 'C1' etc.)
+     * @return the file positions of the columns to parse, in load order, or null if
+     * all columns are to be parsed
+     */
+    public int[] indexesOf(String[] headers) {
+        String[] names = getParsedColumns();
+        if (names == null) return null;
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = headers != null ? indexOf(headers, names[i]) : positionOf(names[i]);
+        }
+        return indexes;
+    }
+
+
+    /**
+     * Configures a univocity parser to parse only the selected columns
+     * @param headers the file's headers if already known, else null
+     * @param header true if the file has a header row still to be parsed
+     */
+    public void select(CommonParserSettings<?> settings, String[] headers, boolean header) {
+        settings.setHeaderExtractionEnabled(header);
+        if (! isProjected()) return;
+        if (header) {
+            settings.selectFields(getParsedColumns());
+        }
+        else {
+            settings.selectIndexes(toObjects(indexesOf(headers)));
+        }
+    }
+
+
+    /**
+     * @param headers all the headers of the file being read, or null if it has none
+     * @return the names of the parsed columns, or the headers if all are parsed
+     * @throws InvalidOptionValueException if a selected column isn't in the headers
+     */
+    public String[] columnNames(String[] headers) {
+        String[] names = getParsedColumns();
+        if (names == null) return headers;
+        if (headers != null) {
+            for (String name : names) indexOf(headers, name);        // validate
+        }
+        else {
+            for (int i = 0; i < names.length; i++) {
+                names[i] = "C" + positionOf(names[i]);
+            }
+        }
+        return names;
+    }
+
+
+    /**
+     * @param names the names of the parsed columns
+     * @param types the types of the parsed columns
+     * @return a filter for rows of parsed string values
+     */
+    public Predicate<String[]> rowFilter(String[] names, ColumnType[] types,
+                                         ReadOptions options) {
+        if (! isFiltered()) return row -> true;
+        int index = names != null ? indexOf(names, _filterColumn) : positionOf(_filterColumn);
+        if (index >= types.length) {
+            throw new InvalidOptionValueException("Filter column '" + _filterColumn +
+                    "' not found");
+        }
+        Predicate<String> valueFilter = valueFilter(types[index].customParser(options));
+        return row -> index < row.length && valueFilter.test(row[index]);
+    }
+
+
+    /**
+     * @param parser a parser for values of the filter column's type
+     * @return a filter for raw string values of the filter column
+     */
+    public Predicate<String> valueFilter(AbstractColumnParser<?> parser) {
+        return valueFilter(parser, parser::parse);
+    }
+
+
+    /**
+     * @param parser a parser for the filter bounds
+     * @param converter converts a raw value to a value comparable with the bounds
+     * @return a filter for raw string values of the filter column
+     */
+    public Predicate<String> valueFilter(AbstractColumnParser<?> parser,
+                                         Function<String, ?> converter) {
+        checkPrefix(parser.columnType());
+        Comparable<Object> from = parseBound(parser, _from);
+        Comparable<Object> to = parseBound(parser, _to);
+        return value -> {
+            if (value == null || parser.isMissing(value)) return false;
+            if (! value.startsWith(_prefix)) return false;
+            if (from == null && to == null) return true;
+            Object typed;
+            try {
+                typed = converter.apply(value);
+            }
+            catch (RuntimeException e) {
+                return false;
+            }
+            return typed != null && (from == null || from.compareTo(typed) <= 0) &&
+                    (to == null || to.compareTo(typed) >= 0);
+        };
+    }
+
+
+    /**
+     * @param type the type of the filter column
+     * @return a filter for typed values of the filter column, e.g. from a typed column
+     */
+    public Predicate<Object> typedFilter(ColumnType type) {
+        checkPrefix(type);
+        Comparable<Object> from = parseBound(parser(type), _from);
+        Comparable<Object> to = parseBound(parser(type), _to);
+        return value -> value != null && value.toString().startsWith(_prefix) &&
+                (from == null || from.compareTo(value) <= 0) &&
+                (to == null || to.compareTo(value) >= 0);
+    }
+
+
+    /**
+     * A prefix is matched against the values of a string column only: values of other
+     * types are written differently by different formats (e.g. a date-time may be
+     * '2022-01-01 10:00' in a CSV file but '2022-01-01T10:00' when read typed), so the
+     * same prefix would keep different rows from each.
+     * @param type the type of the filter column
+     * @throws InvalidOptionValueException if there is a prefix and the filter column
+     * doesn't hold strings
+     */
+    public void checkPrefix(ColumnType type) {
+        if (! _prefix.isEmpty() && type != ColumnType.STRING && type != ColumnType.TEXT) {
+            throw new InvalidOptionValueException(String.format(
+                    "A '%s' can only filter a column of strings, but '%s' holds %s values",
+                    FILTER_PREFIX, _filterColumn, type.name()));
+        }
+    }
+
+
+    /**
+     * @return the From bound parsed as the type, or null if there isn't one
+     */
+    public Object getFrom(ColumnType type) { return parseBound(parser(type), _from); }
+
+    /**
+     * @return the To bound parsed as the type, or null if there isn't one
+     */
+    public Object getTo(ColumnType type) { return parseBound(parser(type), _to); }
+
+    public String getPrefix() { return _prefix; }
+
+    public String getFilterColumn() { return _filterColumn; }
+
+
+    /**
+     * Removes the filter column from a loaded table, if it was parsed only to filter
+     * rows and wasn't also selected
+     */
+    public Table finish(Table table) {
+        if (isProjected() && isFiltered() && ! _columns.contains(_filterColumn) &&
+                table.containsColumn(_filterColumn)) {
+            table.removeColumns(_filterColumn);
+        }
+        return table;
+    }
+
+
+    // a parser with default options, for sources without read options of their own
+    private AbstractColumnParser<?> parser(ColumnType type) {
+        return type.customParser(CsvReadOptions.builder(Source.fromString("")).build());
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Comparable<Object> parseBound(AbstractColumnParser<?> parser, String bound) {
+        if (bound.isEmpty()) return null;
+        try {
+            Object value = parser.parse(bound);
+            if (value instanceof Comparable) {
+                return (Comparable<Object>) value;
+            }
+        }
+        catch (RuntimeException e) {
+            // fall through
+        }
+        throw new InvalidOptionValueException(String.format(
+                "Filter value '%s' is not a valid value for column '%s'", bound, _filterColumn));
+    }
+
+
+    private int indexOf(String[] headers, String name) {
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i] != null && headers[i].trim().equals(name)) return i;
+        }
+        throw new InvalidOptionValueException("Column '" + name + "' not found");
+    }
+
+
+    // columns of a file without headers are named by position: 'C3' or just '3'
+    private int positionOf(String name) {
+        String position = StringUtils.removeStartIgnoreCase(name, "C");
+        if (StringUtils.isNumeric(position)) {
+            return Integer.parseInt(position);
+        }
+        throw new InvalidOptionValueException("Column '" + name + "' not found: columns " +
+                "of a file without a header row are named by position, i.e. C0, C1 ...");
+    }
+
+
+    private Integer[] toObjects(int[] indexes) {
+        return Arrays.stream(indexes).boxed().toArray(Integer[]::new);
+    }
+
+
+    // column names may be separated by commas or new lines
+    private List<String> split(String value) {
+        List<String> names = new ArrayList<>();
+        for (String name : value.split("[,\\n\\r]+")) {
+            if (! name.isBlank()) names.add(name.trim());
+        }
+        return names;
+    }
+
+
+    private String asString(Options options, String key) {
+        return options.containsKey(key) ? options.get(key).asString() : "";
+    }
+
+}
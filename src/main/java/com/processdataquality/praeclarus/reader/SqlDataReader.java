@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2021 Queensland University of Technology
+ * Copyright (c) 2022 Queensland University of Technology
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,15 +18,29 @@ package com.processdataquality.praeclarus.reader;
 
 import com.processdataquality.praeclarus.annotations.Plugin;
 import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
-import tech.tablesaw.api.Table;
+import com.processdataquality.praeclarus.util.TableStream;
+import org.apache.commons.lang3.StringUtils;
+import tech.tablesaw.api.*;
+import tech.tablesaw.columns.Column;
 import tech.tablesaw.io.ReadOptions;
 import tech.tablesaw.io.Source;
-import tech.tablesaw.io.jdbc.SqlResultSetReader;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Reads a table from a database through a pooled connection. The selected columns
+ * and row filter are pushed down into the query, and rows are fetched from a
+ * forward-only cursor in blocks of 'Fetch Size' rows and appended directly to typed
+ * columns, so the full result set is never held by the driver.
+ *
  * @author Michael Adams
  * @date 30/3/21
  */
@@ -36,7 +50,9 @@ import java.sql.*;
         version = "1.0",
         synopsis = "Loads a log stored as a table in a database."
 )
-public class SqlDataReader extends AbstractDataReader {
+public class SqlDataReader extends AbstractDataReader implements StreamingDataReader {
+
+    private static final int CANCEL_CHECK_INTERVAL = 10000;
 
     public SqlDataReader() {
         super();
@@ -48,14 +64,33 @@ public class SqlDataReader extends AbstractDataReader {
         return null;
     }
 
+
+    @Override
+    public boolean isStreaming() {
+        return getOptions().get("Streaming").asBoolean();
+    }
+
+
     @Override
     public Table read() throws IOException {
+        List<Table> result = new ArrayList<>(1);
         try {
-            return SqlResultSetReader.read(getResultSet());
+            query(Integer.MAX_VALUE, result::add);
         }
-        catch (SQLException sqle) {
-            throw new IOException("Failed to read", sqle);
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(getLabel() + " interrupted");
         }
+        return result.get(0);
+    }
+
+
+    @Override
+    public void read(int batchSize, TableStream sink) throws IOException, InterruptedException {
+        query(batchSize, batch -> {
+            if (! batch.isEmpty()) sink.put(batch);
+        });
+        sink.close();
     }
 
 
@@ -68,55 +103,293 @@ public class SqlDataReader extends AbstractDataReader {
     }
 
     protected void addDefaultOptions() {
-        getOptions().addDefault("DB Type", "MySQL");
         getOptions().addDefault("DB URL", "jdbc:mysql://localhost/DB");
+        getOptions().addDefault("Driver Class", "");        // blank: found from the url
         getOptions().addDefault("User Name", "");
         getOptions().addDefault("Password", "");
         getOptions().addDefault("Table Name", "tablename");
+        getOptions().addDefault("Where", "");
+        getOptions().addDefault("Fetch Size", 10000);
+        getOptions().addDefault("Streaming", false);
+        ReadSelection.addDefaults(getOptions());
     }
 
 
-    private ResultSet getResultSet() throws IOException, InvalidOptionValueException {
-        Connection connection = null;
-        Statement statement = null;
-        try {
-            Class.forName(getDriver(getOptions().get("DB Type")));
-            String url = getOptions().get("DB URL").asString();
-            String user = getOptions().get("User Name").asString();
-            String pass = getOptions().get("Password").asString();
-            String tableName = getOptions().get("Table Name").asString();
-            connection = DriverManager.getConnection(url, user, pass);
-            statement = connection.createStatement();
-            return statement.executeQuery("SELECT * FROM " + tableName);
-        }
-        catch (ClassNotFoundException cnfe) {
-            throw new IOException("Failed to find driver", cnfe);
+    private void query(int batchSize, TableConsumer consumer)
+            throws IOException, InterruptedException {
+        String url = getOptions().get("DB URL").asString();
+        ReadSelection selection = getSelection();
+        try (Connection connection = SqlDataSources.get(url,
+                getOptions().get("Driver Class").asString(),
+                getOptions().get("User Name").asString(),
+                getOptions().get("Password").asString()).getConnection()) {
+
+            // most drivers only fetch through a cursor within a transaction
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = prepare(connection, selection)) {
+                statement.setFetchSize(getFetchSize(url));
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    readRows(resultSet, selection, batchSize, consumer);
+                }
+            }
+            finally {
+                connection.rollback();                   // nothing to commit
+                connection.setAutoCommit(autoCommit);
+            }
         }
         catch (SQLException sqle) {
-            throw new IOException("Failed to read from database", sqle);
+            throw new IOException("Failed to read from database: " + sqle.getMessage(), sqle);
+        }
+    }
+
+
+    private void readRows(ResultSet resultSet, ReadSelection selection, int batchSize,
+                          TableConsumer consumer)
+            throws SQLException, IOException, InterruptedException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        ColumnReader[] readers = new ColumnReader[metaData.getColumnCount()];
+        Table table = Table.create(getOptions().get("Table Name").asString());
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new ColumnReader(i + 1, metaData);
+            table.addColumns(readers[i].create(metaData.getColumnLabel(i + 1)));
         }
-        finally {
-            try {
-                if (statement != null) statement.close();
+        int count = 0;
+        while (resultSet.next()) {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i].append(resultSet, table.column(i));
             }
-            catch (SQLException sqle) {
-                // nothing to do;
+            if (++count % CANCEL_CHECK_INTERVAL == 0) {
+                checkCancelled();
             }
-            try {
-                if (connection != null) connection.close();
+            if (table.rowCount() >= batchSize) {
+                Table batch = table;
+                table = table.emptyCopy();
+                consumer.accept(selection.finish(batch));
             }
-            catch (SQLException sqle) {
-                // nothing to do;
+        }
+        consumer.accept(selection.finish(table));
+    }
+
+
+    private PreparedStatement prepare(Connection connection, ReadSelection selection)
+            throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String tableName = quoteTable(getOptions().get("Table Name").asString(), metaData);
+        StringBuilder sql = new StringBuilder("SELECT ");
+        String[] columns = selection.getParsedColumns();
+        if (columns != null) {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(quote(columns[i], metaData));
             }
         }
+        else {
+            sql.append("*");
+        }
+        sql.append(" FROM ").append(tableName);
 
+        List<String> conditions = new ArrayList<>();
+        List<Object> parameters = new ArrayList<>();
+        String where = getOptions().get("Where").asString().trim();
+        if (! where.isEmpty()) {
+            conditions.add("(" + where + ")");
+        }
+        if (selection.isFiltered()) {
+            addFilterConditions(connection, tableName, selection, conditions, parameters);
+        }
+        if (! conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+        return statement;
     }
 
 
-    private String getDriver(Object name) throws IOException {
-        if ("MySQL".equals(name)) {
-            return "com.mysql.jdbc.Driver";
+    // bounds are converted to the filter column's sql type so they compare as typed
+    private void addFilterConditions(Connection connection, String tableName,
+                                     ReadSelection selection, List<String> conditions,
+                                     List<Object> parameters) throws SQLException {
+        String column = quote(selection.getFilterColumn(), connection.getMetaData());
+        int sqlType;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT " + column + " FROM " + tableName + " WHERE 1 = 0")) {
+            sqlType = resultSet.getMetaData().getColumnType(1);
+        }
+        String from = getOptions().get(ReadSelection.FILTER_FROM).asString().trim();
+        String to = getOptions().get(ReadSelection.FILTER_TO).asString().trim();
+        String prefix = getOptions().get(ReadSelection.FILTER_PREFIX).asString();
+        selection.checkPrefix(ColumnReader.columnType(sqlType, 0, 0));
+        conditions.add(column + " IS NOT NULL");
+        if (! from.isEmpty()) {
+            conditions.add(column + " >= ?");
+            parameters.add(toSqlValue(from, sqlType));
+        }
+        if (! to.isEmpty()) {
+            conditions.add(column + " <= ?");
+            parameters.add(toSqlValue(to, sqlType));
+        }
+        if (! prefix.isEmpty()) {
+            conditions.add(column + " LIKE ? ESCAPE '!'");
+            parameters.add(prefix.replace("!", "!!").replace("%", "!%")
+                    .replace("_", "!_") + "%");
         }
-        throw new IOException("Invalid or unknown DB Type");
     }
+
+
+    private Object toSqlValue(String value, int sqlType) {
+        try {
+            switch (sqlType) {
+                case Types.TIMESTAMP:
+                case Types.TIMESTAMP_WITH_TIMEZONE:
+                    return Timestamp.valueOf(value.length() == 10 ?
+                            LocalDate.parse(value).atStartOfDay() :
+                            LocalDateTime.parse(value.replace(' ', 'T')));
+                case Types.DATE: return Date.valueOf(LocalDate.parse(value));
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                case Types.DECIMAL:
+                case Types.NUMERIC: return new BigDecimal(value);
+                default: return value;
+            }
+        }
+        catch (DateTimeParseException | NumberFormatException e) {
+            throw new InvalidOptionValueException(String.format(
+                    "Filter value '%s' is not a valid value for column '%s'",
+                    value, getOptions().get(ReadSelection.FILTER_COLUMN).asString()));
+        }
+    }
+
+
+    // MySQL's driver only streams rows when the fetch size is Integer.MIN_VALUE,
+    // unless cursor fetching is enabled in the url
+    private int getFetchSize(String url) {
+        int fetchSize = Math.max(0, getOptions().get("Fetch Size").asInt());
+        if (fetchSize > 0 && url.startsWith("jdbc:mysql:") &&
+                ! url.contains("useCursorFetch=true")) {
+            return Integer.MIN_VALUE;
+        }
+        return fetchSize;
+    }
+
+
+    private String quoteTable(String name, DatabaseMetaData metaData) throws SQLException {
+        if (StringUtils.isBlank(name)) {
+            throw new InvalidOptionValueException("Parameter 'Table Name' requires a value");
+        }
+        String[] parts = name.trim().split("\\.");
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = quote(parts[i], metaData);
+        }
+        return String.join(".", parts);
+    }
+
+
+    // plain identifiers are left unquoted, so that the database's case folding applies
+    private String quote(String name, DatabaseMetaData metaData) throws SQLException {
+        if (name.matches("[A-Za-z_][A-Za-z0-9_]*")) return name;
+        String quote = metaData.getIdentifierQuoteString();
+        if (StringUtils.isBlank(quote)) return name;
+        return quote + name.replace(quote, quote + quote) + quote;
+    }
+
+
+    // reads values of one result set column into a table column of the matching type
+    private static class ColumnReader {
+
+        private final int _index;
+        private final ColumnType _type;
+
+        ColumnReader(int index, ResultSetMetaData metaData) throws SQLException {
+            _index = index;
+            _type = columnType(metaData.getColumnType(index), metaData.getPrecision(index),
+                    metaData.getScale(index));
+        }
+
+
+        Column<?> create(String name) {
+            return _type.create(name);
+        }
+
+
+        void append(ResultSet resultSet, Column<?> column) throws SQLException {
+            if (_type == ColumnType.INTEGER) {
+                int value = resultSet.getInt(_index);
+                if (resultSet.wasNull()) column.appendMissing();
+                else ((IntColumn) column).append(value);
+            }
+            else if (_type == ColumnType.LONG) {
+                long value = resultSet.getLong(_index);
+                if (resultSet.wasNull()) column.appendMissing();
+                else ((LongColumn) column).append(value);
+            }
+            else if (_type == ColumnType.DOUBLE) {
+                double value = resultSet.getDouble(_index);
+                if (resultSet.wasNull()) column.appendMissing();
+                else ((DoubleColumn) column).append(value);
+            }
+            else if (_type == ColumnType.BOOLEAN) {
+                boolean value = resultSet.getBoolean(_index);
+                if (resultSet.wasNull()) column.appendMissing();
+                else ((BooleanColumn) column).append(value);
+            }
+            else if (_type == ColumnType.LOCAL_DATE_TIME) {
+                Timestamp value = resultSet.getTimestamp(_index);
+                if (value == null) column.appendMissing();
+                else ((DateTimeColumn) column).append(value.toLocalDateTime());
+            }
+            else if (_type == ColumnType.LOCAL_DATE) {
+                Date value = resultSet.getDate(_index);
+                if (value == null) column.appendMissing();
+                else ((DateColumn) column).append(value.toLocalDate());
+            }
+            else if (_type == ColumnType.LOCAL_TIME) {
+                Time value = resultSet.getTime(_index);
+                if (value == null) column.appendMissing();
+                else ((TimeColumn) column).append(value.toLocalTime());
+            }
+            else {
+                String value = resultSet.getString(_index);
+                if (value == null) column.appendMissing();
+                else ((StringColumn) column).append(value);
+            }
+        }
+
+
+        private static ColumnType columnType(int sqlType, int precision, int scale) {
+            switch (sqlType) {
+                case Types.BIT:
+                case Types.BOOLEAN: return ColumnType.BOOLEAN;
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER: return ColumnType.INTEGER;
+                case Types.BIGINT: return ColumnType.LONG;
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE: return ColumnType.DOUBLE;
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    if (scale == 0 && precision > 0 && precision < 10) return ColumnType.INTEGER;
+                    if (scale == 0 && precision > 0 && precision < 19) return ColumnType.LONG;
+                    return ColumnType.DOUBLE;
+                case Types.DATE: return ColumnType.LOCAL_DATE;
+                case Types.TIME: return ColumnType.LOCAL_TIME;
+                case Types.TIMESTAMP:
+                case Types.TIMESTAMP_WITH_TIMEZONE: return ColumnType.LOCAL_DATE_TIME;
+                default: return ColumnType.STRING;
+            }
+        }
+    }
+
 }
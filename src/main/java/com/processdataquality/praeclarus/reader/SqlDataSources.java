@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds a pool of connections for each database that database readers connect to,
+ * keyed by url and credentials. Pools hold no idle connections beyond the idle
+ * timeout, so a database that is read once doesn't keep connections open.
+ *
+ * @author Michael Adams
+ * @date 23/8/2022
+ */
+@Component
+public class SqlDataSources {
+
+    private static final Map<String, HikariDataSource> POOLS = new ConcurrentHashMap<>();
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private static int poolSize = 4;
+    private static long idleTimeoutMillis = 60000;
+
+    public SqlDataSources(@Value("${pdq.reader.sql.pool-size:4}") int size,
+                          @Value("${pdq.reader.sql.idle-timeout-seconds:60}") long idleSeconds) {
+        poolSize = Math.max(1, size);
+        idleTimeoutMillis = Math.max(10, idleSeconds) * 1000;
+    }
+
+
+    /**
+     * @param url the jdbc url of the database
+     * @param driverClass the driver class name, or blank to find a driver for the url
+     * @param user the user name
+     * @param password the user's password
+     * @return a pooled, read-only data source for the database
+     */
+    public static DataSource get(String url, String driverClass, String user,
+                                 String password) {
+        String key = String.join("\u0000", url, driverClass, user, password);   // never logged
+        return POOLS.computeIfAbsent(key, k -> create(url, driverClass, user, password));
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        POOLS.values().forEach(HikariDataSource::close);
+        POOLS.clear();
+    }
+
+
+    private static HikariDataSource create(String url, String driverClass, String user,
+                                           String password) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("pdq-sql-reader-" + POOL_COUNT.incrementAndGet());
+        config.setJdbcUrl(url);
+        if (! StringUtils.isBlank(driverClass)) {
+            config.setDriverClassName(driverClass.trim());
+        }
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setReadOnly(true);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(0);
+        config.setIdleTimeout(idleTimeoutMillis);
+        config.setInitializationFailTimeout(-1);       // fail on first use, not creation
+        return new HikariDataSource(config);
+    }
+
+}
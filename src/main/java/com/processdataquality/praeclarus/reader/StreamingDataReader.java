@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.processdataquality.praeclarus.util.TableStream;
+
+import java.io.IOException;
+
+/**
+ * A reader that can emit its data as a stream of row batches, rather than as a
+ * single table, so that data larger than the heap can pass through to a streaming
+ * writer.
+ *
+ * @author Michael Adams
+ * @date 2/8/2022
+ */
+public interface StreamingDataReader extends DataReader {
+
+    /**
+     * @return true if this reader has been configured to stream its output
+     */
+    boolean isStreaming();
+
+
+    /**
+     * Reads data from the source, adding it to a stream in batches. All batches
+     * have the same columns.
+     * @param batchSize the maximum number of rows per batch
+     * @param sink the stream to add batches to
+     * @throws IOException if anything goes wrong reading
+     * @throws InterruptedException if interrupted while waiting on the stream
+     */
+    void read(int batchSize, TableStream sink) throws IOException, InterruptedException;
+
+}
@@ -19,20 +19,39 @@ package com.processdataquality.praeclarus.reader;
 import com.processdataquality.praeclarus.annotations.Plugin;
 import com.processdataquality.praeclarus.option.FileOption;
 import org.apache.commons.lang3.StringUtils;
-import org.deckfour.xes.in.XesXmlParser;
-import org.deckfour.xes.model.*;
+import org.deckfour.xes.extension.XExtensionManager;
 import tech.tablesaw.api.*;
+import tech.tablesaw.columns.AbstractColumnParser;
 import tech.tablesaw.columns.Column;
 import tech.tablesaw.io.ReadOptions;
-
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
+import tech.tablesaw.io.Source;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Predicate;
 
 /**
+ * Reads an XES log into a table with a row per event. The log is parsed as a stream
+ * of XML events, and each event's attributes are appended directly to typed columns,
+ * so memory use is bounded by the size of the table rather than of an XES object
+ * model of the log. Gzipped logs (.xes.gz) are detected and read transparently.
+ * <p>
+ * Attributes not among the 'Columns to Load' are skipped as they're read. An event is
+ * added only once it ends and its attributes have passed any row filter; a filter on
+ * 'case:id' uses the trace's concept:name as known when the event ends.
+ *
  * @author Michael Adams
  * @date 31/3/21
  */
@@ -44,11 +63,7 @@ import java.util.*;
 )
 public class XesDataReader extends AbstractDataReader {
 
-    private final Map<String, Column<?>> _columns = new HashMap<>();
-    private final StringColumn _dataColumn = StringColumn.create("data");
-    private boolean _dataColumnHasValues = false;
-    private boolean _globalsOnly = false;
-    private boolean _includeData = false;
+    private static final int CANCEL_CHECK_INTERVAL = 10000;          // events
 
 
     public XesDataReader() {
@@ -59,13 +74,42 @@ public class XesDataReader extends AbstractDataReader {
 
     @Override
     public Table read() throws IOException {
-        return createTable(parseInput());
+        boolean globalsOnly = getOptions().get("Globals Only").asBoolean();
+        boolean includeData = getOptions().get("Include Data").asBoolean();
+        ReadSelection selection = getSelection();
+        InputStream is = getSourceAsInputStream();
+        if (is == null) {
+            throw new IOException("Failed to read: No XES input source specified");
+        }
+        XMLStreamReader xml = null;
+        try (InputStream in = is) {                         // decompressed if need be
+            xml = newInputFactory().createXMLStreamReader(in);
+            return selection.finish(new LogParser(xml, globalsOnly, includeData,
+                    selection).parse());
+        }
+        catch (CancellationException e) {
+            throw e;
+        }
+        catch (XMLStreamException | RuntimeException e) {
+            throw new IOException("Failed to load XES file", e);
+        }
+        finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                }
+                catch (XMLStreamException e) {
+                    // nothing further to do
+                }
+            }
+        }
     }
 
     protected void addDefaultOptions() {
         getOptions().addDefault("Globals Only", false);
         getOptions().addDefault("Include Data", true);
         getOptions().addDefault(new FileOption("Source", ""));
+        ReadSelection.addDefaults(getOptions());
     }
 
     @Override
@@ -74,196 +118,300 @@ public class XesDataReader extends AbstractDataReader {
     }
 
 
-
-    private List<XLog> parseInput() throws IOException {
-        try {
-            InputStream is = getSourceAsInputStream();
-            if (is == null) {
-                throw new IOException("Failed to read: No XES input source specified");
-            }
-
-            return new XesXmlParser().parse(getSourceAsInputStream());
-        }
-        catch (Exception e) {
-            throw new IOException("Failed to load XES file", e);
-        }
+    private XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
     }
 
 
-    private Table createTable(List<XLog> logList) {
-        _globalsOnly = getOptions().get("Globals Only").asBoolean();
-        _includeData = getOptions().get("Include Data").asBoolean();
-
-        for (XLog log : logList) {                                 // will be only one
-            if (_globalsOnly) {
-                addGlobalColumns(log);
+    /**
+     * Builds a table from the XML events of a log. Columns grow independently: a
+     * column is padded with missing values only up to the row it is next appended
+     * to, and all columns are padded to the full row count at the end.
+     */
+    private class LogParser {
+
+        private final XMLStreamReader _xml;
+        private final boolean _globalsOnly;
+        private final boolean _includeData;
+        private final ReadSelection _selection;
+        private final Map<String, Predicate<String>> _filters = new HashMap<>();  // by type
+        private final List<String[]> _attributes = new ArrayList<>();    // current event's
+        private final Map<String, Column<?>> _columns = new LinkedHashMap<>();
+        private final Set<String> _extensionPrefixes = new HashSet<>();
+        private final StringColumn _caseColumn = StringColumn.create("case:id");
+        private final StringColumn _dataColumn = StringColumn.create("data");
+        private int _rowCount;
+
+        LogParser(XMLStreamReader xml, boolean globalsOnly, boolean includeData,
+                  ReadSelection selection) {
+            _xml = xml;
+            _globalsOnly = globalsOnly;
+            _includeData = includeData && selection.isParsed(_dataColumn.name());
+            _selection = selection;
+            if (selection.isParsed(_caseColumn.name())) {
+                _columns.put(_caseColumn.name(), _caseColumn);
             }
-            parseLog(log);
         }
 
-        List<Column<?>> columnList = new ArrayList<>(_columns.values());
-        if (_includeData && _dataColumnHasValues) {
-            padColumn(_dataColumn, getRowCount());
-            columnList.add(_dataColumn);
+
+        Table parse() throws XMLStreamException {
+            int depth = 0;
+            int traceDepth = -1;
+            int eventDepth = -1;
+            int globalDepth = -1;
+            int traceStartRow = 0;
+            String caseID = null;
+            StringBuilder data = new StringBuilder();
+
+            while (_xml.hasNext()) {
+                int xmlEvent = _xml.next();
+                if (xmlEvent == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String element = _xml.getLocalName();
+                    if (eventDepth < 0 && element.equals("event") && traceDepth > -1) {
+                        eventDepth = depth;
+                        data.setLength(0);
+                        _attributes.clear();
+                    }
+                    else if (traceDepth < 0 && element.equals("trace")) {
+                        traceDepth = depth;
+                        traceStartRow = _rowCount;
+                        caseID = null;
+                    }
+                    else if (depth == 2 && element.equals("extension")) {
+                        String prefix = _xml.getAttributeValue(null, "prefix");
+                        if (prefix != null) _extensionPrefixes.add(prefix);
+                    }
+                    else if (depth == 2 && element.equals("global") &&
+                            "event".equals(_xml.getAttributeValue(null, "scope"))) {
+                        globalDepth = depth;
+                    }
+                    else if (depth == globalDepth + 1 && globalDepth > -1) {
+                        if (_globalsOnly) {
+                            getColumn(_xml.getAttributeValue(null, "key"), element);
+                        }
+                    }
+                    else if (depth == eventDepth + 1 && eventDepth > -1) {
+                        readEventAttribute(element, data);
+                    }
+                    else if (depth == traceDepth + 1 && traceDepth > -1 &&
+                            "concept:name".equals(_xml.getAttributeValue(null, "key"))) {
+                        caseID = _xml.getAttributeValue(null, "value");
+                    }
+                }
+                else if (xmlEvent == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == eventDepth) {
+                        endEvent(caseID, data);
+                        eventDepth = -1;
+                    }
+                    else if (depth == traceDepth) {
+                        endTrace(traceStartRow, caseID);
+                        traceDepth = -1;
+                    }
+                    else if (depth == globalDepth) {
+                        globalDepth = -1;
+                    }
+                    depth--;
+                }
+            }
+            return createTable();
         }
 
-        return Table.create(columnList);
-    }
 
+        // one column value of the current row, held until the event ends
+        private void readEventAttribute(String type, StringBuilder data) {
+            String key = _xml.getAttributeValue(null, "key");
+            String value = _xml.getAttributeValue(null, "value");
+            if (key == null || value == null) return;
 
-    private void parseLog(XLog log) {
-        for (XTrace trace : log) {
-            parseTrace(trace);
+            if (! isExtensionAttribute(key)) {
+                if (_includeData) {
+                    data.append(StringUtils.joinWith(",", dataType(type), key, value))
+                            .append(";");
+                }
+            }
+            else if (_selection.isParsed(key) &&
+                    ! (_globalsOnly && ! _columns.containsKey(key))) {
+                _attributes.add(new String[] { type, key, value });
+            }
         }
-    }
 
-    private void parseTrace(XTrace trace) {
-        XAttributeMap traceMap = trace.getAttributes();
-        String caseID = ((XAttributeLiteral) traceMap.get("concept:name")).getValue();
 
-        for (XEvent event : trace) {
-            getStringColumn("case:id").append(caseID);
-            parseEvent(event);
-        }
-    }
+        private void endEvent(String caseID, StringBuilder data) {
+            if (! accept(caseID)) return;
 
-    // one row of table
-    private void parseEvent(XEvent event) {
-        StringBuilder data = new StringBuilder();
-        XAttributeMap map = event.getAttributes();
-        for (String key : map.keySet()) {
-            XAttribute attribute = map.get(key);
-            if (attribute.getExtension() == null) {
-                if (_includeData) {
-                    data.append(parseDataAttribute(attribute));
+            for (String[] attribute : _attributes) {
+                Column<?> column = getColumn(attribute[1], attribute[0]);
+                if (column != null && column.size() <= _rowCount) {   // first value wins
+                    pad(column, _rowCount);
+                    appendValue(column, attribute[0], attribute[2]);
                 }
             }
-            else if (_globalsOnly && ! _columns.containsKey(key)) {
-                 continue;
+            if (caseID != null) {
+                _caseColumn.append(caseID);
             }
-            else if (attribute instanceof XAttributeLiteral) {
-                getStringColumn(key).append(((XAttributeLiteral) attribute).getValue());
+            else {
+                _caseColumn.appendMissing();          // may be set at the trace's end
             }
-            else if (attribute instanceof XAttributeTimestamp) {
-                Date date = ((XAttributeTimestamp) attribute).getValue();
-                LocalDateTime ldt = LocalDateTime.ofInstant(date.toInstant(),
-                        ZoneId.systemDefault());
-                getDateTimeColumn(key).append(ldt);
+            if (data.length() > 0) {
+                pad(_dataColumn, _rowCount);
+                _dataColumn.append(data.toString());
             }
-            else if (attribute instanceof XAttributeDiscrete) {
-                getLongColumn(key).append(((XAttributeDiscrete) attribute).getValue());
+            if (++_rowCount % CANCEL_CHECK_INTERVAL == 0) {
+                checkCancelled();
             }
-            else if (attribute instanceof XAttributeContinuous) {
-                getDoubleColumn(key).append(((XAttributeContinuous) attribute).getValue());
+        }
+
+
+        // true if the current event passes the row filter
+        private boolean accept(String caseID) {
+            if (! _selection.isFiltered()) return true;
+            String filterColumn = _selection.getFilterColumn();
+            if (filterColumn.equals(_caseColumn.name())) {
+                return getFilter("string").test(caseID);
             }
-            else if (attribute instanceof XAttributeBoolean) {
-                getBooleanColumn(key).append(((XAttributeBoolean) attribute).getValue());
+            for (String[] attribute : _attributes) {
+                if (attribute[1].equals(filterColumn)) {
+                    return getFilter(attribute[0]).test(attribute[2]);
+                }
             }
+            return false;
         }
-        if (data.length() > 0) {
-            padColumn(_dataColumn, getRowCount() -1);
-            _dataColumn.append(data.toString());
-            _dataColumnHasValues = true;
-        }
-        padColumns(getRowCount());
-    }
-    
 
-    private String parseDataAttribute(XAttribute attribute) {
-        String key = attribute.getKey();
-        String value = attribute.toString();
-        String type = getAttributeType(attribute);
-        return StringUtils.joinWith(",", type, key, value) + ";";
-    }
 
+        // a filter for values of an XES attribute type, compared as their column type
+        private Predicate<String> getFilter(String type) {
+            return _filters.computeIfAbsent(type, t -> {
+                AbstractColumnParser<?> parser = columnType(t).customParser(
+                        CsvReadOptions.builder(Source.fromString("")).build());
+                switch (t) {
+                    case "date" : return _selection.valueFilter(parser, this::parseDate);
+                    case "int" : return _selection.valueFilter(parser,
+                            v -> Long.parseLong(v.trim()));
+                    case "float" : return _selection.valueFilter(parser,
+                            v -> Double.parseDouble(v.trim()));
+                    case "boolean" : return _selection.valueFilter(parser,
+                            v -> Boolean.parseBoolean(v.trim()));
+                    default: return _selection.valueFilter(parser, v -> v);
+                }
+            });
+        }
 
-    private String getAttributeType(XAttribute attribute) {
-        if (attribute instanceof XAttributeLiteral) return "string";
-        if (attribute instanceof XAttributeTimestamp) return "date";
-        if (attribute instanceof XAttributeDiscrete) return "long";
-        if (attribute instanceof XAttributeContinuous) return "double";
-        if (attribute instanceof XAttributeBoolean) return "boolean";
-        return "string";  // default
-    }
 
-    // create a column for each global event attribute
-    private void addGlobalColumns(XLog log) {
-        for (XAttribute attribute : log.getGlobalEventAttributes()) {
-            String key = attribute.getKey();
-            if (attribute instanceof XAttributeLiteral) getStringColumn(key);
-            else if (attribute instanceof XAttributeTimestamp) getDateTimeColumn(key);
-            else if (attribute instanceof XAttributeDiscrete) getLongColumn(key);
-            else if (attribute instanceof XAttributeContinuous) getDoubleColumn(key);
-            else if (attribute instanceof XAttributeBoolean) getBooleanColumn(key);
-            else getStringColumn(key);  // default
+        // sets the case id of any events that preceded the trace's concept:name
+        private void endTrace(int traceStartRow, String caseID) {
+            if (caseID != null) {
+                for (int row = traceStartRow; row < _rowCount; row++) {
+                    if (_caseColumn.isMissing(row)) {
+                        _caseColumn.set(row, caseID);
+                    }
+                }
+            }
         }
-    }
 
-    private StringColumn getStringColumn(String name) {
-        StringColumn column = (StringColumn) _columns.get(name);
-        if (column == null) {
-            column = StringColumn.create(name);
-            addColumn(column);
+
+        private Table createTable() {
+            List<Column<?>> columnList = new ArrayList<>();
+            for (Column<?> column : _columns.values()) {
+                pad(column, _rowCount);
+                columnList.add(column);
+            }
+            if (_includeData && ! _dataColumn.isEmpty()) {
+                pad(_dataColumn, _rowCount);
+                columnList.add(_dataColumn);
+            }
+            return Table.create(columnList);
         }
-        return column;
-    }
 
-    private BooleanColumn getBooleanColumn(String name) {
-        BooleanColumn column = (BooleanColumn) _columns.get(name);
-        if (column == null) {
-            column = BooleanColumn.create(name);
-            addColumn(column);
+
+        // an attribute is an extension attribute if its key has a known prefix
+        private boolean isExtensionAttribute(String key) {
+            int colonIndex = key.indexOf(':');
+            if (colonIndex < 1 || colonIndex == key.length() - 1) return false;
+            String prefix = key.substring(0, colonIndex);
+            return _extensionPrefixes.contains(prefix) ||
+                    XExtensionManager.instance().getByPrefix(prefix) != null;
         }
-        return column;
-    }
 
-    private DateTimeColumn getDateTimeColumn(String name) {
-        DateTimeColumn column = (DateTimeColumn) _columns.get(name);
-        if (column == null) {
-            column = DateTimeColumn.create(name);
-            addColumn(column);
+
+        // gets or creates a column of the type of an XES attribute element. Returns
+        // null if the type is unsupported, or conflicts with an existing column
+        private Column<?> getColumn(String key, String type) {
+            if (key == null || ! _selection.isParsed(key)) return null;
+            ColumnType columnType = columnType(type);
+            Column<?> column = _columns.get(key);
+            if (column == null) {
+                column = columnType.create(key);
+                _columns.put(key, column);
+            }
+            if (column instanceof StringColumn || column.type() == columnType) {
+                return column;
+            }
+            return null;
         }
-        return column;
-    }
 
-    private LongColumn getLongColumn(String name) {
-        LongColumn column = (LongColumn) _columns.get(name);
-        if (column == null) {
-            column = LongColumn.create(name);
-            addColumn(column);
+
+        private ColumnType columnType(String type) {
+            switch (type) {
+                case "date" : return ColumnType.LOCAL_DATE_TIME;
+                case "int" : return ColumnType.LONG;
+                case "float" : return ColumnType.DOUBLE;
+                case "boolean" : return ColumnType.BOOLEAN;
+                default: return ColumnType.STRING;
+            }
         }
-        return column;
-    }
 
-    private DoubleColumn getDoubleColumn(String name) {
-        DoubleColumn column = (DoubleColumn) _columns.get(name);
-        if (column == null) {
-            column = DoubleColumn.create(name);
-            addColumn(column);
+
+        private void appendValue(Column<?> column, String type, String value) {
+            if (column instanceof StringColumn) {
+                ((StringColumn) column).append(value);
+                return;
+            }
+            try {
+                switch (type) {
+                    case "date" : ((DateTimeColumn) column).append(parseDate(value)); break;
+                    case "int" : ((LongColumn) column).append(Long.parseLong(value.trim())); break;
+                    case "float" : ((DoubleColumn) column).append(Double.parseDouble(value.trim())); break;
+                    case "boolean" : ((BooleanColumn) column).append(Boolean.parseBoolean(value.trim())); break;
+                    default: column.appendMissing();
+                }
+            }
+            catch (NumberFormatException | DateTimeParseException e) {
+                column.appendMissing();
+            }
         }
-        return column;
-    }
 
-    private void addColumn(Column<?> column) {
-        _columns.put(column.name(), column);
-        padColumn(column, getRowCount() - 1);
-    }
 
-    private int getRowCount() {
-        return getStringColumn("case:id").size();
-    }
+        // xs:dateTime, with or without a zone offset, in the local time zone
+        private LocalDateTime parseDate(String value) {
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(value.trim(),
+                    ZonedDateTime::from, LocalDateTime::from);
+            if (parsed instanceof ZonedDateTime) {
+                return ((ZonedDateTime) parsed).withZoneSameInstant(ZoneId.systemDefault())
+                        .toLocalDateTime();
+            }
+            return (LocalDateTime) parsed;
+        }
 
-    private void padColumns(int count) {
-        for (Column<?> column : _columns.values()) {
-            if (column.size() < count) {
-                padColumn(column, count);
+
+        private String dataType(String type) {
+            switch (type) {
+                case "date" : return "date";
+                case "int" : return "long";
+                case "float" : return "double";
+                case "boolean" : return "boolean";
+                default: return "string";
             }
         }
-    }
 
-    private void padColumn(Column<?> column, int count) {
-        for (int i = column.size(); i < count; i++) {
-            column.appendMissing();
+
+        private void pad(Column<?> column, int count) {
+            for (int i = column.size(); i < count; i++) {
+                column.appendMissing();
+            }
         }
     }
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Maps the ids of commits rewritten by repository maintenance to the ids of their
+ * rewritten versions, so that commit ids held by stored workflows, cached results
+ * and open sessions remain valid. The map is kept in a properties file in the git
+ * directory.
+ *
+ * @author Michael Adams
+ * @date 18/8/2022
+ */
+class CommitAliases {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommitAliases.class);
+    private static final String FILE_NAME = "pdq-aliases";
+
+    private final Path _file;
+    private volatile Map<String, String> _aliases;
+
+
+    CommitAliases(File gitDir) {
+        _file = new File(gitDir, FILE_NAME).toPath();
+        _aliases = load();
+    }
+
+
+    /**
+     * @param commitID a commit id
+     * @return the id of the commit's rewritten version, or the id passed if the
+     * commit has not been rewritten
+     */
+    String resolve(String commitID) {
+        String alias = _aliases.get(commitID);
+        return alias != null ? alias : commitID;
+    }
+
+
+    /**
+     * Records a rewrite of the repository's history
+     * @param rewritten the ids of rewritten commits, mapped to their new ids
+     * @param dropped the ids of commits removed from the history
+     */
+    synchronized void update(Map<String, String> rewritten, Set<String> dropped)
+            throws IOException {
+        Map<String, String> aliases = new HashMap<>();
+        for (Map.Entry<String, String> entry : _aliases.entrySet()) {
+            String target = entry.getValue();
+            if (! dropped.contains(target)) {
+                aliases.put(entry.getKey(), rewritten.getOrDefault(target, target));
+            }
+        }
+        aliases.putAll(rewritten);
+        save(aliases);
+        _aliases = aliases;
+    }
+
+
+    private Map<String, String> load() {
+        Map<String, String> aliases = new HashMap<>();
+        try (Reader reader = Files.newBufferedReader(_file, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            for (String key : properties.stringPropertyNames()) {
+                aliases.put(key, properties.getProperty(key));
+            }
+        }
+        catch (NoSuchFileException e) {
+            // no history rewritten yet
+        }
+        catch (IOException e) {
+            LOG.error("Failed to load commit aliases", e);
+        }
+        return aliases;
+    }
+
+
+    private void save(Map<String, String> aliases) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(aliases);
+        Path temp = Files.createTempFile(_file.getParent(), FILE_NAME, ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "rewritten commit id = current commit id");
+            }
+            Files.move(temp, _file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import tech.tablesaw.api.Table;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Commits tables to the repo on a background thread, so that nodes don't wait on
+ * git to complete. Tables submitted close together are written in a single commit.
+ * A batch ends at MAX_BATCH tables, when no more arrive within LINGER_MILLIS, or
+ * when a table would overwrite one already in the batch (e.g. a repair output that
+ * shares its input's table name), since each table needs its own version.
+ * <p>
+ * Each batch is committed by a writer for the repo shard it belongs to, so batches
+ * for different shards are committed in parallel, while those for the same shard
+ * are committed in order.
+ *
+ * @author Michael Adams
+ * @date 15/8/2022
+ */
+@Component
+@DependsOn("entityManagerFactory")     // so it's flushed before JPA closes on shutdown
+public class CommitQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommitQueue.class);
+
+    private static final int MAX_BATCH = 16;
+    private static final long LINGER_MILLIS = 50;
+    private static final long FLUSH_TIMEOUT_SECONDS = 60;
+
+    private static final PendingCommit STOP = new PendingCommit(null, null, null);
+
+    private static final BlockingQueue<PendingCommit> queue = new LinkedBlockingQueue<>();
+    private static final Map<String, ExecutorService> shardWriters = new HashMap<>();
+    private static Thread writer;                // forms batches from the queue
+    private static volatile boolean shutdown;
+    private static boolean stopping;             // set by the writer when STOP is taken
+    private static PendingCommit carried;        // starts the next batch
+
+
+    /**
+     * Queues a table to be committed
+     * @param table the table to commit. It must not be changed after it is queued
+     * @param message the commit message
+     * @param user the name of the committing user
+     * @return a future that completes with the id of the commit that holds the table
+     */
+    public static CompletableFuture<String> submit(Table table, String message, String user) {
+        PendingCommit pending = new PendingCommit(table, message, user);
+        if (shutdown) {
+            pending.commitNow();                    // writer has stopped
+        }
+        else {
+            ensureStarted();
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+
+    /**
+     * Waits until all queued tables are committed, then stops the writer thread
+     */
+    @PreDestroy
+    public void flush() {
+        shutdown = true;
+        Thread thread;
+        synchronized (CommitQueue.class) {
+            thread = writer;
+        }
+        if (thread != null) {
+            queue.add(STOP);                  // the writer commits all queued ahead of it
+            try {
+                long deadline = System.currentTimeMillis() +
+                        TimeUnit.SECONDS.toMillis(FLUSH_TIMEOUT_SECONDS);
+                thread.join(TimeUnit.SECONDS.toMillis(FLUSH_TIMEOUT_SECONDS));
+                for (ExecutorService shardWriter : stopShardWriters()) {
+                    shardWriter.awaitTermination(Math.max(deadline -
+                            System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();                                      // anything left over
+    }
+
+
+    private static synchronized void ensureStarted() {
+        if (writer == null) {
+            writer = new Thread(CommitQueue::process, "pdq-repo-commit");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+
+    private static void process() {
+        while (! stopping || carried != null) {          // carried: queued before STOP
+            try {
+                List<PendingCommit> batch = nextBatch();
+                if (! batch.isEmpty()) dispatch(batch);
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+        }
+        drain();
+    }
+
+
+    private static List<PendingCommit> nextBatch() throws InterruptedException {
+        List<PendingCommit> batch = new ArrayList<>();
+        Set<String> tableNames = new HashSet<>();
+        PendingCommit next = carried != null ? carried : queue.take();
+        carried = null;
+        while (next != null) {
+            if (next == STOP) {
+                stopping = true;
+                break;
+            }
+            if (! (tableNames.add(next.table.name()) && sameUser(batch, next))) {
+                carried = next;                        // belongs in the next batch
+                break;
+            }
+            batch.add(next);
+            if (batch.size() == MAX_BATCH) break;
+            next = queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+
+    private static void dispatch(List<PendingCommit> batch) {
+        try {
+            shardWriter(RepoShards.keyFor(batch.get(0).user)).execute(() -> commit(batch));
+        }
+        catch (RejectedExecutionException e) {
+            commit(batch);                       // shard writers stopped by a late flush
+        }
+    }
+
+
+    private static synchronized ExecutorService shardWriter(String shardKey) {
+        return shardWriters.computeIfAbsent(shardKey, key ->
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "pdq-repo-commit-" +
+                            (key.isEmpty() ? "default" : key));
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+
+    // shuts down the shard writers once they have committed all batches given them
+    private static synchronized List<ExecutorService> stopShardWriters() {
+        List<ExecutorService> stopped = new ArrayList<>(shardWriters.values());
+        stopped.forEach(ExecutorService::shutdown);
+        return stopped;
+    }
+
+
+    private static boolean sameUser(List<PendingCommit> batch, PendingCommit pending) {
+        return batch.isEmpty() || Objects.equals(batch.get(0).user, pending.user);
+    }
+
+
+    private static synchronized void drain() {
+        List<PendingCommit> remaining = new ArrayList<>();
+        if (carried != null) {
+            remaining.add(carried);
+            carried = null;
+        }
+        queue.drainTo(remaining);
+        remaining.remove(STOP);
+        remaining.forEach(PendingCommit::commitNow);
+    }
+
+
+    private static void commit(List<PendingCommit> batch) {
+        List<Table> tables = new ArrayList<>();
+        StringJoiner message = new StringJoiner("\n");
+        for (PendingCommit pending : batch) {
+            tables.add(pending.table);
+            message.add(pending.message);
+        }
+        try {
+            String commitID = Repo.commit(tables, message.toString(), batch.get(0).user);
+            batch.forEach(p -> p.future.complete(commitID));
+        }
+        catch (Exception e) {
+            LOG.error("Failed to commit {} table(s) to repo", batch.size(), e);
+            batch.forEach(p -> p.future.completeExceptionally(e));
+        }
+    }
+
+
+    private static class PendingCommit {
+        final Table table;
+        final String message;
+        final String user;
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        PendingCommit(Table table, String message, String user) {
+            this.table = table;
+            this.message = message;
+            this.user = user;
+        }
+
+        void commitNow() {
+            commit(Collections.singletonList(this));
+        }
+    }
+
+}
@@ -16,104 +16,292 @@
 
 package com.processdataquality.praeclarus.repo;
 
+import com.processdataquality.praeclarus.repo.store.CsvTableStore;
+import com.processdataquality.praeclarus.repo.store.TableStore;
+import com.processdataquality.praeclarus.repo.store.TableStores;
+import com.processdataquality.praeclarus.trace.Trace;
+import com.processdataquality.praeclarus.util.CopyOnWriteTable;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.LogCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.errors.IncorrectObjectTypeException;
-import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import tech.tablesaw.api.Table;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
+ * The git repositories holding node output tables. Tables are committed to the
+ * shard of the committing user, and read from whichever shard holds their commit
+ * (see RepoShards).
+ *
  * @author Michael Adams
  * @date 5/11/21
  */
 public class Repo {
 
-    private static final Logger LOG = LoggerFactory.getLogger(Repo.class);
-    private static final File REPO_DIR = new File("../pdq_repo");
+    private Repo() { }
+
 
-    static {
-        checkInitiated();
+    public static String commit(Table table, String msg, String user)
+            throws IOException, GitAPIException {
+        return commit(Collections.singletonList(table), msg, user);
     }
 
 
-    private Repo() { }
+    /**
+     * Writes a set of tables and commits them together, to the committing user's
+     * shard. Each table must have a different name.
+     * @return the id of the commit
+     */
+    public static String commit(List<Table> tables, String msg, String user)
+            throws IOException, GitAPIException {
+        RepoShard shard = RepoShards.forUser(user);
 
+        // synchronized since nodes may commit concurrently, and git holds an index lock
+        synchronized (shard) {
+            return commit(shard, tables, msg, user);
+        }
+    }
 
-    public static String commit(Table table, String msg, String user)
-            throws IOException, GitAPIException {
-        String fileName = write(table);
 
-        try (Git git = Git.open(REPO_DIR)) {
-            git.add().addFilepattern(fileName).call();
+    private static String commit(RepoShard shard, List<Table> tables, String msg,
+                                 String user) throws IOException, GitAPIException {
+        try (Trace.Span span = Trace.begin("repo", "commit");
+             Git git = shard.git()) {
+            AddCommand add = git.add();
+            RepoColumnStore columns = new RepoColumnStore(shard.getDirectory());
+            for (Table table : tables) {
+                add.addFilepattern(write(shard.getDirectory(), table, columns));
+            }
+            for (String path : columns.getPaths()) {
+                add.addFilepattern(path);
+            }
+            add.call();
+            for (Table table : tables) {
+                removeOtherFormats(git, shard.getDirectory(), table.name());
+            }
             RevCommit rev = git.commit().setMessage(msg)
                     .setAuthor(user, "user@example.com")
                     .call();                    
-            return rev.getId().name();
+            String commitID = rev.getId().name();
+            RepoShards.recordCommit(commitID, shard);
+            for (Table table : tables) {
+                TableCache.put(commitID, table.name(), table);     // likely read back soon
+            }
+            return commitID;
         }
     }
 
 
 
+    /**
+     * Loads a table as it was at a commit, in whichever format it was stored. If the
+     * table's file in the work tree still holds that version, it is memory mapped
+     * rather than read from the git object store. Columns kept in the column store
+     * are resolved in the same way. Tables recently read or committed are served
+     * from the table cache.
+     * @param objID the commit the table was written in
+     * @param tableName the table's name
+     * @return the table, or null if the table is not in the commit
+     */
     public static Table getTable(String objID, String tableName) throws IOException {
-        String content = fetchContent(objID, tableName);
-        return Table.read().csv(content, tableName);
+        Table table = TableCache.get(objID, tableName);
+        if (table == null) {
+            table = readTable(objID, tableName);
+            if (table != null) {
+                TableCache.put(objID, tableName, table);
+                table = CopyOnWriteTable.view(table);      // keep the cached copy private
+            }
+        }
+        return table;
     }
 
 
-    public static List<LogEntry> getFullLog() throws IOException, GitAPIException {
-        try (Git git = Git.open(REPO_DIR)) {
-            return listLog(git.log().all().call());
+    private static Table readTable(String objID, String tableName) throws IOException {
+        RepoShard shard = RepoShards.forCommit(objID);
+        long stamp = shard.lockForRead();
+        try (RepoShard.PooledReader pooled = shard.borrowReader();
+             RevWalk walk = new RevWalk(pooled.reader)) {
+            ObjectReader reader = pooled.reader;
+            RevCommit commit = walk.parseCommit(shard.resolve(objID));
+            RepoColumnStore columns = new RepoColumnStore(shard.getDirectory(), reader,
+                    commit.getTree());
+            for (TableStore store : TableStores.all()) {
+                String path = tableName + store.getExtension();
+                TreeWalk treewalk = TreeWalk.forPath(reader, path, commit.getTree());
+                if (treewalk != null) {
+                    ObjectId blobID = treewalk.getObjectId(0);
+                    ByteBuffer mapped = shard.mapIfCurrent(path, blobID);
+                    if (mapped != null) {
+                        return store.read(mapped, tableName, columns);
+                    }
+                    ObjectLoader loader = reader.open(blobID);
+                    if (! loader.isLarge()) {
+                        return store.read(ByteBuffer.wrap(loader.getCachedBytes()),
+                                tableName, columns);
+                    }
+                    try (InputStream in = loader.openStream()) {
+                        return store.read(in, tableName, columns);
+                    }
+                }
+            }
+            return null;
+        }
+        finally {
+            shard.unlockRead(stamp);
         }
     }
 
 
-    public static List<LogEntry> getLog(String fileName) throws GitAPIException, IOException {
-        try (Git git = Git.open(REPO_DIR)) {
-            return listLog(git.log().addPath(fileName + ".csv").call());
+    /**
+     * Gets the id of the blob holding a table at a commit. Since git ids are hashes of
+     * content, equal ids mean equal tables.
+     * @param commitID the commit the table was written in
+     * @param tableName the table's name
+     * @return the blob id, or null if the table is not in the commit
+     */
+    public static String getObjectID(String commitID, String tableName) throws IOException {
+        RepoShard shard = RepoShards.forCommit(commitID);
+        long stamp = shard.lockForRead();
+        try (RepoShard.PooledReader pooled = shard.borrowReader()) {
+            for (TableStore store : TableStores.all()) {
+                ObjectId blobID = findBlob(shard, pooled.reader, commitID,
+                        tableName + store.getExtension());
+                if (blobID != null) {
+                    return blobID.name();
+                }
+            }
+            return null;
+        }
+        finally {
+            shard.unlockRead(stamp);
         }
     }
-    
 
-    private static void checkInitiated() {
-        if (!REPO_DIR.exists()) {
-            if (REPO_DIR.mkdir()) {
-                try (Git git = Git.init().setDirectory(REPO_DIR).call()) {
-                }
-                catch (GitAPIException e) {
-                    LOG.error("Failed to initialise repository: ", e);
+
+    /**
+     * Opens a stream over a file as stored at a commit. Large files are streamed from
+     * the object store rather than loaded into memory, so a stored table can be
+     * passed straight to a parser.
+     * @param commitID the commit the file was written in
+     * @param path the file's path in the repo, e.g. a table name plus its format's
+     *             extension
+     * @return a stream of the file's content, or null if the file is not in the commit.
+     * The caller must close the stream, as repo maintenance waits until it is closed.
+     */
+    public static InputStream openStream(String commitID, String path) throws IOException {
+        RepoShard shard = RepoShards.forCommit(commitID);
+        long stamp = shard.lockForRead();
+        InputStream stream = null;
+        try (RepoShard.PooledReader pooled = shard.borrowReader()) {
+            ObjectId blobID = findBlob(shard, pooled.reader, commitID, path);
+
+            // a large object's stream uses its own reader, so it outlives the borrow
+            if (blobID != null) {
+                stream = pooled.reader.open(blobID).openStream();
+            }
+        }
+        finally {
+            if (stream == null) shard.unlockRead(stamp);
+        }
+        return stream != null ? new LockedStream(stream, shard, stamp) : null;
+    }
+
+
+    public static List<LogEntry> getFullLog() throws IOException, GitAPIException {
+        List<LogEntry> logList = new ArrayList<>();
+        for (RepoShard shard : RepoShards.all()) {
+            try (Git git = shard.git()) {
+                if (shard.getRepository().resolve(Constants.HEAD) != null) {
+                    logList.addAll(listLog(git.log().all().call()));
                 }
             }
-            else {
-                LOG.error("Failed to create repo directory");
+        }
+        return sortByTime(logList);
+    }
+
+
+    public static List<LogEntry> getLog(String fileName) throws GitAPIException, IOException {
+        List<LogEntry> logList = new ArrayList<>();
+        for (RepoShard shard : RepoShards.all()) {
+            try (Git git = shard.git()) {
+                if (shard.getRepository().resolve(Constants.HEAD) != null) {
+                    LogCommand log = git.log();
+                    for (TableStore store : TableStores.all()) {
+                        log.addPath(fileName + store.getExtension());
+                    }
+                    logList.addAll(listLog(log.call()));
+                }
             }
         }
+        return sortByTime(logList);
     }
+    
 
-   
-    private static String write(Table table) throws IOException {
-        String fileName = table.name() + ".csv";         // needs extn for write() below
-        File file = new File(REPO_DIR, fileName);
-        table.write().toFile(file);
+    private static ObjectId findBlob(RepoShard shard, ObjectReader reader, String commitID,
+                                     String path) throws IOException {
+        try (RevWalk walk = new RevWalk(reader)) {
+            RevCommit commit = walk.parseCommit(shard.resolve(commitID));
+            TreeWalk treewalk = TreeWalk.forPath(reader, path, commit.getTree());
+            return treewalk != null ? treewalk.getObjectId(0) : null;
+        }
+    }
+
+
+    // writes to a temp file that then replaces the table's file, so that a reader
+    // that has mapped the previous version of the file is unaffected
+    private static String write(File dir, Table table, RepoColumnStore columns)
+            throws IOException {
+        TableStore store = TableStores.current();
+        String fileName = table.name() + store.getExtension();
+        Path path = new File(dir, fileName).toPath();
+        Path temp = Files.createTempFile(dir.toPath(), ".pdq", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                store.write(table, out, columns);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
         return fileName;
     }
 
 
+    // if the format has changed since a table was last written, drop the old file
+    private static void removeOtherFormats(Git git, File dir, String tableName)
+            throws GitAPIException {
+        for (TableStore store : TableStores.all()) {
+            if (store != TableStores.current()) {
+                String fileName = tableName + store.getExtension();
+                if (new File(dir, fileName).exists()) {
+                    git.rm().addFilepattern(fileName).call();
+                }
+            }
+        }
+    }
+
+
     private static List<LogEntry> listLog(Iterable<RevCommit> logs) {
         List<LogEntry> logList = new ArrayList<>();
         for (RevCommit rev : logs) {
@@ -129,35 +317,65 @@ public class Repo {
     }
 
 
-    // based on: https://stackoverflow.com/questions/1685228/how-to-cat-a-file-in-jgit
-    public static String fetchContent(String commitID, String path)
-            throws MissingObjectException, IncorrectObjectTypeException,
-            IOException {
+    // merges the logs of several shards
+    private static List<LogEntry> sortByTime(List<LogEntry> logList) {
+        logList.sort(Comparator.comparing(LogEntry::getTime));
+        return logList;
+    }
 
-        ObjectReader reader = null;
-        try (Git git = Git.open(REPO_DIR)) {
-            ObjectId id = ObjectId.fromString(commitID);
-            reader = git.getRepository().newObjectReader();
 
-            // Get the commit object for that revision
-            RevWalk walk = new RevWalk(reader);
-            RevCommit commit = walk.parseCommit(id);
+    /**
+     * Gets a table at a commit as CSV text. Tables stored in other formats are
+     * converted to CSV.
+     * @param commitID the commit the table was written in
+     * @param path the table's name
+     * @return the table as CSV text, or an empty string if it's not in the commit
+     */
+    public static String fetchContent(String commitID, String path) throws IOException {
+        try (Trace.Span span = Trace.begin("repo", "fetchContent")) {
+            InputStream in = openStream(commitID, path + new CsvTableStore().getExtension());
+            if (in != null) {
+                try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                    return IOUtils.toString(reader);
+                }
+            }
+        }
 
-            // Get the revision's file tree and the single file's path
-            RevTree tree = commit.getTree();
-            TreeWalk treewalk = TreeWalk.forPath(reader, path + ".csv", tree);
+        Table table = getTable(commitID, path);           // stored in another format
+        if (table != null) {
+            StringWriter writer = new StringWriter();
+            table.write().csv(writer);
+            return writer.toString();
+        }
+        return "";
+    }
+
+
+
+    // a stream that holds its shard's read lock until it is closed
+    private static class LockedStream extends FilterInputStream {
+
+        private final RepoShard _shard;
+        private final long _stamp;
+        private boolean _closed;
 
-            if (treewalk != null) {
-                byte[] data = reader.open(treewalk.getObjectId(0)).getBytes();
-                return new String(data, StandardCharsets.UTF_8);
+        LockedStream(InputStream in, RepoShard shard, long stamp) {
+            super(in);
+            _shard = shard;
+            _stamp = stamp;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (_closed) return;
+            _closed = true;
+            try {
+                super.close();
             }
-            else {
-                return "";
+            finally {
+                _shard.unlockRead(_stamp);
             }
         }
-        finally {
-            if (reader != null) reader.close();
-        }
     }
 
 }
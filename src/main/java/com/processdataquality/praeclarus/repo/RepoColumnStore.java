@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import com.processdataquality.praeclarus.repo.store.ColumnStore;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Keeps encoded columns as files in the repo, each named by the hash of its content.
+ * Since a column file's content never changes once written, a file in the work tree
+ * can be mapped without checking it against the index, and a column shared by many
+ * tables, or by many versions of a table, is written and committed only once.
+ *
+ * @author Michael Adams
+ * @date 17/8/2022
+ */
+class RepoColumnStore implements ColumnStore {
+
+    static final String COLUMN_DIR = "columns";
+
+    private final File _repoDir;
+    private final ObjectReader _reader;      // null when writing
+    private final RevTree _tree;             // null when writing
+    private final Set<String> _paths = new LinkedHashSet<>();
+
+
+    /**
+     * Creates a store for writing columns to the work tree
+     */
+    RepoColumnStore(File repoDir) {
+        this(repoDir, null, null);
+    }
+
+
+    /**
+     * Creates a store for reading the columns of a commit, from the work tree where
+     * they are still present there, otherwise from the git object store
+     */
+    RepoColumnStore(File repoDir, ObjectReader reader, RevTree tree) {
+        _repoDir = repoDir;
+        _reader = reader;
+        _tree = tree;
+    }
+
+
+    static String pathOf(String hash) {
+        return COLUMN_DIR + "/" + hash.substring(0, 2) + "/" + hash;
+    }
+
+
+    @Override
+    public void put(String hash, byte[] block) throws IOException {
+        String path = pathOf(hash);
+        Path file = new File(_repoDir, path).toPath();
+        if (! Files.exists(file)) {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), ".pdq", ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    out.write(block);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (FileAlreadyExistsException e) {
+                // written concurrently with the same content
+            }
+            finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        // always staged, in case the file was written by an earlier failed commit
+        _paths.add(path);
+    }
+
+
+    @Override
+    public ByteBuffer get(String hash) throws IOException {
+        String path = pathOf(hash);
+        Path file = new File(_repoDir, path).toPath();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (NoSuchFileException e) {
+            // removed from the work tree, so fall back to the object store
+        }
+        if (_reader != null) {
+            TreeWalk treewalk = TreeWalk.forPath(_reader, path, _tree);
+            if (treewalk != null) {
+                return ByteBuffer.wrap(_reader.open(treewalk.getObjectId(0)).getBytes());
+            }
+        }
+        throw new IOException("Missing column: " + hash);
+    }
+
+
+    /**
+     * @return the repo paths of the columns put to this store, for staging
+     */
+    Set<String> getPaths() {
+        return _paths;
+    }
+
+}
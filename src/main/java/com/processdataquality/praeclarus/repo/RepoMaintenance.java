@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import com.processdataquality.praeclarus.graph.Graph;
+import com.processdataquality.praeclarus.repo.graph.GraphStore;
+import com.processdataquality.praeclarus.repo.store.ColumnarTableStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the repo from growing without bound. On a schedule, commits outside the
+ * retention policy are dropped from the history of each shard, then the repo is repacked and
+ * unreachable objects are pruned. A commit is retained if it is referenced by a
+ * stored workflow, is among the last 'keep-per-table' commits of the node that made
+ * it, or is younger than 'keep-days'. Commits not made by a node are counted against
+ * each table they changed instead.
+ * <p>
+ * Dropping a commit rewrites the commits after it. The tables written only by
+ * dropped commits, and the columns only they referenced, are removed from the
+ * rewritten trees, the index and the work tree. Rewritten ids are recorded in the
+ * repo's commit aliases, so the ids of retained commits held elsewhere still resolve.
+ * Ids of dropped commits have no alias and no longer resolve.
+ *
+ * @author Michael Adams
+ * @date 18/8/2022
+ */
+@Component
+public class RepoMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RepoMaintenance.class);
+
+    private static final Pattern COMMIT_REF =
+            Pattern.compile("\"commitID\"\\s*:\\s*\"([0-9a-f]{40})\"");
+
+    // the start of the message of a commit made by a node (see Node.getCommitMessage)
+    private static final Pattern NODE_COMMIT = Pattern.compile("Node: ([^;]+);");
+
+    private final ColumnarTableStore _columnar = new ColumnarTableStore();
+    private final int _keepPerTable;
+    private final int _keepDays;
+    private final Counter _reclaimed;
+
+
+    public RepoMaintenance(@Value("${pdq.repo.retention.keep-per-table:5}") int keepPerTable,
+                           @Value("${pdq.repo.retention.keep-days:7}") int keepDays,
+                           MeterRegistry registry) {
+        _keepPerTable = keepPerTable;
+        _keepDays = keepDays;
+        _reclaimed = Counter.builder("pdq.repo.maintenance.reclaimed").baseUnit("bytes")
+                .register(registry);
+    }
+
+
+    @Scheduled(cron = "${pdq.repo.maintenance.cron:0 0 3 * * *}")
+    public void scheduledRun() {
+        try {
+            run();
+        }
+        catch (IOException | GitAPIException | RuntimeException e) {
+            LOG.error("Repository maintenance failed", e);
+        }
+    }
+
+
+    /**
+     * Applies the retention policy to each shard of the repo, then repacks the shard
+     * and prunes unreachable objects. Commits to a shard wait until its maintenance
+     * completes.
+     * @return the number of bytes reclaimed
+     */
+    public long run() throws IOException, GitAPIException {
+        long reclaimed = 0;
+        for (RepoShard shard : RepoShards.all()) {
+            reclaimed += run(shard);
+        }
+        return reclaimed;
+    }
+
+
+    private long run(RepoShard shard) throws IOException, GitAPIException {
+        Repository repository = shard.getRepository();
+        synchronized (shard) {                               // excludes Repo.commit
+            long stamp = shard.lockForMaintenance();         // and Repo reads
+            try {
+                long before = sizeOf(repository.getDirectory()) +
+                        sizeOf(columnDir(repository));
+                int dropped = applyRetention(shard);
+
+                // expire now: no objects can be written or read while the locks are held
+                Git.wrap(repository).gc().setExpire(new Date()).call();
+
+                long after = sizeOf(repository.getDirectory()) + sizeOf(columnDir(repository));
+                long reclaimed = Math.max(before - after, 0);
+                _reclaimed.increment(reclaimed);
+                LOG.info("Repository maintenance of {} dropped {} commits and reclaimed {} " +
+                        "bytes ({} bytes remain)", shard.getDirectory(), dropped, reclaimed,
+                        after);
+                return reclaimed;
+            }
+            finally {
+                shard.unlockMaintenance(stamp);
+            }
+        }
+    }
+
+
+    // returns the number of commits dropped
+    private int applyRetention(RepoShard shard) throws IOException {
+        Repository repository = shard.getRepository();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) return 0;                            // nothing committed yet
+
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.markStart(walk.parseCommit(head));
+            walk.sort(RevSort.TOPO);
+            List<RevCommit> commits = new ArrayList<>();          // newest first
+            walk.forEach(commits::add);
+            Set<ObjectId> retained = retained(shard, commits, head);
+            if (retained.size() == commits.size()) return 0;
+
+            Collections.reverse(commits);
+            return rewrite(shard, commits, retained, head);
+        }
+    }
+
+
+    private Set<ObjectId> retained(RepoShard shard, List<RevCommit> newestFirst,
+                                   ObjectId head) throws IOException {
+        Set<ObjectId> retained = new HashSet<>();
+        retained.add(head.copy());
+        for (String commitID : workflowCommits()) {
+            retained.add(shard.resolve(commitID));      // harmless if in another shard
+        }
+
+        long cutoff = System.currentTimeMillis() / 1000 - _keepDays * 86400L;
+        Map<String, Integer> versions = new HashMap<>();
+        try (ObjectReader reader = shard.getRepository().newObjectReader()) {
+            for (RevCommit commit : newestFirst) {
+                if (commit.getCommitTime() >= cutoff) {
+                    retained.add(commit.copy());
+                }
+                for (String producer : producers(reader, commit)) {
+                    if (versions.merge(producer, 1, Integer::sum) <= _keepPerTable) {
+                        retained.add(commit.copy());
+                    }
+                }
+            }
+        }
+        return retained;
+    }
+
+
+    // the ids of all commits referenced by the nodes of stored workflows
+    private Set<String> workflowCommits() {
+        Set<String> commitIDs = new HashSet<>();
+        for (Graph graph : GraphStore.getAll()) {
+            String content = graph.getUserContent();
+            if (content != null) {
+                Matcher matcher = COMMIT_REF.matcher(content);
+                while (matcher.find()) {
+                    commitIDs.add(matcher.group(1));
+                }
+            }
+        }
+        return commitIDs;
+    }
+
+
+    // the node that made a commit or, if not made by a node, the tables it changed.
+    // Each run of a reader names its table afresh, so only the node identifies the
+    // versions of its output
+    private Set<String> producers(ObjectReader reader, RevCommit commit)
+            throws IOException {
+        Matcher matcher = NODE_COMMIT.matcher(commit.getFullMessage());
+        if (matcher.lookingAt()) {
+            return Collections.singleton("node:" + matcher.group(1));
+        }
+        Set<String> tables = new HashSet<>();
+        for (String name : changedFiles(reader, commit).keySet()) {
+            int dot = name.lastIndexOf('.');
+            tables.add("table:" + (dot > 0 ? name.substring(0, dot) : name));
+        }
+        return tables;
+    }
+
+
+    // the table files added or changed by a commit, mapped to their blob ids
+    private Map<String, ObjectId> changedFiles(ObjectReader reader, RevCommit commit)
+            throws IOException {
+        Map<String, ObjectId> files = new HashMap<>();
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            if (commit.getParentCount() > 0) {
+                walk.addTree(commit.getParent(0).getTree());
+            }
+            else {
+                walk.addTree(new EmptyTreeIterator());
+            }
+            walk.addTree(commit.getTree());
+            walk.setFilter(TreeFilter.ANY_DIFF);
+            while (walk.next()) {
+                // skip the column store, and tables the commit removed
+                if (! (walk.isSubtree() || walk.getFileMode(1) == FileMode.MISSING)) {
+                    files.put(walk.getNameString(), walk.getObjectId(1));
+                }
+            }
+        }
+        return files;
+    }
+
+
+    // the table files written by dropped commits and not also by a retained one
+    private Map<String, Set<ObjectId>> droppedFiles(ObjectReader reader,
+                                                    List<RevCommit> commits,
+                                                    Set<ObjectId> retained)
+            throws IOException {
+        Map<String, Set<ObjectId>> dropped = new HashMap<>();
+        Map<String, Set<ObjectId>> kept = new HashMap<>();
+        for (RevCommit commit : commits) {
+            Map<String, Set<ObjectId>> files = retained.contains(commit) ? kept : dropped;
+            changedFiles(reader, commit).forEach((name, id) ->
+                    files.computeIfAbsent(name, k -> new HashSet<>()).add(id));
+        }
+        kept.forEach((name, ids) -> {
+            Set<ObjectId> droppedIDs = dropped.get(name);
+            if (droppedIDs != null) droppedIDs.removeAll(ids);
+        });
+        return dropped;
+    }
+
+
+    // rebuilds the history from the retained commits, returning the number dropped
+    private int rewrite(RepoShard shard, List<RevCommit> oldestFirst,
+                        Set<ObjectId> retained, ObjectId head) throws IOException {
+        Repository repository = shard.getRepository();
+        Map<String, String> rewritten = new HashMap<>();
+        Set<String> dropped = new HashSet<>();
+        ObjectId parent = null;
+        try (ObjectInserter inserter = repository.newObjectInserter();
+             ObjectReader reader = repository.newObjectReader()) {
+            Map<String, Set<ObjectId>> droppedFiles =
+                    droppedFiles(reader, oldestFirst, retained);
+            for (RevCommit commit : oldestFirst) {
+                if (! retained.contains(commit)) {
+                    dropped.add(commit.name());
+                    continue;
+                }
+                if (dropped.isEmpty()) {
+                    parent = commit;                  // history unchanged up to here
+                    continue;
+                }
+                CommitBuilder builder = new CommitBuilder();
+                builder.setTreeId(prune(reader, inserter, commit.getTree(), droppedFiles));
+                builder.setAuthor(commit.getAuthorIdent());
+                builder.setCommitter(commit.getCommitterIdent());
+                builder.setMessage(commit.getFullMessage());
+                if (parent != null) {
+                    builder.setParentId(parent);
+                }
+                parent = inserter.insert(builder);
+                rewritten.put(commit.name(), parent.name());
+            }
+            inserter.flush();
+
+            updateHead(repository, head, parent);
+            shard.getAliases().update(rewritten, dropped);
+            RepoShards.forgetCommits(dropped);
+            removeFiles(repository, reader, head, parent);
+        }
+        return dropped.size();
+    }
+
+
+    // rebuilds a commit's tree without the tables written only by dropped commits,
+    // and without the column files the remaining tables don't reference
+    private ObjectId prune(ObjectReader reader, ObjectInserter inserter, RevTree tree,
+                           Map<String, Set<ObjectId>> droppedFiles) throws IOException {
+        Set<String> referenced = new HashSet<>();
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            walk.addTree(tree);
+            while (walk.next()) {
+                if (isDropped(walk, droppedFiles)) continue;
+                if (walk.getNameString().endsWith(_columnar.getExtension())) {
+                    byte[] manifest = reader.open(walk.getObjectId(0)).getBytes();
+                    referenced.addAll(_columnar.getColumnHashes(ByteBuffer.wrap(manifest)));
+                }
+            }
+        }
+
+        TreeFormatter formatter = new TreeFormatter();
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            walk.addTree(tree);
+            while (walk.next()) {
+                if (isDropped(walk, droppedFiles)) continue;
+                ObjectId id = walk.getObjectId(0);
+                if (walk.isSubtree() && walk.getNameString().equals(RepoColumnStore.COLUMN_DIR)) {
+                    id = filterTree(reader, inserter, id, referenced, 2);
+                    if (id == null) continue;                 // no columns referenced
+                }
+                formatter.append(walk.getNameString(), walk.getFileMode(0), id);
+            }
+        }
+        return inserter.insert(formatter);
+    }
+
+
+    private boolean isDropped(TreeWalk walk, Map<String, Set<ObjectId>> droppedFiles) {
+        Set<ObjectId> ids = droppedFiles.get(walk.getNameString());
+        return ids != null && ! walk.isSubtree() && ids.contains(walk.getObjectId(0));
+    }
+
+
+    // copies a tree, keeping only the files at the given depth whose names are in
+    // the set. Returns null if nothing is kept
+    private ObjectId filterTree(ObjectReader reader, ObjectInserter inserter,
+                                ObjectId tree, Set<String> keep, int depth)
+            throws IOException {
+        TreeFormatter formatter = new TreeFormatter();
+        boolean empty = true;
+        try (TreeWalk walk = new TreeWalk(reader)) {
+            walk.addTree(tree);
+            while (walk.next()) {
+                ObjectId id = walk.getObjectId(0);
+                if (walk.isSubtree() && depth > 1) {
+                    id = filterTree(reader, inserter, id, keep, depth - 1);
+                }
+                else if (walk.isSubtree() || ! keep.contains(walk.getNameString())) {
+                    id = null;
+                }
+                if (id != null) {
+                    formatter.append(walk.getNameString(), walk.getFileMode(0), id);
+                    empty = false;
+                }
+            }
+        }
+        return empty ? null : inserter.insert(formatter);
+    }
+
+
+    private void updateHead(Repository repository, ObjectId oldHead, ObjectId newHead)
+            throws IOException {
+        RefUpdate update = repository.updateRef(Constants.HEAD);
+        update.setExpectedOldObjectId(oldHead);
+        update.setNewObjectId(newHead);
+        update.setForceUpdate(true);
+        update.disableRefLog();
+        RefUpdate.Result result = update.update();
+        if (result != RefUpdate.Result.FORCED && result != RefUpdate.Result.FAST_FORWARD) {
+            throw new IOException("Failed to update repository head: " + result);
+        }
+
+        // reflogs would keep the dropped commits reachable
+        File logs = new File(repository.getDirectory(), Constants.LOGS);
+        Files.deleteIfExists(new File(logs, Constants.HEAD).toPath());
+        Files.deleteIfExists(new File(logs, repository.getFullBranch()).toPath());
+    }
+
+
+    // removes the table and column files no longer in the head tree from the index
+    // and work tree
+    private void removeFiles(Repository repository, ObjectReader reader,
+                             ObjectId oldHead, ObjectId newHead) throws IOException {
+        Set<String> removed = filePaths(reader, oldHead);
+        removed.removeAll(filePaths(reader, newHead));
+        if (removed.isEmpty()) return;
+
+        DirCache index = repository.lockDirCache();
+        try {
+            DirCacheBuilder builder = index.builder();
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                DirCacheEntry entry = index.getEntry(i);
+                if (! removed.contains(entry.getPathString())) {
+                    builder.add(entry);                      // keeps the file's stat info
+                }
+            }
+            builder.commit();
+        }
+        finally {
+            index.unlock();
+        }
+        for (String path : removed) {
+            Files.deleteIfExists(new File(repository.getWorkTree(), path).toPath());
+        }
+    }
+
+
+    private Set<String> filePaths(ObjectReader reader, ObjectId commitID) throws IOException {
+        Set<String> paths = new HashSet<>();
+        try (RevWalk walk = new RevWalk(reader);
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(walk.parseCommit(commitID).getTree());
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                paths.add(treeWalk.getPathString());
+            }
+        }
+        return paths;
+    }
+
+
+    private File columnDir(Repository repository) {
+        return new File(repository.getWorkTree(), RepoColumnStore.COLUMN_DIR);
+    }
+
+
+    private long sizeOf(File dir) throws IOException {
+        if (! dir.exists()) return 0;
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> {
+                try {
+                    return Files.size(path);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+}
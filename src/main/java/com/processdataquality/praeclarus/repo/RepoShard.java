@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * One git repository of the repo. The repository is opened once and shared by all
+ * threads; object readers, which are not thread-safe, are borrowed from a small
+ * pool for each read. Commits and maintenance lock on the shard, so different
+ * shards can be written concurrently. Reads also hold the shard's read lock, which
+ * maintenance takes exclusively while it rewrites history and prunes objects.
+ *
+ * @author Michael Adams
+ * @date 19/8/2022
+ */
+class RepoShard {
+
+    private static final int READER_POOL_SIZE = 8;
+
+    private final String _key;
+    private final File _dir;
+    private final Repository _repository;
+    private final CommitAliases _aliases;
+    private final BlockingQueue<ObjectReader> _readers =
+            new ArrayBlockingQueue<>(READER_POOL_SIZE);
+    private final StampedLock _access = new StampedLock();   // not bound to a thread
+
+
+    RepoShard(String key, File dir) throws IOException {
+        _key = key;
+        _dir = dir;
+        checkInitiated(dir);
+        _repository = FileRepositoryBuilder.create(new File(dir, Constants.DOT_GIT));
+        _aliases = new CommitAliases(_repository.getDirectory());
+    }
+
+
+    String getKey() { return _key; }
+
+    File getDirectory() { return _dir; }
+
+    Repository getRepository() { return _repository; }
+
+    CommitAliases getAliases() { return _aliases; }
+
+
+    // held while reading objects, so that maintenance can't prune them mid-read
+    long lockForRead() { return _access.readLock(); }
+
+    void unlockRead(long stamp) { _access.unlockRead(stamp); }
+
+
+    // held by maintenance, excluding all reads
+    long lockForMaintenance() { return _access.writeLock(); }
+
+    void unlockMaintenance(long stamp) { _access.unlockWrite(stamp); }
+
+
+    // wraps the shared repository, which stays open when the Git object is closed
+    Git git() {
+        return Git.wrap(_repository);
+    }
+
+
+    PooledReader borrowReader() {
+        ObjectReader reader = _readers.poll();
+        return new PooledReader(reader != null ? reader : _repository.newObjectReader());
+    }
+
+
+    /**
+     * @param commitID a commit id, possibly of a commit since rewritten
+     * @return the id of the commit as it is now held in this shard
+     */
+    ObjectId resolve(String commitID) {
+        return ObjectId.fromString(_aliases.resolve(commitID));
+    }
+
+
+    /**
+     * @param commitID a commit id, possibly of a commit since rewritten
+     * @return true if this shard holds the commit
+     */
+    boolean contains(String commitID) throws IOException {
+        return _repository.getObjectDatabase().has(resolve(commitID));
+    }
+
+
+    /**
+     * Maps a table's file in the work tree, but only if the index shows that the
+     * file is unchanged since it was staged with the required content
+     * @return the mapped file, or null if the file doesn't hold the required content
+     */
+    ByteBuffer mapIfCurrent(String path, ObjectId blobID) throws IOException {
+        DirCacheEntry entry = _repository.readDirCache().getEntry(path);
+        if (entry == null || ! blobID.equals(entry.getObjectId())) {
+            return null;
+        }
+        Path file = new File(_dir, path).toPath();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != entry.getLength() || ! Files.getLastModifiedTime(file)
+                    .toInstant().equals(entry.getLastModifiedInstant())) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+
+    private static void checkInitiated(File dir) throws IOException {
+        if (! dir.exists()) {
+            if (! dir.mkdirs()) {
+                throw new IOException("Failed to create repo directory: " + dir);
+            }
+            try (Git git = Git.init().setDirectory(dir).call()) {
+            }
+            catch (GitAPIException e) {
+                throw new IOException("Failed to initialise repository: " + dir, e);
+            }
+        }
+    }
+
+
+    // an object reader borrowed from the pool, and returned to it when closed
+    class PooledReader implements AutoCloseable {
+        final ObjectReader reader;
+
+        PooledReader(ObjectReader reader) { this.reader = reader; }
+
+        @Override
+        public void close() {
+            if (! _readers.offer(reader)) {
+                reader.close();                              // pool is full
+            }
+        }
+    }
+
+}
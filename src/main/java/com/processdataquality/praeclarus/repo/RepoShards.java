@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes repo access to shards, i.e. separate git repositories, so that commits for
+ * different owners don't contend for one repository's lock. As set by the
+ * 'pdq.repo.shard-by' property, tables are committed to a shard per user, or all to
+ * the default shard. Commits are found in whichever shard holds them, so tables
+ * committed before sharding was enabled remain readable from the default shard.
+ * The shard of each commit is remembered once it is known, so a read looks through
+ * the shards only for a commit it hasn't seen before. The default shard and the
+ * directory of the other shards are set by the 'pdq.repo.dir' and
+ * 'pdq.repo.shards-dir' properties.
+ *
+ * @author Michael Adams
+ * @date 19/8/2022
+ */
+@Component
+public class RepoShards {
+
+    private static final String DEFAULT_KEY = "";
+    private static final int MAX_KNOWN_COMMITS = 100000;
+
+    private static final Map<String, RepoShard> shards = new ConcurrentHashMap<>();
+    private static final Map<String, RepoShard> commitShards = new ConcurrentHashMap<>();
+    private static boolean byUser = true;
+    private static File defaultDir = new File("../pdq_repo");
+    private static File shardsDir = new File("../pdq_repo_shards");
+
+    public RepoShards(@Value("${pdq.repo.shard-by:user}") String shardBy,
+                      @Value("${pdq.repo.dir:../pdq_repo}") String repoDir,
+                      @Value("${pdq.repo.shards-dir:../pdq_repo_shards}") String shardsPath) {
+        defaultDir = new File(repoDir);
+        shardsDir = new File(shardsPath);
+        switch (shardBy.trim().toLowerCase()) {
+            case "user" : byUser = true; break;
+            case "none" : byUser = false; break;
+            default: throw new IllegalArgumentException("Unknown repo sharding: " + shardBy);
+        }
+    }
+
+
+    /**
+     * @param user the name of a committing user
+     * @return the key of the shard the user's tables are committed to
+     */
+    static String keyFor(String user) {
+        if (! byUser || user == null || user.trim().isEmpty()) {
+            return DEFAULT_KEY;
+        }
+        String key = user.trim().replaceAll("[^A-Za-z0-9_-]", "_");
+        if (! key.equals(user)) {                  // keep sanitised names distinct
+            key += "-" + Integer.toHexString(user.hashCode());
+        }
+        return key;
+    }
+
+
+    /**
+     * @param user the name of a committing user
+     * @return the shard the user's tables are committed to
+     */
+    static RepoShard forUser(String user) throws IOException {
+        return get(keyFor(user));
+    }
+
+
+    /**
+     * @param commitID a commit id
+     * @return the shard holding the commit
+     * @throws IOException if no shard holds the commit
+     */
+    static RepoShard forCommit(String commitID) throws IOException {
+        RepoShard known = commitShards.get(commitID);
+        if (known != null) return known;
+
+        // try the shards already open, before listing the shards directory
+        List<RepoShard> open = new ArrayList<>(shards.values());
+        for (RepoShard shard : open) {
+            if (shard.contains(commitID)) {
+                recordCommit(commitID, shard);
+                return shard;
+            }
+        }
+        for (RepoShard shard : all()) {
+            if (! open.contains(shard) && shard.contains(commitID)) {
+                recordCommit(commitID, shard);
+                return shard;
+            }
+        }
+        throw new IOException("Commit not found in repo: " + commitID);
+    }
+
+
+    /**
+     * Remembers the shard holding a commit
+     * @param commitID the commit's id
+     * @param shard the shard holding it
+     */
+    static void recordCommit(String commitID, RepoShard shard) {
+        if (commitShards.size() >= MAX_KNOWN_COMMITS) {
+            commitShards.clear();                     // rebuilt as commits are read
+        }
+        commitShards.put(commitID, shard);
+    }
+
+
+    /**
+     * Forgets the shards of commits that have been dropped from the repo
+     * @param commitIDs the ids of the dropped commits
+     */
+    static void forgetCommits(Collection<String> commitIDs) {
+        commitIDs.forEach(commitShards::remove);
+    }
+
+
+    /**
+     * @return all shards, the default shard first
+     */
+    static List<RepoShard> all() throws IOException {
+        List<RepoShard> all = new ArrayList<>();
+        all.add(get(DEFAULT_KEY));
+        File[] dirs = shardsDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                all.add(get(dir.getName()));
+            }
+        }
+        return all;
+    }
+
+
+    private static RepoShard get(String key) throws IOException {
+        try {
+            return shards.computeIfAbsent(key, k -> {
+                try {
+                    return new RepoShard(k, k.equals(DEFAULT_KEY) ? defaultDir :
+                            new File(shardsDir, k));
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import com.processdataquality.praeclarus.util.CopyOnWriteTable;
+import com.processdataquality.praeclarus.util.TableSize;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tech.tablesaw.api.Table;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of tables read from the repo, bounded by their
+ * estimated heap size as set by the 'pdq.repo.cache-mb' property. Since a table at
+ * a commit never changes, entries are never stale. Tables are handed out as
+ * copy-on-write views, so a caller can't change the cached copy.
+ * <p>
+ * Hits, misses and evictions are published as the pdq.repo.cache.* meters.
+ *
+ * @author Michael Adams
+ * @date 17/8/2022
+ */
+@Component
+public class TableCache {
+
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static long maxBytes = 256L * 1024 * 1024;
+    private static long totalBytes;
+
+    private static Counter hits;
+    private static Counter misses;
+    private static Counter evictions;
+
+
+    public TableCache(@Value("${pdq.repo.cache-mb:256}") long maxMegabytes,
+                      MeterRegistry registry) {
+        setMaxBytes(maxMegabytes * 1024 * 1024);
+        hits = registry.counter("pdq.repo.cache.hits");
+        misses = registry.counter("pdq.repo.cache.misses");
+        evictions = registry.counter("pdq.repo.cache.evictions");
+        Gauge.builder("pdq.repo.cache.size", TableCache::getTotalBytes)
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("pdq.repo.cache.entries", TableCache::getEntryCount)
+                .register(registry);
+    }
+
+
+    /**
+     * @param commitID the commit the table was written in
+     * @param tableID the table's name
+     * @return a view of the cached table, or null if it's not cached
+     */
+    public static Table get(String commitID, String tableID) {
+        Entry entry;
+        synchronized (TableCache.class) {
+            entry = entries.get(key(commitID, tableID));
+        }
+        increment(entry != null ? hits : misses);
+        return entry != null ? CopyOnWriteTable.view(entry.table) : null;
+    }
+
+
+    /**
+     * Caches a table, evicting the least recently used tables as needed to keep the
+     * cache within its size limit. A table larger than the limit is not cached.
+     * @param commitID the commit the table was written in
+     * @param tableID the table's name
+     * @param table the table. It must not be changed after it is cached
+     */
+    public static void put(String commitID, String tableID, Table table) {
+        if (commitID == null || table == null) return;
+        long bytes = TableSize.estimateBytes(table);
+        synchronized (TableCache.class) {
+            if (bytes > maxBytes) return;
+            Entry previous = entries.put(key(commitID, tableID),
+                    new Entry(CopyOnWriteTable.view(table), bytes));
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += bytes;
+            evict();
+        }
+    }
+
+
+    public static synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+
+    public static synchronized long getTotalBytes() { return totalBytes; }
+
+    public static synchronized int getEntryCount() { return entries.size(); }
+
+
+    private static synchronized void setMaxBytes(long bytes) {
+        maxBytes = bytes;
+        evict();
+    }
+
+
+    // removes least recently used entries until the cache is within its limit
+    private static void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            totalBytes -= iterator.next().bytes;
+            iterator.remove();
+            increment(evictions);
+        }
+    }
+
+
+    private static void increment(Counter counter) {
+        if (counter != null) counter.increment();        // null until Spring starts
+    }
+
+
+    private static String key(String commitID, String tableID) {
+        return commitID + '/' + tableID;
+    }
+
+
+    private static class Entry {
+        final Table table;
+        final long bytes;
+
+        Entry(Table table, long bytes) {
+            this.table = table;
+            this.bytes = bytes;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.cache;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.LocalDateTime;
+
+/**
+ * A cached node result: the repo location of the output of a previous node run,
+ * keyed on a hash of everything that determined that output.
+ *
+ * @author Michael Adams
+ * @date 18/7/2022
+ */
+@Entity
+public class NodeResult {
+
+    @Id
+    private String resultKey;
+    private String pluginClass;
+    private String commitId;
+    private String tableId;
+    private LocalDateTime created;
+    private LocalDateTime lastUsed;
+
+
+    public NodeResult() { }
+
+    public NodeResult(String key, String pluginClass, String commitId, String tableId) {
+        this.resultKey = key;
+        this.pluginClass = pluginClass;
+        this.commitId = commitId;
+        this.tableId = tableId;
+        created = LocalDateTime.now();
+        lastUsed = created;
+    }
+
+
+    public String getResultKey() { return resultKey; }
+
+    public void setResultKey(String key) { resultKey = key; }
+
+
+    public String getPluginClass() { return pluginClass; }
+
+    public void setPluginClass(String pluginClass) { this.pluginClass = pluginClass; }
+
+
+    public String getCommitId() { return commitId; }
+
+    public void setCommitId(String commitId) { this.commitId = commitId; }
+
+
+    public String getTableId() { return tableId; }
+
+    public void setTableId(String tableId) { this.tableId = tableId; }
+
+
+    public LocalDateTime getCreated() { return created; }
+
+    public void setCreated(LocalDateTime created) { this.created = created; }
+
+
+    public LocalDateTime getLastUsed() { return lastUsed; }
+
+    public void setLastUsed(LocalDateTime lastUsed) { this.lastUsed = lastUsed; }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.cache;
+
+import com.processdataquality.praeclarus.node.Node;
+import com.processdataquality.praeclarus.plugin.AbstractPlugin;
+import com.processdataquality.praeclarus.reader.AbstractDataReader;
+import com.processdataquality.praeclarus.repo.Repo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.configurationprocessor.json.JSONException;
+import org.springframework.boot.configurationprocessor.json.JSONObject;
+import org.springframework.stereotype.Component;
+import tech.tablesaw.io.Source;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Memoizes node executions. A node's result key is a hash of its plugin class, its
+ * option changes and the committed content of its inputs (for readers, the identity
+ * of the source file). A node whose key matches a previous run can restore that
+ * run's output from the repo instead of executing its plugin.
+ *
+ * @author Michael Adams
+ * @date 18/7/2022
+ */
+@Component
+public class NodeResultCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NodeResultCache.class);
+
+    private static NodeResultRepository repository;
+    private static boolean enabled = false;
+
+    public NodeResultCache(NodeResultRepository repo,
+                           @Value("${pdq.cache.enabled:true}") boolean isEnabled) {
+        repository = repo;
+        enabled = isEnabled;
+    }
+
+
+    public static boolean isEnabled() { return enabled && repository != null; }
+
+
+    /**
+     * Calculates the result key for a node that is about to run
+     * @param node the node
+     * @return the key, or null if the node's result can't be cached (e.g. a reader
+     * reading from a stream)
+     */
+    public static String keyFor(Node node) {
+        if (! isEnabled()) return null;
+        try {
+            AbstractPlugin plugin = node.getPlugin();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, plugin.getClass().getName());
+            update(digest, optionsAsString(plugin.getOptions().getChangesAsJson()));
+
+            if (plugin instanceof AbstractDataReader) {
+                String sourceKey = sourceKey((AbstractDataReader) plugin);
+                if (sourceKey == null) return null;
+                update(digest, sourceKey);
+            }
+
+            // sorted by node id, as the predecessor set's iteration order isn't stable
+            List<Node> inputs = new ArrayList<>(node.previous());
+            inputs.sort(Comparator.comparing(Node::getID));
+            for (Node previous : inputs) {
+                String inputKey = inputKey(previous);
+                if (inputKey == null) return null;
+                update(digest, inputKey);
+            }
+            return toHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException | JSONException | IOException e) {
+            LOG.warn("Unable to calculate result key for node '{}'", node.getLabel(), e);
+            return null;
+        }
+    }
+
+
+    public static Optional<NodeResult> get(String key) {
+        if (key == null || ! isEnabled()) return Optional.empty();
+        Optional<NodeResult> result = repository.findById(key);
+        result.ifPresent(r -> {
+            r.setLastUsed(LocalDateTime.now());
+            repository.save(r);
+        });
+        return result;
+    }
+
+
+    /**
+     * Records the committed output of a node against its result key
+     * @param key the key calculated before the node ran
+     * @param node the node, with its output committed or queued for commit
+     */
+    public static void put(String key, Node node) {
+        if (key == null || ! isEnabled() || node.getTableID() == null) return;
+        String pluginClass = node.getPlugin().getClass().getName();
+        String tableID = node.getTableID();
+
+        // saved once the output's queued commit has been written
+        node.getCommitFuture().thenAccept(commitID -> {
+            if (commitID != null) {
+                repository.save(new NodeResult(key, pluginClass, commitID, tableID));
+            }
+        });
+    }
+
+
+    public static void evict(String key) {
+        if (key != null && isEnabled()) {
+            repository.deleteById(key);
+        }
+    }
+
+
+    // option changes sorted by key, so the string is stable across runs
+    private static String optionsAsString(JSONObject json) throws JSONException {
+        List<String> keys = new ArrayList<>();
+        json.keys().forEachRemaining(k -> keys.add((String) k));
+        Collections.sort(keys);
+        StringBuilder sb = new StringBuilder();
+        for (String key : keys) {
+            sb.append(key).append('=').append(json.get(key)).append('\n');
+        }
+        return sb.toString();
+    }
+
+
+    // a local file is identified by its path, size and modification time
+    private static String sourceKey(AbstractDataReader reader) throws IOException {
+        Source source;
+        try {
+            source = reader.getSource();
+        }
+        catch (RuntimeException e) {
+            return null;                                    // no source set
+        }
+        File file = source.file();
+        if (file != null && file.isFile()) {
+            return file.getCanonicalPath() + ':' + file.length() + ':' + file.lastModified();
+        }
+        return null;              // streams can't be identified without consuming them
+    }
+
+
+    /*
+     * An input is identified only by the git blob id of its committed content, so a
+     * key doesn't depend on how or when the input was produced. Waits for the input's
+     * commit if it is still queued.
+     */
+    private static String inputKey(Node previous) throws IOException {
+        String commitID;
+        try {
+            commitID = previous.getCommitFuture().get();
+        }
+        catch (ExecutionException e) {
+            return null;                                // the input wasn't committed
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        String tableID = previous.getTableID();
+        if (commitID == null || tableID == null) return null;
+        return Repo.getObjectID(commitID, tableID);
+    }
+
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);                                  // separator
+    }
+
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
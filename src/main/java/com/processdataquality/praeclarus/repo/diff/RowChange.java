@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.diff;
+
+import java.util.BitSet;
+
+/**
+ * A row that differs between two versions of a table
+ *
+ * @author Michael Adams
+ * @date 20/8/2022
+ */
+public class RowChange {
+
+    public enum Kind { ADDED, REMOVED, CHANGED }
+
+    private final Kind _kind;
+    private final String _key;
+    private final int _previousRow;            // -1 if added
+    private final int _currentRow;             // -1 if removed
+    private final BitSet _changedColumns;      // indexes of compared columns
+
+
+    RowChange(Kind kind, String key, int previousRow, int currentRow, BitSet changedColumns) {
+        _kind = kind;
+        _key = key;
+        _previousRow = previousRow;
+        _currentRow = currentRow;
+        _changedColumns = changedColumns;
+    }
+
+
+    public Kind getKind() { return _kind; }
+
+    /**
+     * @return the key the row was matched by, e.g. its case id and ordinal
+     */
+    public String getKey() { return _key; }
+
+    public int getPreviousRow() { return _previousRow; }
+
+    public int getCurrentRow() { return _currentRow; }
+
+
+    /**
+     * @param column the index of a compared column
+     * @return true if the row's value in the column changed
+     */
+    public boolean isChanged(int column) {
+        return _changedColumns != null && _changedColumns.get(column);
+    }
+
+
+    public int getChangedCellCount() {
+        return _changedColumns != null ? _changedColumns.cardinality() : 0;
+    }
+
+}
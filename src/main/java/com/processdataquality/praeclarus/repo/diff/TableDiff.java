@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.diff;
+
+import tech.tablesaw.api.Table;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between two versions of a table: the rows added, removed and
+ * changed, and for changed rows the cells that changed. Rows are held as indexes
+ * into the two tables, so a large diff can be paged through without copying rows.
+ *
+ * @author Michael Adams
+ * @date 20/8/2022
+ */
+public class TableDiff {
+
+    private final Table _previous;
+    private final Table _current;
+    private final String _keyDescription;
+    private final List<String> _columns;             // compared: in both tables
+    private final List<String> _addedColumns;
+    private final List<String> _removedColumns;
+    private final List<RowChange> _changes;
+    private final int _unchangedRows;
+    private final int[] _kindCounts = new int[RowChange.Kind.values().length];
+    private long _changedCells;
+
+
+    TableDiff(Table previous, Table current, String keyDescription, List<String> columns,
+              List<String> addedColumns, List<String> removedColumns,
+              List<RowChange> changes, int unchangedRows) {
+        _previous = previous;
+        _current = current;
+        _keyDescription = keyDescription;
+        _columns = columns;
+        _addedColumns = addedColumns;
+        _removedColumns = removedColumns;
+        _changes = changes;
+        _unchangedRows = unchangedRows;
+        for (RowChange change : changes) {
+            _kindCounts[change.getKind().ordinal()]++;
+            _changedCells += change.getChangedCellCount();
+        }
+    }
+
+
+    /**
+     * @return how rows were matched between the tables
+     */
+    public String getKeyDescription() { return _keyDescription; }
+
+    /**
+     * @return the names of the columns present in both tables, which were compared
+     */
+    public List<String> getColumns() { return Collections.unmodifiableList(_columns); }
+
+    public List<String> getAddedColumns() { return Collections.unmodifiableList(_addedColumns); }
+
+    public List<String> getRemovedColumns() { return Collections.unmodifiableList(_removedColumns); }
+
+    public int getChangeCount() { return _changes.size(); }
+
+    public int getAddedCount() { return _kindCounts[RowChange.Kind.ADDED.ordinal()]; }
+
+    public int getRemovedCount() { return _kindCounts[RowChange.Kind.REMOVED.ordinal()]; }
+
+    public int getChangedCount() { return _kindCounts[RowChange.Kind.CHANGED.ordinal()]; }
+
+    public int getUnchangedCount() { return _unchangedRows; }
+
+    public long getChangedCellCount() { return _changedCells; }
+
+    public boolean isEmpty() {
+        return _changes.isEmpty() && _addedColumns.isEmpty() && _removedColumns.isEmpty();
+    }
+
+
+    /**
+     * @param offset the index of the first change to get
+     * @param limit the maximum number of changes to get
+     * @return a page of the row changes, in the current table's row order, followed by
+     * rows removed from the previous table
+     */
+    public List<RowChange> getChanges(int offset, int limit) {
+        int from = Math.min(offset, _changes.size());
+        return _changes.subList(from, Math.min(from + limit, _changes.size()));
+    }
+
+
+    /**
+     * @param change a row change
+     * @param column the index of a compared column
+     * @return the row's value in the previous table, or null if the row was added
+     */
+    public String getPreviousValue(RowChange change, int column) {
+        return change.getPreviousRow() < 0 ? null :
+                _previous.column(_columns.get(column)).getString(change.getPreviousRow());
+    }
+
+
+    /**
+     * @param change a row change
+     * @param column the index of a compared column
+     * @return the row's value in the current table, or null if the row was removed
+     */
+    public String getCurrentValue(RowChange change, int column) {
+        return change.getCurrentRow() < 0 ? null :
+                _current.column(_columns.get(column)).getString(change.getCurrentRow());
+    }
+
+
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(getChangedCount()).append(" rows changed (")
+                .append(getChangedCellCount()).append(" cells), ")
+                .append(getAddedCount()).append(" added, ")
+                .append(getRemovedCount()).append(" removed, ")
+                .append(getUnchangedCount()).append(" unchanged");
+        if (! _addedColumns.isEmpty()) {
+            summary.append("; columns added: ").append(String.join(", ", _addedColumns));
+        }
+        if (! _removedColumns.isEmpty()) {
+            summary.append("; columns removed: ").append(String.join(", ", _removedColumns));
+        }
+        return summary.toString();
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.diff;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.util.*;
+
+/**
+ * Compares two versions of a table. Rows are matched by key rather than by position,
+ * so that a row inserted or removed doesn't mark every following row as changed.
+ * For event logs, the key is the case id plus the event's ordinal within its case;
+ * tables without a case id column are matched by row position.
+ * <p>
+ * Matching is a hash join: the previous table's rows are indexed by case, then each
+ * of the current table's rows is looked up in the index.
+ *
+ * @author Michael Adams
+ * @date 20/8/2022
+ */
+public class TableDiffer {
+
+    public static final String CASE_ID = "case:id";
+
+
+    /**
+     * @param previous the earlier version of the table
+     * @param current the later version of the table
+     * @return the differences between the tables
+     */
+    public TableDiff diff(Table previous, Table current) {
+        List<String> columns = new ArrayList<>();
+        List<String> addedColumns = new ArrayList<>();
+        List<String> removedColumns = new ArrayList<>();
+        for (String name : current.columnNames()) {
+            if (previous.containsColumn(name)) {
+                columns.add(name);
+            }
+            else addedColumns.add(name);
+        }
+        for (String name : previous.columnNames()) {
+            if (! current.containsColumn(name)) {
+                removedColumns.add(name);
+            }
+        }
+
+        Matcher matcher = new Matcher(previous, current, columns);
+        String keyDescription;
+        if (previous.containsColumn(CASE_ID) && current.containsColumn(CASE_ID)) {
+            matcher.matchByCase(previous.column(CASE_ID), current.column(CASE_ID));
+            keyDescription = CASE_ID + " + event ordinal";
+        }
+        else {
+            matcher.matchByPosition();
+            keyDescription = "row position";
+        }
+        return new TableDiff(previous, current, keyDescription, columns, addedColumns,
+                removedColumns, matcher.changes, matcher.unchanged);
+    }
+
+
+    private static class Matcher {
+        final Table previous;
+        final Table current;
+        final List<Column<?>> previousColumns = new ArrayList<>();
+        final List<Column<?>> currentColumns = new ArrayList<>();
+        final List<RowChange> changes = new ArrayList<>();
+        int unchanged;
+
+        Matcher(Table previous, Table current, List<String> columns) {
+            this.previous = previous;
+            this.current = current;
+            for (String name : columns) {
+                previousColumns.add(previous.column(name));
+                currentColumns.add(current.column(name));
+            }
+        }
+
+
+        void matchByCase(Column<?> previousCase, Column<?> currentCase) {
+            Map<String, IntArrayList> index = new HashMap<>();    // case -> rows in order
+            for (int row = 0; row < previous.rowCount(); row++) {
+                index.computeIfAbsent(previousCase.getString(row), k -> new IntArrayList())
+                        .add(row);
+            }
+
+            boolean[] matched = new boolean[previous.rowCount()];
+            Map<String, Integer> ordinals = new HashMap<>();
+            for (int row = 0; row < current.rowCount(); row++) {
+                String caseID = currentCase.getString(row);
+                int ordinal = ordinals.merge(caseID, 1, Integer::sum) - 1;
+                IntArrayList rows = index.get(caseID);
+                String key = caseKey(caseID, ordinal);
+                if (rows != null && ordinal < rows.size()) {
+                    int previousRow = rows.getInt(ordinal);
+                    matched[previousRow] = true;
+                    compare(key, previousRow, row);
+                }
+                else {
+                    changes.add(new RowChange(RowChange.Kind.ADDED, key, -1, row, null));
+                }
+            }
+
+            // events beyond the current length of their case, or of removed cases
+            ordinals.clear();
+            for (int row = 0; row < previous.rowCount(); row++) {
+                String caseID = previousCase.getString(row);
+                int ordinal = ordinals.merge(caseID, 1, Integer::sum) - 1;
+                if (! matched[row]) {
+                    changes.add(new RowChange(RowChange.Kind.REMOVED,
+                            caseKey(caseID, ordinal), row, -1, null));
+                }
+            }
+        }
+
+
+        void matchByPosition() {
+            int common = Math.min(previous.rowCount(), current.rowCount());
+            for (int row = 0; row < common; row++) {
+                compare(positionKey(row), row, row);
+            }
+            for (int row = common; row < current.rowCount(); row++) {
+                changes.add(new RowChange(RowChange.Kind.ADDED, positionKey(row), -1, row, null));
+            }
+            for (int row = common; row < previous.rowCount(); row++) {
+                changes.add(new RowChange(RowChange.Kind.REMOVED, positionKey(row), row, -1, null));
+            }
+        }
+
+
+        void compare(String key, int previousRow, int currentRow) {
+            BitSet changed = null;
+            for (int i = 0; i < currentColumns.size(); i++) {
+                if (! equal(previousColumns.get(i), previousRow, currentColumns.get(i), currentRow)) {
+                    if (changed == null) changed = new BitSet(currentColumns.size());
+                    changed.set(i);
+                }
+            }
+            if (changed != null) {
+                changes.add(new RowChange(RowChange.Kind.CHANGED, key, previousRow,
+                        currentRow, changed));
+            }
+            else unchanged++;
+        }
+
+
+        // values of the same type are compared directly, others by their string forms
+        boolean equal(Column<?> previousColumn, int previousRow,
+                      Column<?> currentColumn, int currentRow) {
+            if (previousColumn.type() == currentColumn.type()) {
+                return Objects.equals(previousColumn.get(previousRow),
+                        currentColumn.get(currentRow));
+            }
+            return previousColumn.getString(previousRow).equals(
+                    currentColumn.getString(currentRow));
+        }
+
+
+        String caseKey(String caseID, int ordinal) {
+            return caseID + " #" + (ordinal + 1);
+        }
+
+
+        String positionKey(int row) {
+            return "row " + (row + 1);
+        }
+    }
+
+}
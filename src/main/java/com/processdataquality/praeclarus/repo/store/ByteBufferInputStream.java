@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.store;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream over the remaining bytes of a buffer
+ *
+ * @author Michael Adams
+ * @date 12/8/2022
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer _buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+        _buffer = buffer;
+    }
+
+
+    @Override
+    public int read() {
+        return _buffer.hasRemaining() ? _buffer.get() & 0xFF : -1;
+    }
+
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) return 0;
+        if (! _buffer.hasRemaining()) return -1;
+        int count = Math.min(length, _buffer.remaining());
+        _buffer.get(bytes, offset, count);
+        return count;
+    }
+
+
+    @Override
+    public int available() {
+        return _buffer.remaining();
+    }
+
+}
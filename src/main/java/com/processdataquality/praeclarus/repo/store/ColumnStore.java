@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Content-addressed storage for encoded columns, so that a column shared by many
+ * table versions (e.g. all the columns a repair did not change) is stored once
+ *
+ * @author Michael Adams
+ * @date 17/8/2022
+ */
+public interface ColumnStore {
+
+    /**
+     * Stores an encoded column, unless one with the same hash is already stored
+     * @param hash the hash of the encoded column's content
+     * @param block the encoded column
+     * @throws IOException if the column can't be stored
+     */
+    void put(String hash, byte[] block) throws IOException;
+
+
+    /**
+     * Gets an encoded column
+     * @param hash the hash of the encoded column's content
+     * @return the encoded column
+     * @throws IOException if there is no such column, or it can't be read
+     */
+    ByteBuffer get(String hash) throws IOException;
+
+}
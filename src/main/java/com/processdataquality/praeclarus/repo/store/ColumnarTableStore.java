@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.store;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.ObjectStream;
+import tech.tablesaw.api.*;
+import tech.tablesaw.columns.Column;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Stores tables in a typed, compressed, columnar binary format. Column types are
+ * kept, so no type inference is needed on reading, and each column is compressed
+ * separately so that it can be decoded straight from a (memory mapped) buffer.
+ * <p>
+ * The format is a header of: magic 'PDQC', version, row count and column count;
+ * then for each column its name, type name, and a block holding the column's
+ * encoded length followed by its deflated encoding. Columns are encoded as:
+ * <ul>
+ *     <li>strings: a dictionary of unique values, then an int code per row (-1 if
+ *     missing)</li>
+ *     <li>numbers, dates and times: the column's internal primitive values, which
+ *     include its own missing value indicators</li>
+ *     <li>booleans: a byte per row (1, 0 or -1 if missing)</li>
+ *     <li>any other type: a string per row, parsed on reading</li>
+ * </ul>
+ * All values are big-endian, and strings are length-prefixed UTF-8.
+ * <p>
+ * When written with a column store (version 2), the file is a manifest: each
+ * column's block is replaced by the hash of its content, and the blocks are kept in
+ * the column store. A column is then stored only once however many table versions
+ * contain it.
+ *
+ * @author Michael Adams
+ * @date 12/8/2022
+ */
+public class ColumnarTableStore implements TableStore {
+
+    private static final int MAGIC = 0x50445143;             // 'PDQC'
+    private static final int VERSION_INLINE = 1;     // column blocks in the file
+    private static final int VERSION_MANIFEST = 2;   // column hashes in the file
+
+
+    @Override
+    public String getName() { return "columnar"; }
+
+    @Override
+    public String getExtension() { return ".pdqc"; }
+
+
+    @Override
+    public void write(Table table, OutputStream out) throws IOException {
+        write(table, out, null);
+    }
+
+
+    @Override
+    public void write(Table table, OutputStream out, ColumnStore columns)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(columns != null ? VERSION_MANIFEST : VERSION_INLINE);
+        data.writeInt(table.rowCount());
+        data.writeInt(table.columnCount());
+        for (Column<?> column : table.columns()) {
+            writeString(data, column.name());
+            writeString(data, column.type().name());
+            byte[] block = encodeColumn(column);
+            if (columns != null) {
+                String hash = hash(block);
+                columns.put(hash, block);
+                writeString(data, hash);
+            }
+            else {
+                data.writeInt(block.length);
+                data.write(block);
+            }
+        }
+        data.flush();
+    }
+
+
+    @Override
+    public Table read(InputStream in, String tableName) throws IOException {
+        return read(in, tableName, null);
+    }
+
+
+    // a stream of a stored object knows its size, so is read straight into the buffer
+    @Override
+    public Table read(InputStream in, String tableName, ColumnStore columns)
+            throws IOException {
+        if (! (in instanceof ObjectStream)) {
+            return read(ByteBuffer.wrap(in.readAllBytes()), tableName, columns);
+        }
+        long size = ((ObjectStream) in).getSize();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Table too large to read: " + tableName);
+        }
+        byte[] bytes = new byte[(int) size];
+        IOUtils.readFully(in, bytes);
+        return read(ByteBuffer.wrap(bytes), tableName, columns);
+    }
+
+
+    @Override
+    public Table read(ByteBuffer buffer, String tableName) throws IOException {
+        return read(buffer, tableName, null);
+    }
+
+
+    @Override
+    public Table read(ByteBuffer buffer, String tableName, ColumnStore columns)
+            throws IOException {
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a columnar table: " + tableName);
+        }
+        int version = buffer.getInt();
+        if (! (version == VERSION_INLINE || version == VERSION_MANIFEST)) {
+            throw new IOException("Unsupported columnar table version: " + version);
+        }
+        if (version == VERSION_MANIFEST && columns == null) {
+            throw new IOException("No column store to read table: " + tableName);
+        }
+        int rowCount = buffer.getInt();
+        int columnCount = buffer.getInt();
+        Table table = Table.create(tableName);
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString(buffer);
+            String typeName = readString(buffer);
+            ByteBuffer block = version == VERSION_MANIFEST ?
+                    columns.get(readString(buffer)) : slice(buffer, buffer.getInt());
+            table.addColumns(decodeColumn(name, typeName, rowCount, block));
+        }
+        return table;
+    }
+
+
+    /**
+     * @param buffer a stored table, positioned at its start
+     * @return the hashes of the columns referenced by a manifest, or an empty list if
+     * the table holds its columns inline
+     */
+    public List<String> getColumnHashes(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a columnar table");
+        }
+        List<String> hashes = new ArrayList<>();
+        if (buffer.getInt() == VERSION_MANIFEST) {
+            buffer.getInt();                                       // row count
+            int columnCount = buffer.getInt();
+            for (int i = 0; i < columnCount; i++) {
+                readString(buffer);                                // name
+                readString(buffer);                                // type
+                hashes.add(readString(buffer));
+            }
+        }
+        return hashes;
+    }
+
+
+    /**
+     * Encodes and compresses a column's values
+     * @param column the column to encode
+     * @return a block of the column's encoded length, then its deflated encoding
+     */
+    public static byte[] encodeColumn(Column<?> column) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(raw);
+        encodeValues(column, data);
+        data.flush();
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(raw.size() / 4 + 16);
+        new DataOutputStream(block).writeInt(raw.size());
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflated = new DeflaterOutputStream(block, deflater)) {
+            raw.writeTo(deflated);
+        }
+        finally {
+            deflater.end();
+        }
+        return block.toByteArray();
+    }
+
+
+    /**
+     * Decodes a column from a block created by encodeColumn
+     * @param name the column name
+     * @param typeName the name of the column's type
+     * @param rowCount the number of values in the column
+     * @param block the block to decode
+     * @return the decoded column
+     */
+    public static Column<?> decodeColumn(String name, String typeName, int rowCount,
+                                         ByteBuffer block) throws IOException {
+        int rawLength = block.getInt();
+        ByteBuffer values = inflate(block, rawLength);
+        switch (typeName) {
+            case "STRING": return decodeStrings(name, rowCount, values);
+            case "INTEGER": {
+                int[] ints = new int[rowCount];
+                values.asIntBuffer().get(ints);
+                return IntColumn.create(name, ints);
+            }
+            case "LONG": {
+                long[] longs = new long[rowCount];
+                values.asLongBuffer().get(longs);
+                return LongColumn.create(name, longs);
+            }
+            case "SHORT": {
+                short[] shorts = new short[rowCount];
+                values.asShortBuffer().get(shorts);
+                return ShortColumn.create(name, shorts);
+            }
+            case "FLOAT": {
+                float[] floats = new float[rowCount];
+                values.asFloatBuffer().get(floats);
+                return FloatColumn.create(name, floats);
+            }
+            case "DOUBLE": {
+                double[] doubles = new double[rowCount];
+                values.asDoubleBuffer().get(doubles);
+                return DoubleColumn.create(name, doubles);
+            }
+            case "BOOLEAN": {
+                BooleanColumn column = BooleanColumn.create(name);
+                for (int i = 0; i < rowCount; i++) {
+                    byte b = values.get();
+                    if (b < 0) column.appendMissing();
+                    else column.append(b == 1);
+                }
+                return column;
+            }
+            case "LOCAL_DATE": {
+                DateColumn column = DateColumn.create(name);
+                for (int i = 0; i < rowCount; i++) column.appendInternal(values.getInt());
+                return column;
+            }
+            case "LOCAL_TIME": {
+                TimeColumn column = TimeColumn.create(name);
+                for (int i = 0; i < rowCount; i++) column.appendInternal(values.getInt());
+                return column;
+            }
+            case "LOCAL_DATE_TIME": {
+                DateTimeColumn column = DateTimeColumn.create(name);
+                for (int i = 0; i < rowCount; i++) column.appendInternal(values.getLong());
+                return column;
+            }
+            case "INSTANT": {
+                InstantColumn column = InstantColumn.create(name);
+                for (int i = 0; i < rowCount; i++) column.appendInternal(values.getLong());
+                return column;
+            }
+            default: return decodeParsed(name, typeName, rowCount, values);
+        }
+    }
+
+
+    private static void encodeValues(Column<?> column, DataOutputStream data)
+            throws IOException {
+        int rows = column.size();
+        switch (column.type().name()) {
+            case "STRING": encodeStrings((StringColumn) column, data); break;
+            case "INTEGER": {
+                IntColumn c = (IntColumn) column;
+                for (int i = 0; i < rows; i++) data.writeInt(c.getInt(i));
+                break;
+            }
+            case "LONG": {
+                LongColumn c = (LongColumn) column;
+                for (int i = 0; i < rows; i++) data.writeLong(c.getLong(i));
+                break;
+            }
+            case "SHORT": {
+                ShortColumn c = (ShortColumn) column;
+                for (int i = 0; i < rows; i++) data.writeShort(c.getShort(i));
+                break;
+            }
+            case "FLOAT": {
+                FloatColumn c = (FloatColumn) column;
+                for (int i = 0; i < rows; i++) data.writeFloat(c.getFloat(i));
+                break;
+            }
+            case "DOUBLE": {
+                DoubleColumn c = (DoubleColumn) column;
+                for (int i = 0; i < rows; i++) data.writeDouble(c.getDouble(i));
+                break;
+            }
+            case "BOOLEAN": {
+                BooleanColumn c = (BooleanColumn) column;
+                for (int i = 0; i < rows; i++) {
+                    Boolean b = c.get(i);
+                    data.writeByte(b == null ? -1 : (b ? 1 : 0));
+                }
+                break;
+            }
+            case "LOCAL_DATE": {
+                DateColumn c = (DateColumn) column;
+                for (int i = 0; i < rows; i++) data.writeInt(c.getIntInternal(i));
+                break;
+            }
+            case "LOCAL_TIME": {
+                TimeColumn c = (TimeColumn) column;
+                for (int i = 0; i < rows; i++) data.writeInt(c.getIntInternal(i));
+                break;
+            }
+            case "LOCAL_DATE_TIME": {
+                DateTimeColumn c = (DateTimeColumn) column;
+                for (int i = 0; i < rows; i++) data.writeLong(c.getLongInternal(i));
+                break;
+            }
+            case "INSTANT": {
+                InstantColumn c = (InstantColumn) column;
+                for (int i = 0; i < rows; i++) data.writeLong(c.getLongInternal(i));
+                break;
+            }
+            default: {
+                for (int i = 0; i < rows; i++) {
+                    writeString(data, column.isMissing(i) ? null : column.getUnformattedString(i));
+                }
+            }
+        }
+    }
+
+
+    // a dictionary of unique values, then a code per row
+    private static void encodeStrings(StringColumn column, DataOutputStream data)
+            throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] codes = new int[column.size()];
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+        DataOutputStream valueData = new DataOutputStream(values);
+        for (int i = 0; i < codes.length; i++) {
+            if (column.isMissing(i)) {
+                codes[i] = -1;
+                continue;
+            }
+            String value = column.get(i);
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(value, code);
+                writeString(valueData, value);
+            }
+            codes[i] = code;
+        }
+        data.writeInt(dictionary.size());
+        values.writeTo(data);
+        for (int code : codes) data.writeInt(code);
+    }
+
+
+    private static Column<?> decodeStrings(String name, int rowCount, ByteBuffer values) {
+        String[] dictionary = new String[values.getInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(values);
+        }
+        StringColumn column = StringColumn.create(name);
+        for (int i = 0; i < rowCount; i++) {
+            int code = values.getInt();
+            if (code < 0) column.appendMissing();
+            else column.append(dictionary[code]);
+        }
+        return column;
+    }
+
+
+    private static Column<?> decodeParsed(String name, String typeName, int rowCount,
+                                          ByteBuffer values) throws IOException {
+        ColumnType type;
+        try {
+            type = ColumnType.valueOf(typeName);
+        }
+        catch (RuntimeException e) {
+            throw new IOException("Unknown column type '" + typeName + "' for column " + name);
+        }
+        Column<?> column = type.create(name);
+        for (int i = 0; i < rowCount; i++) {
+            String value = readString(values);
+            if (value == null) column.appendMissing();
+            else column.appendCell(value);
+        }
+        return column;
+    }
+
+
+    private static String hash(byte[] block) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(block);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    // returns the next 'length' bytes of the buffer as a new buffer, and skips them
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+
+    private static ByteBuffer inflate(ByteBuffer block, int rawLength) throws IOException {
+        ByteBuffer values = ByteBuffer.allocate(rawLength);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block);
+            while (values.hasRemaining() && ! inflater.finished()) {
+                if (inflater.inflate(values) == 0 && inflater.needsInput()) break;
+            }
+            if (values.hasRemaining()) {
+                throw new IOException("Truncated column data");
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Corrupt column data: " + e.getMessage(), e);
+        }
+        finally {
+            inflater.end();
+        }
+        values.flip();
+        return values;
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.store;
+
+import tech.tablesaw.api.Table;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stores tables as CSV text. Column types are inferred again on each read.
+ *
+ * @author Michael Adams
+ * @date 12/8/2022
+ */
+public class CsvTableStore implements TableStore {
+
+    @Override
+    public String getName() { return "csv"; }
+
+    @Override
+    public String getExtension() { return ".csv"; }
+
+
+    @Override
+    public void write(Table table, OutputStream out) throws IOException {
+        table.write().csv(out);
+    }
+
+
+    @Override
+    public Table read(InputStream in, String tableName) throws IOException {
+        return Table.read().usingOptions(CsvReadOptions.builder(in).tableName(tableName));
+    }
+
+}
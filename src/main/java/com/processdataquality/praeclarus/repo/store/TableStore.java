@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.store;
+
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A file format for storing tables in the repo
+ *
+ * @author Michael Adams
+ * @date 12/8/2022
+ */
+public interface TableStore {
+
+    /**
+     * @return the name of this format, as used in the 'pdq.repo.format' property
+     */
+    String getName();
+
+
+    /**
+     * @return the file extension of tables stored in this format, including the dot
+     */
+    String getExtension();
+
+
+    /**
+     * Writes a table in this format
+     * @param table the table to write
+     * @param out the stream to write to
+     * @throws IOException if the table can't be written
+     */
+    void write(Table table, OutputStream out) throws IOException;
+
+
+    /**
+     * Reads a table stored in this format
+     * @param in the stream to read from
+     * @param tableName the name to give the table
+     * @return the table read
+     * @throws IOException if the table can't be read
+     */
+    Table read(InputStream in, String tableName) throws IOException;
+
+
+    /**
+     * Reads a table stored in this format from a buffer, which may be memory mapped.
+     * By default the buffer is read as a stream.
+     * @param buffer the buffer to read from
+     * @param tableName the name to give the table
+     * @return the table read
+     * @throws IOException if the table can't be read
+     */
+    default Table read(ByteBuffer buffer, String tableName) throws IOException {
+        return read(new ByteBufferInputStream(buffer), tableName);
+    }
+
+
+    /**
+     * Writes a table, storing any parts that may be shared with other tables in a
+     * column store. By default the column store is not used.
+     * @param table the table to write
+     * @param out the stream to write to
+     * @param columns the column store
+     * @throws IOException if the table can't be written
+     */
+    default void write(Table table, OutputStream out, ColumnStore columns)
+            throws IOException {
+        write(table, out);
+    }
+
+
+    /**
+     * Reads a table whose shared parts may be held in a column store. By default the
+     * column store is not used.
+     * @param buffer the buffer to read from
+     * @param tableName the name to give the table
+     * @param columns the column store
+     * @return the table read
+     * @throws IOException if the table can't be read
+     */
+    default Table read(ByteBuffer buffer, String tableName, ColumnStore columns)
+            throws IOException {
+        return read(buffer, tableName);
+    }
+
+
+    /**
+     * Reads a table whose shared parts may be held in a column store from a stream,
+     * e.g. of a stored table too large to load as a single object. By default the
+     * column store is not used.
+     * @param in the stream to read from
+     * @param tableName the name to give the table
+     * @param columns the column store
+     * @return the table read
+     * @throws IOException if the table can't be read
+     */
+    default Table read(InputStream in, String tableName, ColumnStore columns)
+            throws IOException {
+        return read(in, tableName);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the available table storage formats, and the one used for new commits, as
+ * set by the 'pdq.repo.format' property. Tables committed in any format can be read.
+ *
+ * @author Michael Adams
+ * @date 12/8/2022
+ */
+@Component
+public class TableStores {
+
+    private static final List<TableStore> STORES = Arrays.asList(
+            new ColumnarTableStore(), new CsvTableStore());
+
+    private static TableStore current = STORES.get(0);
+
+    public TableStores(@Value("${pdq.repo.format:columnar}") String format) {
+        current = get(format);
+    }
+
+
+    /**
+     * @return the format used to write new tables
+     */
+    public static TableStore current() { return current; }
+
+
+    /**
+     * @return all formats, in order of preference
+     */
+    public static List<TableStore> all() { return Collections.unmodifiableList(STORES); }
+
+
+    private static TableStore get(String name) {
+        for (TableStore store : STORES) {
+            if (store.getName().equalsIgnoreCase(name.trim())) {
+                return store;
+            }
+        }
+        throw new IllegalArgumentException("Unknown repo format: " + name);
+    }
+
+}
@@ -19,6 +19,7 @@ package com.processdataquality.praeclarus.security;
 import com.processdataquality.praeclarus.logging.EventLogger;
 import com.vaadin.flow.component.UI;
 import com.vaadin.flow.server.VaadinServletRequest;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -37,7 +38,8 @@ public class SecurityService {
 
     public UserDetails getAuthenticatedUser() {
         SecurityContext context = SecurityContextHolder.getContext();
-        Object principal = context.getAuthentication().getPrincipal();
+        Authentication authentication = context.getAuthentication();
+        Object principal = authentication != null ? authentication.getPrincipal() : null;
         if (principal instanceof UserDetails) {
             return (UserDetails) principal;
         }
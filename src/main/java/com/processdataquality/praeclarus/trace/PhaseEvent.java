@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.trace;
+
+import jdk.jfr.*;
+
+/**
+ * A JFR event recording one phase of a workflow run, such as a node's run, a
+ * pattern's detect or repair stage, or a repo commit
+ *
+ * @author Michael Adams
+ * @date 8/8/2022
+ */
+@Name("com.processdataquality.praeclarus.Phase")
+@Label("PDQ Phase")
+@Category({"PraeclarusPDQ"})
+@Description("A phase of a workflow run")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+    @Label("Category")
+    String category;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Node")
+    String node;
+
+}
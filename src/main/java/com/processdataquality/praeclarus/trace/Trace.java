@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.trace;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Marks the phases of a workflow run. Each phase is emitted as a JFR event, and is
+ * also passed to any active TraceRecorders. Usage:
+ * <pre>
+ *     try (Trace.Span span = Trace.begin("repo", "commit", node.getLabel())) {
+ *         ...
+ *     }
+ * </pre>
+ *
+ * @author Michael Adams
+ * @date 8/8/2022
+ */
+public class Trace {
+
+    private static final Set<TraceRecorder> recorders = new CopyOnWriteArraySet<>();
+
+    private Trace() { }
+
+
+    /**
+     * Begins a phase on the current thread
+     * @param category the kind of phase (e.g. node, pattern, repo, log)
+     * @param phase the phase name
+     * @param node the label of the node the phase belongs to, or null if none
+     * @return a span to be closed when the phase ends
+     */
+    public static Span begin(String category, String phase, String node) {
+        return new Span(category, phase, node);
+    }
+
+
+    public static Span begin(String category, String phase) {
+        return begin(category, phase, null);
+    }
+
+
+    static void addRecorder(TraceRecorder recorder) { recorders.add(recorder); }
+
+    static void removeRecorder(TraceRecorder recorder) { recorders.remove(recorder); }
+
+
+    /**
+     * A single timed phase
+     */
+    public static class Span implements AutoCloseable {
+
+        private final PhaseEvent _event = new PhaseEvent();
+        private final String _category;
+        private final String _phase;
+        private final String _node;
+        private final Thread _thread;
+        private final long _start;
+        private long _end;
+
+        private Span(String category, String phase, String node) {
+            _category = category;
+            _phase = phase;
+            _node = node;
+            _thread = Thread.currentThread();
+            _start = System.nanoTime();
+            _event.begin();
+        }
+
+
+        public String getCategory() { return _category; }
+
+        public String getPhase() { return _phase; }
+
+        public String getNode() { return _node; }
+
+        public Thread getThread() { return _thread; }
+
+        public long getStart() { return _start; }
+
+        public long getEnd() { return _end; }
+
+
+        @Override
+        public void close() {
+            _end = System.nanoTime();
+            _event.end();
+            if (_event.shouldCommit()) {
+                _event.category = _category;
+                _event.phase = _phase;
+                _event.node = _node;
+                _event.commit();
+            }
+            recorders.forEach(r -> r.add(this));
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.trace;
+
+import org.springframework.boot.configurationprocessor.json.JSONArray;
+import org.springframework.boot.configurationprocessor.json.JSONException;
+import org.springframework.boot.configurationprocessor.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the phases of a workflow run while recording, and writes them in the
+ * Chrome trace-event format, viewable in chrome://tracing or Perfetto.
+ *
+ * @author Michael Adams
+ * @date 8/8/2022
+ */
+public class TraceRecorder {
+
+    private final Queue<Trace.Span> _spans = new ConcurrentLinkedQueue<>();
+    private long _origin;
+
+
+    public TraceRecorder() { }
+
+
+    /**
+     * Begins collecting phases, from all threads
+     */
+    public void start() {
+        _spans.clear();
+        _origin = System.nanoTime();
+        Trace.addRecorder(this);
+    }
+
+
+    /**
+     * Stops collecting phases
+     */
+    public void stop() {
+        Trace.removeRecorder(this);
+    }
+
+
+    void add(Trace.Span span) { _spans.add(span); }
+
+
+    /**
+     * @return the collected phases as a Chrome trace-event JSON object, with a
+     * complete ('X') event for each phase and a name for each thread
+     */
+    public JSONObject toChromeTrace() throws JSONException {
+        JSONArray events = new JSONArray();
+        Map<Long, String> threads = new HashMap<>();
+        for (Trace.Span span : _spans) {
+            long tid = span.getThread().getId();
+            threads.putIfAbsent(tid, span.getThread().getName());
+            JSONObject event = new JSONObject();
+            event.put("name", span.getPhase());
+            event.put("cat", span.getCategory());
+            event.put("ph", "X");
+            event.put("ts", micros(span.getStart() - _origin));
+            event.put("dur", micros(span.getEnd() - span.getStart()));
+            event.put("pid", 1);
+            event.put("tid", tid);
+            if (span.getNode() != null) {
+                event.put("args", new JSONObject().put("node", span.getNode()));
+            }
+            events.put(event);
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            JSONObject event = new JSONObject();
+            event.put("name", "thread_name");
+            event.put("ph", "M");
+            event.put("pid", 1);
+            event.put("tid", thread.getKey());
+            event.put("args", new JSONObject().put("name", thread.getValue()));
+            events.put(event);
+        }
+        JSONObject trace = new JSONObject();
+        trace.put("traceEvents", events);
+        trace.put("displayTimeUnit", "ms");
+        return trace;
+    }
+
+
+    /**
+     * Writes the collected phases to a file as Chrome trace-event JSON
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        try {
+            Files.write(file.toPath(), toChromeTrace().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (JSONException e) {
+            throw new IOException("Failed to create trace: " + e.getMessage(), e);
+        }
+    }
+
+
+    private double micros(long nanos) { return nanos / 1000D; }
+
+}
@@ -89,7 +89,7 @@ public class Vertex implements CanvasPrimitive {
     public void setRunState(VertexStateIndicator.State state) {
         _indicator.setState(state);
         if (state == VertexStateIndicator.State.COMPLETED) {
-            _infoText = getNode().getOutput().rowCount() + " rows";
+            _infoText = getNode().getOutputRowCount() + " rows";
         }
         else _infoText = null;
     }
@@ -24,6 +24,7 @@ import com.processdataquality.praeclarus.ui.component.WorkflowPanel;
 import com.processdataquality.praeclarus.ui.component.announce.Announcement;
 import com.processdataquality.praeclarus.ui.component.dialog.VertexLabelDialog;
 import com.processdataquality.praeclarus.ui.repo.WorkflowStore;
+import com.processdataquality.praeclarus.ui.util.UiUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.configurationprocessor.json.JSONArray;
@@ -106,7 +107,13 @@ public class Workflow implements CanvasEventListener, NodeStateChangeListener {
             Port target = getPortAt(x, y);
             if (source != null && target != null) {
                 if (source.isOutput() && target.isInput()) {
-                    addConnector(new Connector(source, target));
+                    if (_graph.canConnect(source.getVertex().getNode(),
+                            target.getVertex().getNode())) {
+                        addConnector(new Connector(source, target));
+                    }
+                    else {
+                        Announcement.show("Connection would create a cycle");
+                    }
                 }
                 else {
                     Announcement.show("Output port cannot be the target of a connection");
@@ -152,7 +159,12 @@ public class Workflow implements CanvasEventListener, NodeStateChangeListener {
 
 
     @Override
-    public void nodeStateChanged(Node node) throws Exception {
+    public void nodeStateChanged(Node node) {
+        UiUtil.access(_container, () -> showNodeState(node));  // may be a runner thread
+    }
+
+
+    private void showNodeState(Node node) {
         switch (node.getState()) {
             case UNSTARTED:
                 changeStateIndicator(node, VertexStateIndicator.State.DORMANT);
@@ -18,19 +18,16 @@ package com.processdataquality.praeclarus.ui.canvas;
 
 import com.processdataquality.praeclarus.logging.EventLogger;
 import com.processdataquality.praeclarus.graph.Graph;
+import com.processdataquality.praeclarus.graph.GraphLoader;
 import com.processdataquality.praeclarus.node.Node;
 import com.processdataquality.praeclarus.node.NodeLoader;
-import com.processdataquality.praeclarus.repo.graph.GraphStore;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.configurationprocessor.json.JSONArray;
 import org.springframework.boot.configurationprocessor.json.JSONException;
 import org.springframework.boot.configurationprocessor.json.JSONObject;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -49,7 +46,7 @@ public class WorkflowLoader {
     public void load(String jsonStr) throws JSONException, IOException {
         EventLogger.ignoreEvents();                  // suppress events while loading
         JSONObject json = new JSONObject(jsonStr);
-        Graph graph = loadGraph(json, jsonStr);
+        Graph graph = new GraphLoader().loadGraph(json, jsonStr);
         _workflow.clear(graph);
         _workflow.setLoading(true);
         Map<String, Vertex> vertices = loadVertices(json.getJSONArray("vertices"));
@@ -60,39 +57,6 @@ public class WorkflowLoader {
     }
 
 
-    private Graph loadGraph(JSONObject json, String content) throws JSONException {
-
-        // check if this one is persisted
-        String id = json.getString("id");
-        Optional<Graph> optional = GraphStore.get(id);
-        if (optional.isPresent()) {
-            Graph graph = optional.get();
-            graph.refreshOptions();
-            return graph;
-        }
-
-        // unknown to this deployment
-        Graph.Builder builder = new Graph.Builder(json.getString("creator"))
-                .id(id)
-                .name(json.getString("name"))
-                .owner(json.getString("owner"))
-                .creationTime(strToDateTime(json.getString("creationTime")))
-                .userContent(content);
-
-        String description = json.optString("description");
-        if (StringUtils.isNotEmpty(description)) {
-            builder.description(description);
-        }
-
-        String lastSaved = json.optString("lastSavedTime");
-        if (StringUtils.isNotEmpty(lastSaved)) {
-            builder.lastSavedTime(strToDateTime(lastSaved));
-        }
-        
-        return builder.build();
-    }
-
-
     private Map<String, Vertex> loadVertices(JSONArray array)
             throws JSONException, IOException {
         Map<String, Vertex> vertexMap = new HashMap<>();
@@ -141,9 +105,4 @@ public class WorkflowLoader {
         }
     }
 
-
-    private LocalDateTime strToDateTime(String s) {
-        return LocalDateTime.parse(s, EventLogger.dtFormatter);
-    }
-
 }
@@ -19,6 +19,7 @@ package com.processdataquality.praeclarus.ui.component;
 import com.processdataquality.praeclarus.logging.EventLogger;
 import com.processdataquality.praeclarus.logging.LogEventListener;
 import com.processdataquality.praeclarus.logging.entity.*;
+import com.processdataquality.praeclarus.ui.util.UiUtil;
 import com.vaadin.flow.component.dependency.CssImport;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.textfield.TextArea;
@@ -48,7 +49,8 @@ public class EventsPanel extends Div implements LogEventListener {
 
     @Override
     public void eventLogged(AbstractLogEvent event) {
-        ta.setValue(getEventLine(event) + "\n" + ta.getValue());
+        String line = getEventLine(event);
+        UiUtil.access(ta, () -> ta.setValue(line + "\n" + ta.getValue()));
     }
 
 
@@ -89,7 +91,28 @@ public class EventsPanel extends Div implements LogEventListener {
 
 
     private String formatNodeExecutionEvent(NodeExecutionEvent event) {
-        return formatNodeEvent(event) + ", " + event.getNote();
+        String line = formatNodeEvent(event) + ", " + event.getNote();
+        if (event.hasResourceUsage()) {
+            line += formatResourceUsage(event);
+        }
+        return line;
+    }
+
+
+    private String formatResourceUsage(NodeExecutionEvent event) {
+        return String.format(" [rows in %d, out %d; output %s; allocated %s; cpu %s; gc %d ms]",
+                event.getRowsIn(), event.getRowsOut(), formatBytes(event.getOutputBytes()),
+                formatBytes(event.getAllocatedBytes()),
+                event.getCpuMillis() > -1 ? event.getCpuMillis() + " ms" : "n/a",
+                event.getGcMillis());
+    }
+
+
+    private String formatBytes(long bytes) {
+        if (bytes < 0) return "n/a";
+        if (bytes < 1024) return bytes + " B";
+        int exp = (int) (Math.log(bytes) / Math.log(1024));
+        return String.format("%.1f %sB", bytes / Math.pow(1024, exp), "KMGTPE".charAt(exp - 1));
     }
 
 
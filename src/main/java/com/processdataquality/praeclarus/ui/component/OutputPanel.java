@@ -19,9 +19,11 @@ package com.processdataquality.praeclarus.ui.component;
 import com.processdataquality.praeclarus.graph.GraphRunner;
 import com.processdataquality.praeclarus.graph.GraphRunnerStateChangeListener;
 import com.processdataquality.praeclarus.node.*;
-import com.processdataquality.praeclarus.repo.Differ;
 import com.processdataquality.praeclarus.repo.LogEntry;
 import com.processdataquality.praeclarus.repo.Repo;
+import com.processdataquality.praeclarus.repo.diff.RowChange;
+import com.processdataquality.praeclarus.repo.diff.TableDiff;
+import com.processdataquality.praeclarus.repo.diff.TableDiffer;
 import com.processdataquality.praeclarus.ui.MainView;
 import com.processdataquality.praeclarus.ui.canvas.CanvasPrimitive;
 import com.processdataquality.praeclarus.ui.canvas.CanvasSelectionListener;
@@ -97,7 +99,7 @@ public class OutputPanel extends VerticalLayout
     @Override
     public void runnerStateChanged(GraphRunner.RunnerState newState) {
         if (newState == GraphRunner.RunnerState.IDLE) {
-            enableButtons();
+            UiUtil.access(this, this::enableButtons);
         }
     }
 
@@ -215,7 +217,15 @@ public class OutputPanel extends VerticalLayout
     private void showOutput() {
         if (selectedVertex != null) {
             Node node = selectedVertex.getNode();
-            showTable(node.getOutput(), node.getLabel());
+            if (node.isStreamed()) {
+                page.add(new Html("<p>The selected node streamed its data directly " +
+                        "to its output, so there is no stored output to show</p>"));
+            }
+            else if (node instanceof ReaderNode && ((ReaderNode) node).isPreview()) {
+                showTable(node.getOutput(), node.getLabel() +
+                        " (preview - the rest is still loading)");
+            }
+            else showTable(node.getOutput(), node.getLabel());
         }
         else {
             page.add(new Html("<p>Select a completed node to show its output</p>"));
@@ -271,15 +281,10 @@ public class OutputPanel extends VerticalLayout
                     setTitle("Show Dataset Differences");
                     Node prevNode = getPreviousDatasetNode(node);
                     if (prevNode != null) {
-                        String dataset = getDatasetFromRepo(node);
-                        String prevDataset = getDatasetFromRepo(prevNode);
-                        List<Table> diffList = new Differ().diff(dataset, prevDataset);
-                        VerticalLayout outerLayout = new VerticalLayout();
-                        VerticalLayout prevLayout = createDiffTableLayout(diffList.get(0), prevNode.getLabel());
-                        VerticalLayout currLayout = createDiffTableLayout(diffList.get(1), node.getLabel());
-                        outerLayout.add(prevLayout, currLayout);
-                        outerLayout.setFlexGrow(1, prevLayout, currLayout);
-                        page.add(outerLayout);
+                        Table dataset = getDatasetFromRepo(node);
+                        Table prevDataset = getDatasetFromRepo(prevNode);
+                        TableDiff diff = new TableDiffer().diff(prevDataset, dataset);
+                        page.add(createDiffLayout(diff, prevNode.getLabel(), node.getLabel()));
                     }
                     else page.add(new Html("<p>The selected node has no previous nodes to compare to</p>"));
                 }
@@ -314,10 +319,12 @@ public class OutputPanel extends VerticalLayout
     }
 
 
-    private String getDatasetFromRepo(Node node) throws IOException {
+    // served from the repo's table cache after the first load
+    private Table getDatasetFromRepo(Node node) throws IOException {
         String tableName = node.getTableID();
         if (tableName != null) {
-            return Repo.fetchContent(node.getCommitID(), tableName);
+            Table table = Repo.getTable(node.getCommitID(), tableName);
+            if (table != null) return table;
         }
         throw new IOException("The selected node does not contain a dataset object");
     }
@@ -333,14 +340,45 @@ public class OutputPanel extends VerticalLayout
     }
 
 
-    private VerticalLayout createDiffTableLayout(Table table, String subTitle) {
+    // changes are fetched a page at a time as the grid scrolls
+    private VerticalLayout createDiffLayout(TableDiff diff, String prevLabel, String label) {
         VerticalLayout vl = new VerticalLayout();
-        Grid<Row> grid = tableToGrid(table);
-        vl.add(new H5(subTitle), new VerticalScrollLayout(grid));
+        vl.add(new H5(prevLabel + " \u2192 " + label + ": " + diff.getSummary() +
+                " (rows matched by " + diff.getKeyDescription() + ")"));
+        if (diff.getChangeCount() > 0) {
+            Grid<RowChange> grid = new Grid<>();
+            grid.setColumnReorderingAllowed(true);
+            grid.addColumn(change -> change.getKind().name().toLowerCase())
+                    .setHeader(new Html("<b>change</b>")).setAutoWidth(true);
+            grid.addColumn(RowChange::getKey)
+                    .setHeader(new Html("<b>key</b>")).setAutoWidth(true);
+            for (int i = 0; i < diff.getColumns().size(); i++) {
+                int column = i;
+                grid.addColumn(change -> describeCell(diff, change, column))
+                        .setHeader(new Html("<b>" + diff.getColumns().get(i) + "</b>"))
+                        .setAutoWidth(true).setResizable(true);
+            }
+            grid.setItems(query -> diff.getChanges(query.getOffset(),
+                    query.getLimit()).stream(), query -> diff.getChangeCount());
+            UiUtil.removeTopMargin(grid);
+            vl.add(new VerticalScrollLayout(grid));
+        }
         return vl;
     }
 
 
+    private String describeCell(TableDiff diff, RowChange change, int column) {
+        switch (change.getKind()) {
+            case ADDED: return diff.getCurrentValue(change, column);
+            case REMOVED: return diff.getPreviousValue(change, column);
+            default: return change.isChanged(column) ?
+                    diff.getPreviousValue(change, column) + " \u2192 " +
+                            diff.getCurrentValue(change, column) :
+                    diff.getCurrentValue(change, column);
+        }
+    }
+
+
     private Grid<Row> tableToGrid(Table table) {
         Grid<Row> grid = UiUtil.tableToGrid(table);
         UiUtil.removeTopMargin(grid);
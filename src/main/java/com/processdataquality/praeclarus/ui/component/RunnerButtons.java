@@ -16,7 +16,6 @@
 
 package com.processdataquality.praeclarus.ui.component;
 
-import com.processdataquality.praeclarus.exception.NodeRunnerException;
 import com.processdataquality.praeclarus.graph.GraphRunner;
 import com.processdataquality.praeclarus.node.Node;
 import com.processdataquality.praeclarus.ui.canvas.CanvasPrimitive;
@@ -24,6 +23,7 @@ import com.processdataquality.praeclarus.ui.canvas.CanvasSelectionListener;
 import com.processdataquality.praeclarus.ui.canvas.Vertex;
 import com.processdataquality.praeclarus.ui.component.announce.Announcement;
 import com.processdataquality.praeclarus.ui.util.UiUtil;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.Label;
@@ -32,6 +32,8 @@ import com.vaadin.flow.component.icon.VaadinIcon;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CancellationException;
+
 /**
  * @author Michael Adams
  * @date 14/5/21
@@ -76,6 +78,13 @@ public class RunnerButtons extends Div implements CanvasSelectionListener {
                 _stopButton.setEnabled(true);
                 break;
             }
+            case STOPPING: {
+                _runButton.setEnabled(false);
+                _stepButton.setEnabled(false);
+                _backButton.setEnabled(false);
+                _stopButton.setEnabled(false);
+                break;
+            }
             case IDLE: {
                 _runButton.setEnabled(_selectedNode != null);
                 _stepButton.setEnabled(canRunSelectedNode());
@@ -137,23 +146,33 @@ public class RunnerButtons extends Div implements CanvasSelectionListener {
     }
 
 
+    // runs the action in the background; the outcome is pushed back to this UI
     private void action(GraphRunner.RunnerAction runnerAction) {
-        try {
-            _runner.action(runnerAction, _selectedNode);
-            Announcement.success(_selectedNode.getLabel() + " completed successfully");
+        Node node = _selectedNode;
+        UI ui = UI.getCurrent();
+        _runner.actionAsync(runnerAction, node).whenComplete((v, t) ->
+                UiUtil.access(ui, () -> actionCompleted(runnerAction, node, t)));
+    }
+
+
+    private void actionCompleted(GraphRunner.RunnerAction runnerAction, Node node,
+                                 Throwable t) {
+        if (runnerAction == GraphRunner.RunnerAction.STOP) {
+            Announcement.highlight("Workflow stopped");
         }
-        catch (NodeRunnerException e) {
-            try {
-                _selectedNode.reset();
-            }
-            catch (Exception ex) {
-                // unlikely this will happen
-            }
+        else if (t == null) {
+            Announcement.success(node.getLabel() + " completed successfully");
+        }
+        else if (t instanceof CancellationException) {
+            Announcement.highlight(node.getLabel() + " run stopped");
+        }
+        else {
             _runner.reset();
-            String msg = "Error in node '" + _selectedNode.getLabel()  + "': " +
-                    e.getMessage() + "; Caused by: " + e.getCause().getMessage();
+            Throwable cause = t.getCause() != null ? t.getCause() : t;
+            String msg = "Error in node '" + node.getLabel()  + "': " +
+                    t.getMessage() + "; Caused by: " + cause.getMessage();
             Announcement.error(msg);
-            LOG.error(msg, e);
+            LOG.error(msg, t);
         }
     }
 
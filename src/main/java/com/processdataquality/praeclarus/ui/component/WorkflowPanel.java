@@ -109,25 +109,32 @@ public class WorkflowPanel extends VerticalLayout
 
     @Override
     public void pluginUICloseEvent(ButtonAction buttonAction, Node node) {
-        try {
-            _runner.action(GraphRunner.RunnerAction.RESUME, node);  // button action doesn't matter
-        }
-        catch (NodeRunnerException e) {
-            Announcement.error(e.getMessage());
-            LOG.error("Error attempting to continue after closing plugin UI", e);
-        }
+        // button action doesn't matter
+        _runner.actionAsync(GraphRunner.RunnerAction.RESUME, node).whenComplete((v, t) -> {
+            if (t instanceof NodeRunnerException) {
+                UiUtil.access(this, () -> Announcement.error(t.getMessage()));
+                LOG.error("Error attempting to continue after closing plugin UI", t);
+            }
+        });
     }
     
 
     @Override
     public void runnerStateChanged(GraphRunner.RunnerState state) {
-        _runnerButtons.setState(state);
-        enableButtons(state, _workflow.getSelectedVertex());
+        UiUtil.access(this, () -> {
+            _runnerButtons.setState(state);
+            enableButtons(state, _workflow.getSelectedVertex());
+        });
     }
 
 
     @Override
     public void runnerEvent(GraphRunnerEvent event) {
+        UiUtil.access(this, () -> showRunnerEvent(event));
+    }
+
+
+    private void showRunnerEvent(GraphRunnerEvent event) {
         if (event.getEventType() == EventType.NODE_PAUSED) {
             Node node = event.getNode();
 
@@ -18,6 +18,7 @@ package com.processdataquality.praeclarus.ui.parameter.editor;
 
 import com.processdataquality.praeclarus.option.HasOptions;
 import com.processdataquality.praeclarus.option.Option;
+import com.processdataquality.praeclarus.ui.util.UiUtil;
 import com.processdataquality.praeclarus.writer.AbstractDataWriter;
 import com.vaadin.flow.component.ClientCallable;
 import com.vaadin.flow.component.UI;
@@ -51,7 +52,8 @@ public class FileSaveEditor extends AbstractFileEditor {
     @ClientCallable
     private void setSaveFileName(String fileName) {
         setValue(fileName);
-        ((AbstractDataWriter) getPlugin()).setDestination(new LogWriter(this.getId().get()));
+        ((AbstractDataWriter) getPlugin()).setDestination(
+                new LogWriter(this.getId().get(), UI.getCurrent()));
     }
 
 
@@ -69,10 +71,12 @@ public class FileSaveEditor extends AbstractFileEditor {
     static class LogWriter extends StringWriter {
 
         String _key;
+        UI _ui;             // writers run on a background thread, so keep the UI
 
-        LogWriter(String key) {
+        LogWriter(String key, UI ui) {
             super();
             _key = key;
+            _ui = ui;
         }
 
 
@@ -80,10 +84,9 @@ public class FileSaveEditor extends AbstractFileEditor {
         @Override
         public void flush() {
             super.flush();
-
-            UI.getCurrent().getPage().executeJs("writeFile" + "($0, $1)",
-                    _key, this.toString());
-
+            String content = this.toString();
+            UiUtil.access(_ui, () -> _ui.getPage().executeJs("writeFile" + "($0, $1)",
+                    _key, content));
         }
     }
 
@@ -22,6 +22,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * @author Michael Adams
@@ -41,6 +42,10 @@ public class WorkflowStore {
         return save(new StoredWorkflow(id, owner, shared, json));
     }
 
+    public static Optional<StoredWorkflow> get(String id) {
+        return repository.findById(id);
+    }
+
     public static List<StoredWorkflow> findall() {
         List<StoredWorkflow> list = new ArrayList<>();
         repository.findAll().forEach(list::add);
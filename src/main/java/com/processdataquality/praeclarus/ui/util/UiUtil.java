@@ -21,18 +21,22 @@ import com.vaadin.flow.component.ClickEvent;
 import com.vaadin.flow.component.Component;
 import com.vaadin.flow.component.ComponentEventListener;
 import com.vaadin.flow.component.Html;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.html.Image;
 import com.vaadin.flow.component.icon.Icon;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.server.VaadinSession;
 import tech.tablesaw.api.ColumnType;
 import tech.tablesaw.api.Row;
 import tech.tablesaw.api.Table;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * @author Michael Adams
@@ -102,6 +106,35 @@ public class UiUtil {
 
 
 
+    /**
+     * Runs a command against a UI, locking its session if the current thread doesn't
+     * already hold the lock (e.g. when called back from a node running on a
+     * background thread)
+     * @param c a component attached to the UI to update
+     * @param command the UI update to run
+     */
+    public static void access(Component c, Command command) {
+        Optional<UI> ui = c.getUI();
+        if (ui.isPresent()) {
+            access(ui.get(), command);
+        }
+        else {
+            command.execute();
+        }
+    }
+
+
+    public static void access(UI ui, Command command) {
+        VaadinSession session = ui.getSession();
+        if (session == null || session.hasLock()) {
+            command.execute();
+        }
+        else {
+            ui.access(command);
+        }
+    }
+
+
     public static Grid<Row> tableToGrid(Table table) {
 //        if (table.rowCount() == 0) {
 //            return emptyTableToGrid(table);
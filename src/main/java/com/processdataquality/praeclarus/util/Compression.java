@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.util;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression codecs that readers and writers handle transparently. A codec is
+ * recognised on read by its magic bytes, and on write is chosen by name or from the
+ * destination's file extension. All streams are wrapped with large buffers.
+ *
+ * @author Michael Adams
+ * @date 26/8/2022
+ */
+public enum Compression {
+
+    NONE(new int[0]),
+    GZIP(new int[] {0x1f, 0x8b}, ".gz", ".gzip"),
+    ZSTD(new int[] {0x28, 0xb5, 0x2f, 0xfd}, ".zst", ".zstd"),
+    BZIP2(new int[] {'B', 'Z', 'h'}, ".bz2"),
+    XZ(new int[] {0xfd, '7', 'z', 'X', 'Z', 0x00}, ".xz");
+
+    public static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAGIC_LENGTH = 6;              // longest magic number
+
+    private final int[] _magic;
+    private final String[] _extensions;
+
+    Compression(int[] magic, String... extensions) {
+        _magic = magic;
+        _extensions = extensions;
+    }
+
+
+    /**
+     * Wraps a stream in a buffer and, if the stream's first bytes match a codec's
+     * magic number, in a decompressor for that codec
+     * @param in the raw stream
+     * @return a buffered stream of the decompressed content
+     * @throws IOException if the stream can't be read
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        return detect(buffered).wrap(buffered);
+    }
+
+
+    /**
+     * Peeks at the first bytes of a stream to detect its codec. The stream's position
+     * is left unchanged.
+     * @param in a stream that supports mark and reset
+     * @return the matching codec, or NONE if there's no match
+     * @throws IOException if the stream can't be read
+     */
+    public static Compression detect(InputStream in) throws IOException {
+        in.mark(MAGIC_LENGTH);
+        int[] head = new int[MAGIC_LENGTH];
+        int length = 0;
+        int b;
+        while (length < MAGIC_LENGTH && (b = in.read()) != -1) {
+            head[length++] = b;
+        }
+        in.reset();
+        for (Compression codec : values()) {
+            if (codec.matches(head, length)) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+
+    /**
+     * Detects the codec of a file from its first bytes
+     * @param file the file to check
+     * @return the file's codec, or NONE if it isn't compressed
+     * @throws IOException if the file can't be read
+     */
+    public static Compression detect(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file),
+                MAGIC_LENGTH)) {
+            return detect(in);
+        }
+    }
+
+
+    /**
+     * @param fileName a file name
+     * @return the codec matching the name's extension, or NONE if there's no match
+     */
+    public static Compression fromFileName(String fileName) {
+        if (fileName != null) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            for (Compression codec : values()) {
+                for (String extension : codec._extensions) {
+                    if (name.endsWith(extension)) {
+                        return codec;
+                    }
+                }
+            }
+        }
+        return NONE;
+    }
+
+
+    /**
+     * Gets a codec by name. 'AUTO' (or an empty name) selects the codec matching the
+     * extension of the file name given.
+     * @param name the codec's name, or AUTO
+     * @param fileName the destination's file name, used for AUTO (may be null)
+     * @return the codec
+     * @throws IllegalArgumentException if the name isn't a known codec
+     */
+    public static Compression of(String name, String fileName) {
+        if (name == null || name.isEmpty() || name.equalsIgnoreCase("AUTO")) {
+            return fromFileName(fileName);
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown compression '" + name +
+                    "' (use AUTO, NONE, GZIP, ZSTD, BZIP2 or XZ)");
+        }
+    }
+
+
+    /**
+     * Wraps a stream in a decompressor for this codec
+     * @param in a buffered, compressed stream
+     * @return the decompressed stream
+     * @throws IOException if the stream's header can't be read
+     */
+    public InputStream wrap(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP: return new GZIPInputStream(in, BUFFER_SIZE);
+            case ZSTD: return new ZstdCompressorInputStream(in);
+            case BZIP2: return new BZip2CompressorInputStream(in, true);
+            case XZ: return new XZCompressorInputStream(in, true);
+            default: return in;
+        }
+    }
+
+
+    /**
+     * Wraps a stream in a buffered compressor for this codec. Closing the returned
+     * stream finishes the compressed data and closes the wrapped stream.
+     * @param out the raw stream
+     * @return a buffered stream that compresses its content into the raw stream
+     * @throws IOException if the codec's header can't be written
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP: return new BufferedOutputStream(
+                    new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+            case ZSTD: return new BufferedOutputStream(
+                    new ZstdCompressorOutputStream(out), BUFFER_SIZE);
+            case BZIP2: return new BufferedOutputStream(
+                    new BZip2CompressorOutputStream(out), BUFFER_SIZE);
+            case XZ: return new BufferedOutputStream(
+                    new XZCompressorOutputStream(out), BUFFER_SIZE);
+            default: return new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+    }
+
+
+    private boolean matches(int[] head, int length) {
+        if (_magic.length == 0 || length < _magic.length) {
+            return false;
+        }
+        for (int i = 0; i < _magic.length; i++) {
+            if (head[i] != _magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
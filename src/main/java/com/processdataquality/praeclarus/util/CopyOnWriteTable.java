@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.util;
+
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+/**
+ * Creates lightweight views of tables for nodes that share an upstream output. A
+ * view is a new table holding references to the source table's columns, so no data
+ * is copied. A plugin that replaces a column in a view (e.g. via replaceColumn)
+ * affects only that view; a plugin that needs to change a column's values in place
+ * first gets a private copy of the column via writableColumn().
+ *
+ * @author Michael Adams
+ * @date 10/8/2022
+ */
+public class CopyOnWriteTable {
+
+    private CopyOnWriteTable() { }
+
+
+    /**
+     * @param table the table to view
+     * @return a new table with the same name, sharing the table's columns
+     */
+    public static Table view(Table table) {
+        return Table.create(table.name(), table.columns());
+    }
+
+
+    /**
+     * Replaces a column in a view with a copy of itself, so that it may be changed in
+     * place without affecting any other table that shares the original column
+     * @param view the view containing the column
+     * @param columnName the name of the column
+     * @return the copied column, now part of the view
+     */
+    public static Column<?> writableColumn(Table view, String columnName) {
+        Column<?> copy = view.column(columnName).copy();
+        view.replaceColumn(columnName, copy);
+        return copy;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.util;
+
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+/**
+ * Estimates the heap space occupied by a table's data
+ *
+ * @author Michael Adams
+ * @date 4/8/2022
+ */
+public class TableSize {
+
+    private static final int STRING_OVERHEAD = 40;     // object headers, hash, array
+    private static final int COLUMN_OVERHEAD = 64;
+
+
+    private TableSize() { }
+
+
+    /**
+     * @param table the table to estimate
+     * @return the estimated size of the table's data in bytes, or zero if the table
+     * is null
+     */
+    public static long estimateBytes(Table table) {
+        if (table == null) return 0;
+        long bytes = 0;
+        for (Column<?> column : table.columns()) {
+            bytes += estimateBytes(column);
+        }
+        return bytes;
+    }
+
+
+    /**
+     * @param column the column to estimate
+     * @return the estimated size of the column's data in bytes
+     */
+    public static long estimateBytes(Column<?> column) {
+        long bytes = COLUMN_OVERHEAD + (long) column.size() * column.type().byteSize();
+
+        // string columns store row indexes into a dictionary of unique values
+        if (column instanceof StringColumn) {
+            for (String value : ((StringColumn) column).asSet()) {
+                bytes += STRING_OVERHEAD + (value != null ? 2L * value.length() : 0);
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.util;
+
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A bounded stream of table batches passed from a producer (a streaming reader) to a
+ * consumer (a streaming writer) on another thread. The producer blocks when the
+ * stream is full, so at most 'capacity' batches are held in memory at once.
+ *
+ * @author Michael Adams
+ * @date 2/8/2022
+ */
+public class TableStream {
+
+    private static final Table END = Table.create("END");    // end of stream marker
+
+    private final BlockingQueue<Table> _queue;
+    private volatile Throwable _failure;             // set if the producer fails
+    private volatile boolean _abandoned;             // set if the consumer stops early
+    private boolean _ended;
+    private long _rowCount;
+
+
+    public TableStream(int capacity) {
+        _queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+
+    /**
+     * Adds a batch to the stream, waiting if the stream is full
+     * @param batch the batch to add
+     * @throws InterruptedException if interrupted while waiting
+     * @throws CancellationException if the consumer has abandoned the stream
+     */
+    public void put(Table batch) throws InterruptedException {
+        if (_abandoned) {
+            throw new CancellationException("Stream consumer has stopped");
+        }
+        _queue.put(batch);
+    }
+
+
+    /**
+     * Marks the end of the stream
+     */
+    public void close() throws InterruptedException {
+        if (! _abandoned) {
+            _queue.put(END);
+        }
+    }
+
+
+    /**
+     * Ends the stream with a producer failure, which is rethrown to the consumer
+     * @param t the cause of the failure
+     */
+    public void fail(Throwable t) {
+        _failure = t;
+        _queue.clear();
+        _queue.offer(END);
+    }
+
+
+    /**
+     * Stops consuming the stream, releasing a producer waiting to add a batch
+     */
+    public void abandon() {
+        _abandoned = true;
+        _queue.clear();
+    }
+
+
+    /**
+     * Takes the next batch from the stream, waiting until one is available
+     * @return the next batch, or null at the end of the stream
+     * @throws IOException if the producer failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Table next() throws IOException, InterruptedException {
+        if (_ended) return null;
+        Table batch = _queue.take();
+        if (batch == END) {
+            _ended = true;
+            if (_failure != null) {
+                if (_failure instanceof IOException) throw (IOException) _failure;
+                throw new IOException(_failure.getMessage(), _failure);
+            }
+            return null;
+        }
+        _rowCount += batch.rowCount();
+        return batch;
+    }
+
+
+    /**
+     * @return the number of rows taken from the stream so far
+     */
+    public long getRowCount() { return _rowCount; }
+
+}
@@ -16,8 +16,10 @@
 
 package com.processdataquality.praeclarus.writer;
 
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
 import com.processdataquality.praeclarus.option.FileOption;
 import com.processdataquality.praeclarus.plugin.AbstractPlugin;
+import com.processdataquality.praeclarus.util.Compression;
 import com.processdataquality.praeclarus.util.DataCollection;
 import org.apache.commons.io.output.WriterOutputStream;
 import tech.tablesaw.api.Table;
@@ -27,6 +29,7 @@ import tech.tablesaw.io.WriteOptions;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 
@@ -36,10 +39,13 @@ import java.nio.charset.Charset;
  */
 public abstract class AbstractDataWriter extends AbstractPlugin implements DataWriter {
 
+    protected static final String OUTPUT_COMPRESSION = "Output Compression";
+
     protected Destination _destination;
 
     protected AbstractDataWriter() {
         getOptions().addDefault(new FileOption("Destination", ""));
+        getOptions().addDefault(OUTPUT_COMPRESSION, "AUTO");  // or NONE, GZIP, ZSTD, BZIP2, XZ
     }
 
     // each sub-class will have unique read options for data format etc.
@@ -48,7 +54,20 @@ public abstract class AbstractDataWriter extends AbstractPlugin implements DataW
 
     @Override
     public void write(Table table, DataCollection auxData) throws IOException {
-        table.write().usingOptions(getWriteOptions());
+        Destination destination = getDestination();
+        if (getOutputCompression() == Compression.NONE) {
+            table.write().usingOptions(getWriteOptions());
+            return;
+        }
+
+        // write through a compressed stream, closed here to finish the compressed data
+        try (OutputStream out = getDestinationAsOutputStream()) {
+            setDestination(out);
+            table.write().usingOptions(getWriteOptions());
+        }
+        finally {
+            setDestination(destination);
+        }
     }
 
 
@@ -63,20 +82,71 @@ public abstract class AbstractDataWriter extends AbstractPlugin implements DataW
     }
 
 
+    /**
+     * Gets a buffered stream to the destination, compressed if the 'Output Compression'
+     * option (or for AUTO, the destination's file extension) calls for it. The stream
+     * must be closed to complete any compressed output.
+     * @return a stream to the destination
+     * @throws IOException if the destination isn't set or can't be written
+     */
     public OutputStream getDestinationAsOutputStream() throws IOException {
         Destination destination = getDestination();
+        Compression compression = getOutputCompression();
         if (destination != null) {
             if (destination.stream() != null) {
-                return destination.stream();
+                return compression.wrap(destination.stream());
             }
             if (destination.writer() != null) {
-                return new WriterOutputStream(destination.writer(), Charset.defaultCharset());
+                checkUncompressed(compression);
+                return new WriterOutputStream(destination.writer(), Charset.defaultCharset(),
+                        Compression.BUFFER_SIZE, false);
             }
         }
         throw new IOException("Unable to get an OutputStream from Destination");
     }
 
 
+    public Writer getDestinationAsWriter() throws IOException {
+        Destination destination = getDestination();
+        Compression compression = getOutputCompression();
+        if (destination != null) {
+            if (destination.writer() != null) {
+                checkUncompressed(compression);
+                return destination.writer();
+            }
+            if (destination.stream() != null) {
+                return new OutputStreamWriter(compression.wrap(destination.stream()),
+                        Charset.defaultCharset());
+            }
+        }
+        throw new IOException("Unable to get a Writer from Destination");
+    }
+
+
+    /**
+     * @return the codec named by the 'Output Compression' option, or for AUTO the codec
+     * matching the extension of the 'Destination' file name
+     */
+    protected Compression getOutputCompression() {
+        try {
+            return Compression.of(getOptions().get(OUTPUT_COMPRESSION).asString(),
+                    getOptions().get("Destination").asString());
+        }
+        catch (IllegalArgumentException e) {
+            throw new InvalidOptionValueException(e.getMessage());
+        }
+    }
+
+
+    // compressed output is binary, so can't be written to a character destination
+    private void checkUncompressed(Compression compression) {
+        if (compression != Compression.NONE) {
+            throw new InvalidOptionValueException("Cannot write " + compression +
+                    " compressed output to a text destination");
+        }
+    }
+
+
     public void setDestination(File file) throws IOException {
         setDestination(new Destination(file));
     }
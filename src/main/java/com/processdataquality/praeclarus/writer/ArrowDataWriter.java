@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.writer;
+
+import com.processdataquality.praeclarus.annotations.Plugin;
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.processdataquality.praeclarus.util.DataCollection;
+import com.processdataquality.praeclarus.util.TableStream;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import tech.tablesaw.api.*;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.io.WriteOptions;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes a table to an Arrow IPC file (the random access format), with a column per
+ * table column in the nearest Arrow type. Record batches are compressed with LZ4 or
+ * ZSTD unless the 'Compression' option is NONE. Date-times are written as microsecond
+ * timestamps without a time zone.
+ *
+ * @author Michael Adams
+ * @date 25/8/2022
+ */
+@Plugin(
+        name = "Arrow Writer",
+        author = "Michael Adams",
+        version = "1.0",
+        synopsis = "Writes the log output to an Arrow IPC (Feather) file.",
+        fileDescriptors = "Arrow Files;application/vnd.apache.arrow.file;.arrow"
+)
+public class ArrowDataWriter extends AbstractDataWriter implements StreamingDataWriter {
+
+    private static final int MAX_BATCH_ROWS = 65536;
+
+    public ArrowDataWriter() {
+        super();
+        getOptions().addDefault("Compression", "LZ4");          // or ZSTD, NONE
+    }
+
+
+    @Override
+    public void write(Table table, DataCollection auxData) throws IOException {
+        try (BufferAllocator allocator = new RootAllocator();
+             VectorSchemaRoot root = VectorSchemaRoot.create(getSchema(table), allocator);
+             ArrowFileWriter writer = createWriter(root)) {
+            writer.start();
+            writeBatches(root, writer, table);
+            writer.end();
+        }
+    }
+
+
+    /**
+     * Writes each batch of rows to the destination as it arrives. The file's schema
+     * is taken from the first batch.
+     */
+    @Override
+    public void write(TableStream source, DataCollection auxData)
+            throws IOException, InterruptedException {
+        Table batch = source.next();
+        Table first = batch != null ? batch : Table.create();
+        try (BufferAllocator allocator = new RootAllocator();
+             VectorSchemaRoot root = VectorSchemaRoot.create(getSchema(first), allocator);
+             ArrowFileWriter writer = createWriter(root)) {
+            writer.start();
+            while (batch != null) {
+                checkCancelled();
+                writeBatches(root, writer, batch);
+                batch = source.next();
+            }
+            writer.end();
+        }
+    }
+
+
+    @Override
+    protected WriteOptions getWriteOptions() {                 // N/A
+        return null;
+    }
+
+
+    private ArrowFileWriter createWriter(VectorSchemaRoot root) throws IOException {
+        return new ArrowFileWriter(root, null,
+                Channels.newChannel(getDestinationAsOutputStream()), null,
+                IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE, getCompression());
+    }
+
+
+    // writes the table as one or more record batches of up to MAX_BATCH_ROWS rows
+    private void writeBatches(VectorSchemaRoot root, ArrowFileWriter writer, Table table)
+            throws IOException {
+        if (table.columnCount() != root.getFieldVectors().size()) {
+            throw new IOException("All batches must have the same columns");
+        }
+        for (int start = 0; start < table.rowCount(); start += MAX_BATCH_ROWS) {
+            int end = Math.min(table.rowCount(), start + MAX_BATCH_ROWS);
+            for (FieldVector vector : root.getFieldVectors()) {
+                vector.setInitialCapacity(end - start);
+            }
+            root.allocateNew();
+            for (int i = 0; i < table.columnCount(); i++) {
+                writeVector(table.column(i), root.getVector(i), start, end);
+            }
+            root.setRowCount(end - start);
+            writer.writeBatch();
+        }
+    }
+
+
+    private void writeVector(Column<?> column, FieldVector vector, int start, int end) {
+        ColumnType type = column.type();
+        for (int row = start; row < end; row++) {
+            int index = row - start;
+            if (column.isMissing(row)) {
+                setNull(vector, index);
+            }
+            else if (type.equals(ColumnType.BOOLEAN)) {
+                ((BitVector) vector).setSafe(index, ((BooleanColumn) column).get(row) ? 1 : 0);
+            }
+            else if (type.equals(ColumnType.SHORT)) {
+                ((SmallIntVector) vector).setSafe(index, ((ShortColumn) column).getShort(row));
+            }
+            else if (type.equals(ColumnType.INTEGER)) {
+                ((IntVector) vector).setSafe(index, ((IntColumn) column).getInt(row));
+            }
+            else if (type.equals(ColumnType.LONG)) {
+                ((BigIntVector) vector).setSafe(index, ((LongColumn) column).getLong(row));
+            }
+            else if (type.equals(ColumnType.FLOAT)) {
+                ((Float4Vector) vector).setSafe(index, ((FloatColumn) column).getFloat(row));
+            }
+            else if (type.equals(ColumnType.DOUBLE)) {
+                ((Float8Vector) vector).setSafe(index, ((DoubleColumn) column).getDouble(row));
+            }
+            else if (type.equals(ColumnType.LOCAL_DATE)) {
+                ((DateDayVector) vector).setSafe(index,
+                        (int) ((DateColumn) column).get(row).toEpochDay());
+            }
+            else if (type.equals(ColumnType.LOCAL_DATE_TIME)) {
+                ((TimeStampMicroVector) vector).setSafe(index, toMicros(
+                        ((DateTimeColumn) column).get(row).toInstant(ZoneOffset.UTC)));
+            }
+            else if (type.equals(ColumnType.LOCAL_TIME)) {
+                ((TimeMicroVector) vector).setSafe(index,
+                        ((TimeColumn) column).get(row).toNanoOfDay() / 1000);
+            }
+            else if (type.equals(ColumnType.INSTANT)) {
+                ((TimeStampMicroTZVector) vector).setSafe(index,
+                        toMicros(((InstantColumn) column).get(row)));
+            }
+            else {
+                ((VarCharVector) vector).setSafe(index,
+                        column.getUnformattedString(row).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+
+    private void setNull(FieldVector vector, int index) {
+        if (vector instanceof BaseFixedWidthVector) {
+            ((BaseFixedWidthVector) vector).setNull(index);
+        }
+        else if (vector instanceof BaseVariableWidthVector) {
+            ((BaseVariableWidthVector) vector).setNull(index);
+        }
+    }
+
+
+    private long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1000000L + instant.getNano() / 1000;
+    }
+
+
+    private Schema getSchema(Table table) {
+        List<Field> fields = new ArrayList<>();
+        for (Column<?> column : table.columns()) {
+            fields.add(Field.nullable(column.name(), arrowType(column.type())));
+        }
+        return new Schema(fields);
+    }
+
+
+    private ArrowType arrowType(ColumnType type) {
+        if (type.equals(ColumnType.BOOLEAN)) return ArrowType.Bool.INSTANCE;
+        if (type.equals(ColumnType.SHORT)) return new ArrowType.Int(16, true);
+        if (type.equals(ColumnType.INTEGER)) return new ArrowType.Int(32, true);
+        if (type.equals(ColumnType.LONG)) return new ArrowType.Int(64, true);
+        if (type.equals(ColumnType.FLOAT)) {
+            return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+        }
+        if (type.equals(ColumnType.DOUBLE)) {
+            return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+        }
+        if (type.equals(ColumnType.LOCAL_DATE)) return new ArrowType.Date(DateUnit.DAY);
+        if (type.equals(ColumnType.LOCAL_DATE_TIME)) {
+            return new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+        }
+        if (type.equals(ColumnType.LOCAL_TIME)) return new ArrowType.Time(TimeUnit.MICROSECOND, 64);
+        if (type.equals(ColumnType.INSTANT)) {
+            return new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+        }
+        return ArrowType.Utf8.INSTANCE;
+    }
+
+
+    private CompressionUtil.CodecType getCompression() {
+        String name = getOptions().get("Compression").asString().trim().toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "":
+            case "NONE": return CompressionUtil.CodecType.NO_COMPRESSION;
+            case "LZ4": return CompressionUtil.CodecType.LZ4_FRAME;
+            case "ZSTD": return CompressionUtil.CodecType.ZSTD;
+            default: throw new InvalidOptionValueException("Unknown compression: " + name +
+                    " (use LZ4, ZSTD or NONE)");
+        }
+    }
+
+}
@@ -17,8 +17,15 @@
 package com.processdataquality.praeclarus.writer;
 
 import com.processdataquality.praeclarus.annotations.Plugin;
+import com.processdataquality.praeclarus.util.DataCollection;
+import com.processdataquality.praeclarus.util.TableStream;
+import com.univocity.parsers.csv.CsvWriter;
+import com.univocity.parsers.csv.CsvWriterSettings;
+import tech.tablesaw.api.Table;
 import tech.tablesaw.io.csv.CsvWriteOptions;
 
+import java.io.IOException;
+
 /**
  * @author Michael Adams
  * @date 31/3/21
@@ -30,7 +37,7 @@ import tech.tablesaw.io.csv.CsvWriteOptions;
         synopsis = "Writes the log output to a CSV file.",
         fileDescriptors = "CSV Files;text/csv;.csv"
 )
-public class CsvDataWriter extends AbstractDataWriter {
+public class CsvDataWriter extends AbstractDataWriter implements StreamingDataWriter {
 
     public CsvDataWriter() {
         super();
@@ -38,6 +45,42 @@ public class CsvDataWriter extends AbstractDataWriter {
     }
 
 
+    /**
+     * Writes each batch of rows to the destination as it arrives
+     */
+    @Override
+    public void write(TableStream source, DataCollection auxData)
+            throws IOException, InterruptedException {
+        CsvWriteOptions options = getWriteOptions();
+        CsvWriterSettings settings = new CsvWriterSettings();
+        settings.getFormat().setDelimiter(options.separator());
+        settings.getFormat().setQuote(options.quoteChar());
+        settings.getFormat().setLineSeparator(options.lineEnd());
+        CsvWriter writer = new CsvWriter(getDestinationAsWriter(), settings);
+        try {
+            boolean first = true;
+            Table batch;
+            while ((batch = source.next()) != null) {
+                checkCancelled();
+                if (first && options.header()) {
+                    writer.writeHeaders(batch.columnNames());
+                }
+                first = false;
+                String[] entries = new String[batch.columnCount()];
+                for (int row = 0; row < batch.rowCount(); row++) {
+                    for (int col = 0; col < entries.length; col++) {
+                        entries[col] = batch.column(col).getUnformattedString(row);
+                    }
+                    writer.writeRow(entries);
+                }
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+
     private void addDefaultOptions() {
         getOptions().addDefault("Header", true);
         getOptions().addDefault("Separator", ',');
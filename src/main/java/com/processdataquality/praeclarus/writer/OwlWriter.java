@@ -26,6 +26,7 @@ import tech.tablesaw.api.Table;
 import tech.tablesaw.io.WriteOptions;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * @author Michael Adams
@@ -56,10 +57,9 @@ public class OwlWriter extends AbstractDataWriter {
         if (o instanceof OWLOntology) {
             OWLOntology ontology = (OWLOntology) o;
 
-            try {
+            try (OutputStream out = getDestinationAsOutputStream()) {
                 OWLManager.createOWLOntologyManager().saveOntology(ontology,
-                        new FunctionalSyntaxDocumentFormat(),
-                        getDestinationAsOutputStream());
+                        new FunctionalSyntaxDocumentFormat(), out);
             }
             catch (OWLOntologyStorageException e) {
                 throw new IOException(e.getMessage(), e.getCause());
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.writer;
+
+import com.processdataquality.praeclarus.annotations.Plugin;
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.processdataquality.praeclarus.util.DataCollection;
+import com.processdataquality.praeclarus.util.ParquetFiles;
+import com.processdataquality.praeclarus.util.TableStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.LogicalTypeAnnotation.TimeUnit;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+import tech.tablesaw.api.*;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.io.WriteOptions;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Writes a table to a Parquet file, with a column per table column in the nearest
+ * Parquet type. Row groups carry the min/max statistics a Parquet reader uses to skip
+ * them. Date-times are written as microsecond timestamps, not adjusted to UTC.
+ *
+ * @author Michael Adams
+ * @date 24/8/2022
+ */
+@Plugin(
+        name = "Parquet Writer",
+        author = "Michael Adams",
+        version = "1.0",
+        synopsis = "Writes the log output to a Parquet file.",
+        fileDescriptors = "Parquet Files;application/vnd.apache.parquet;.parquet"
+)
+public class ParquetDataWriter extends AbstractDataWriter implements StreamingDataWriter {
+
+    public ParquetDataWriter() {
+        super();
+        getOptions().addDefault("Compression", "SNAPPY");      // or GZIP, ZSTD, NONE
+        getOptions().addDefault("Row Group MB", 128);
+    }
+
+
+    @Override
+    public void write(Table table, DataCollection auxData) throws IOException {
+        TableWriteSupport support = new TableWriteSupport(table);
+        try (ParquetWriter<Integer> writer = createWriter(support)) {
+            writeRows(writer, support, table);
+        }
+    }
+
+
+    /**
+     * Writes each batch of rows to the destination as it arrives. The file's schema
+     * is taken from the first batch.
+     */
+    @Override
+    public void write(TableStream source, DataCollection auxData)
+            throws IOException, InterruptedException {
+        Table batch = source.next();
+        TableWriteSupport support = new TableWriteSupport(
+                batch != null ? batch : Table.create());
+        try (ParquetWriter<Integer> writer = createWriter(support)) {
+            while (batch != null) {
+                checkCancelled();
+                writeRows(writer, support, batch);
+                batch = source.next();
+            }
+        }
+    }
+
+
+    @Override
+    protected WriteOptions getWriteOptions() {                 // N/A
+        return null;
+    }
+
+
+    private ParquetWriter<Integer> createWriter(TableWriteSupport support)
+            throws IOException {
+        return new Builder(new ParquetFiles.StreamOutputFile(getDestinationAsOutputStream()),
+                support)
+                .withCompressionCodec(getCompression())
+                .withRowGroupSize(Math.max(1, getOptions().get("Row Group MB").asInt())
+                        * 1024L * 1024L)
+                .build();
+    }
+
+
+    private void writeRows(ParquetWriter<Integer> writer, TableWriteSupport support,
+                           Table table) throws IOException {
+        support.setTable(table);
+        for (int row = 0; row < table.rowCount(); row++) {
+            writer.write(row);
+        }
+    }
+
+
+    private CompressionCodecName getCompression() {
+        String name = getOptions().get("Compression").asString().trim().toUpperCase(Locale.ROOT);
+        if (name.isEmpty() || name.equals("NONE")) {
+            return CompressionCodecName.UNCOMPRESSED;
+        }
+        try {
+            return CompressionCodecName.valueOf(name);
+        }
+        catch (IllegalArgumentException e) {
+            throw new InvalidOptionValueException("Unknown compression: " + name +
+                    " (use SNAPPY, GZIP, ZSTD or NONE)");
+        }
+    }
+
+
+    private static class Builder extends ParquetWriter.Builder<Integer, Builder> {
+
+        private final TableWriteSupport _support;
+
+        Builder(OutputFile file, TableWriteSupport support) {
+            super(file);
+            _support = support;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<Integer> getWriteSupport(Configuration conf) {
+            return _support;
+        }
+    }
+
+
+    // writes a row of the current table, given its index, as a Parquet record
+    private static class TableWriteSupport extends WriteSupport<Integer> {
+
+        private final MessageType _schema;
+        private final ColumnType[] _types;
+        private Table _table;
+        private RecordConsumer _consumer;
+
+        TableWriteSupport(Table table) {
+            _types = new ColumnType[table.columnCount()];
+            Types.MessageTypeBuilder builder = Types.buildMessage();
+            for (int i = 0; i < _types.length; i++) {
+                Column<?> column = table.column(i);
+                _types[i] = column.type();
+                addField(builder, column.name(), _types[i]);
+            }
+            _schema = builder.named(table.name() != null && ! table.name().isEmpty() ?
+                    table.name().replaceAll("\\W", "_") : "table");
+        }
+
+
+        void setTable(Table table) {
+            if (table.columnCount() != _types.length) {
+                throw new IllegalArgumentException("All batches must have the same columns");
+            }
+            _table = table;
+        }
+
+
+        @Override
+        public WriteContext init(Configuration configuration) {
+            return new WriteContext(_schema, new HashMap<>());
+        }
+
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            _consumer = recordConsumer;
+        }
+
+
+        @Override
+        public void write(Integer row) {
+            _consumer.startMessage();
+            for (int i = 0; i < _types.length; i++) {
+                Column<?> column = _table.column(i);
+                if (! column.isMissing(row)) {
+                    String name = _schema.getFieldName(i);
+                    _consumer.startField(name, i);
+                    writeValue(column, _types[i], row);
+                    _consumer.endField(name, i);
+                }
+            }
+            _consumer.endMessage();
+        }
+
+
+        private void writeValue(Column<?> column, ColumnType type, int row) {
+            if (type.equals(ColumnType.BOOLEAN)) {
+                _consumer.addBoolean(((BooleanColumn) column).get(row));
+            }
+            else if (type.equals(ColumnType.SHORT)) {
+                _consumer.addInteger(((ShortColumn) column).getShort(row));
+            }
+            else if (type.equals(ColumnType.INTEGER)) {
+                _consumer.addInteger(((IntColumn) column).getInt(row));
+            }
+            else if (type.equals(ColumnType.LONG)) {
+                _consumer.addLong(((LongColumn) column).getLong(row));
+            }
+            else if (type.equals(ColumnType.FLOAT)) {
+                _consumer.addFloat(((FloatColumn) column).getFloat(row));
+            }
+            else if (type.equals(ColumnType.DOUBLE)) {
+                _consumer.addDouble(((DoubleColumn) column).getDouble(row));
+            }
+            else if (type.equals(ColumnType.LOCAL_DATE)) {
+                _consumer.addInteger((int) ((DateColumn) column).get(row).toEpochDay());
+            }
+            else if (type.equals(ColumnType.LOCAL_DATE_TIME)) {
+                LocalDateTime value = ((DateTimeColumn) column).get(row);
+                _consumer.addLong(toMicros(value.toInstant(ZoneOffset.UTC)));
+            }
+            else if (type.equals(ColumnType.LOCAL_TIME)) {
+                _consumer.addLong(((TimeColumn) column).get(row).toNanoOfDay() / 1000);
+            }
+            else if (type.equals(ColumnType.INSTANT)) {
+                _consumer.addLong(toMicros(((InstantColumn) column).get(row)));
+            }
+            else {
+                _consumer.addBinary(Binary.fromString(column.getUnformattedString(row)));
+            }
+        }
+
+
+        private long toMicros(Instant instant) {
+            return instant.getEpochSecond() * 1000000L + instant.getNano() / 1000;
+        }
+
+
+        private void addField(Types.MessageTypeBuilder builder, String name, ColumnType type) {
+            if (type.equals(ColumnType.BOOLEAN)) {
+                builder.optional(PrimitiveTypeName.BOOLEAN).named(name);
+            }
+            else if (type.equals(ColumnType.SHORT)) {
+                builder.optional(PrimitiveTypeName.INT32)
+                        .as(LogicalTypeAnnotation.intType(16, true)).named(name);
+            }
+            else if (type.equals(ColumnType.INTEGER)) {
+                builder.optional(PrimitiveTypeName.INT32).named(name);
+            }
+            else if (type.equals(ColumnType.LONG)) {
+                builder.optional(PrimitiveTypeName.INT64).named(name);
+            }
+            else if (type.equals(ColumnType.FLOAT)) {
+                builder.optional(PrimitiveTypeName.FLOAT).named(name);
+            }
+            else if (type.equals(ColumnType.DOUBLE)) {
+                builder.optional(PrimitiveTypeName.DOUBLE).named(name);
+            }
+            else if (type.equals(ColumnType.LOCAL_DATE)) {
+                builder.optional(PrimitiveTypeName.INT32)
+                        .as(LogicalTypeAnnotation.dateType()).named(name);
+            }
+            else if (type.equals(ColumnType.LOCAL_DATE_TIME)) {
+                builder.optional(PrimitiveTypeName.INT64)
+                        .as(LogicalTypeAnnotation.timestampType(false, TimeUnit.MICROS))
+                        .named(name);
+            }
+            else if (type.equals(ColumnType.LOCAL_TIME)) {
+                builder.optional(PrimitiveTypeName.INT64)
+                        .as(LogicalTypeAnnotation.timeType(false, TimeUnit.MICROS))
+                        .named(name);
+            }
+            else if (type.equals(ColumnType.INSTANT)) {
+                builder.optional(PrimitiveTypeName.INT64)
+                        .as(LogicalTypeAnnotation.timestampType(true, TimeUnit.MICROS))
+                        .named(name);
+            }
+            else {
+                builder.optional(PrimitiveTypeName.BINARY)
+                        .as(LogicalTypeAnnotation.stringType()).named(name);
+            }
+        }
+    }
+
+}
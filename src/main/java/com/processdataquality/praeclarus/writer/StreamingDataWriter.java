@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.writer;
+
+import com.processdataquality.praeclarus.util.DataCollection;
+import com.processdataquality.praeclarus.util.TableStream;
+
+import java.io.IOException;
+
+/**
+ * A writer that can consume its input as a stream of row batches, writing each
+ * batch as it arrives.
+ *
+ * @author Michael Adams
+ * @date 2/8/2022
+ */
+public interface StreamingDataWriter extends DataWriter {
+
+    /**
+     * Writes each batch of a stream to the sink, until the end of the stream
+     * @param source the stream of batches to write
+     * @param auxData any auxiliary datasets from prior plugins
+     * @throws IOException if anything goes wrong writing, or the stream's producer fails
+     * @throws InterruptedException if interrupted while waiting on the stream
+     */
+    void write(TableStream source, DataCollection auxData)
+            throws IOException, InterruptedException;
+
+}
@@ -19,20 +19,20 @@ package com.processdataquality.praeclarus.writer;
 import com.processdataquality.praeclarus.annotations.Plugin;
 import com.processdataquality.praeclarus.exception.InvalidOptionException;
 import com.processdataquality.praeclarus.util.DataCollection;
+import com.processdataquality.praeclarus.util.TableStream;
 import org.apache.commons.lang3.math.NumberUtils;
+import org.deckfour.xes.classification.XEventClassifier;
 import org.deckfour.xes.classification.XEventLifeTransClassifier;
 import org.deckfour.xes.classification.XEventNameClassifier;
 import org.deckfour.xes.classification.XEventResourceClassifier;
+import org.deckfour.xes.extension.XExtension;
 import org.deckfour.xes.extension.std.XConceptExtension;
 import org.deckfour.xes.extension.std.XLifecycleExtension;
 import org.deckfour.xes.extension.std.XOrganizationalExtension;
 import org.deckfour.xes.extension.std.XTimeExtension;
 import org.deckfour.xes.factory.XFactory;
 import org.deckfour.xes.factory.XFactoryNaiveImpl;
-import org.deckfour.xes.model.XAttribute;
-import org.deckfour.xes.model.XEvent;
-import org.deckfour.xes.model.XLog;
-import org.deckfour.xes.model.XTrace;
+import org.deckfour.xes.model.*;
 import org.deckfour.xes.model.impl.*;
 import org.deckfour.xes.out.XesXmlSerializer;
 import tech.tablesaw.api.ColumnType;
@@ -46,13 +46,16 @@ import tech.tablesaw.columns.numbers.LongColumnType;
 import tech.tablesaw.columns.strings.StringColumnType;
 import tech.tablesaw.io.WriteOptions;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
 
 /**
  * @author Michael Adams
@@ -65,7 +68,10 @@ import java.util.Map;
         synopsis = "Writes the log output to an XES file.",
         fileDescriptors = "XES Files;text/xml;.xes"
 )
-public class XesDataWriter extends AbstractDataWriter {
+public class XesDataWriter extends AbstractDataWriter implements StreamingDataWriter {
+
+    private static final DateTimeFormatter XES_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
 
     public XesDataWriter() {
         super();
@@ -79,6 +85,67 @@ public class XesDataWriter extends AbstractDataWriter {
     }
 
 
+    /**
+     * Writes each batch of rows to the destination as XES as it arrives, so that the
+     * log as a whole is never held in memory. Rows for each case are expected to be
+     * contiguous, as they are for the non-streamed write.
+     */
+    @Override
+    public void write(TableStream source, DataCollection auxData)
+            throws IOException, InterruptedException {
+        Map<String, String> colNames = mapColNames();
+        OutputStream out = getDestinationAsOutputStream();
+        XMLStreamWriter xml = null;
+        try {
+            xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            XFactory xFactory = new XFactoryNaiveImpl();
+            String currentCaseId = null;
+            boolean first = true;
+            Table batch;
+            while ((batch = source.next()) != null) {
+                checkCancelled();
+                if (first) {
+                    checkColumnNamesInTable(batch, colNames);
+                    writeLogHeader(xml, batch.name());
+                    first = false;
+                }
+                for (int i=0; i<batch.rowCount(); i++) {
+                    Row row = batch.row(i);
+                    String caseId = row.getString("case:id");
+
+                    // start a new trace on case id change
+                    if (currentCaseId == null || !currentCaseId.equals(caseId)) {
+                        if (currentCaseId != null) {
+                            xml.writeEndElement();                        // trace
+                        }
+                        xml.writeStartElement("trace");
+                        writeAttribute(xml, new XAttributeLiteralImpl(
+                                XConceptExtension.KEY_NAME, caseId));
+                        currentCaseId = caseId;
+                    }
+                    XEvent xEvent = parseRow(xFactory.createEvent(), batch.columns(), row);
+                    xml.writeStartElement("event");
+                    for (XAttribute attribute : xEvent.getAttributes().values()) {
+                        writeAttribute(xml, attribute);
+                    }
+                    xml.writeEndElement();                                // event
+                }
+            }
+            if (first) {
+                writeLogHeader(xml, null);                     // empty stream
+            }
+            xml.writeEndDocument();
+            xml.flush();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Failed to write XES: " + e.getMessage(), e);
+        }
+        finally {
+            close(xml, out);
+        }
+    }
+
+
     public void addDefaultOptions() {
         getOptions().addDefault("Case ID column", "case:id");
         getOptions().addDefault("Name column", "concept:name");
@@ -294,9 +361,91 @@ public class XesDataWriter extends AbstractDataWriter {
     }
 
 
+    // writes the log element with the same extensions, globals and classifiers as
+    // the non-streamed write, leaving the log element open for traces to follow
+    private void writeLogHeader(XMLStreamWriter xml, String tableName)
+            throws XMLStreamException {
+        XLog xLog = new XFactoryNaiveImpl().createLog();
+        addExtensions(xLog, tableName);
+        addGlobals(xLog);
+
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeStartElement("log");
+        xml.writeAttribute("xes.version", "1.0");
+        xml.writeAttribute("xes.features", "nested-attributes");
+        for (XExtension extension : xLog.getExtensions()) {
+            xml.writeEmptyElement("extension");
+            xml.writeAttribute("name", extension.getName());
+            xml.writeAttribute("prefix", extension.getPrefix());
+            xml.writeAttribute("uri", extension.getUri().toString());
+        }
+        writeGlobals(xml, "trace", xLog.getGlobalTraceAttributes());
+        writeGlobals(xml, "event", xLog.getGlobalEventAttributes());
+        for (XEventClassifier classifier : xLog.getClassifiers()) {
+            xml.writeEmptyElement("classifier");
+            xml.writeAttribute("name", classifier.name());
+            xml.writeAttribute("keys", String.join(" ",
+                    classifier.getDefiningAttributeKeys()));
+        }
+        for (XAttribute attribute : xLog.getAttributes().values()) {
+            writeAttribute(xml, attribute);
+        }
+    }
+
+
+    private void writeGlobals(XMLStreamWriter xml, String scope, List<XAttribute> globals)
+            throws XMLStreamException {
+        xml.writeStartElement("global");
+        xml.writeAttribute("scope", scope);
+        for (XAttribute attribute : globals) {
+            writeAttribute(xml, attribute);
+        }
+        xml.writeEndElement();
+    }
+
+
+    private void writeAttribute(XMLStreamWriter xml, XAttribute attribute)
+            throws XMLStreamException {
+        String tag;
+        String value;
+        if (attribute instanceof XAttributeTimestamp) {
+            Date date = ((XAttributeTimestamp) attribute).getValue();
+            if (date == null) return;
+            tag = "date";
+            value = XES_DATE_FORMAT.format(date.toInstant().atZone(ZoneId.systemDefault()));
+        }
+        else {
+            if (attribute instanceof XAttributeDiscrete) tag = "int";
+            else if (attribute instanceof XAttributeContinuous) tag = "float";
+            else if (attribute instanceof XAttributeBoolean) tag = "boolean";
+            else tag = "string";
+            value = attribute.toString();
+            if (value == null) return;
+        }
+        xml.writeEmptyElement(tag);
+        xml.writeAttribute("key", attribute.getKey());
+        xml.writeAttribute("value", value);
+    }
+
+
+    private void close(XMLStreamWriter xml, OutputStream out) throws IOException {
+        if (xml != null) {
+            try {
+                xml.close();
+            }
+            catch (XMLStreamException e) {
+                // nothing further to do
+            }
+        }
+        out.close();
+    }
+
+
     private void write(XLog xLog) throws IOException {
         XesXmlSerializer serializer = new XesXmlSerializer();
-        serializer.serialize(xLog, getDestinationAsOutputStream());
+        try (OutputStream out = getDestinationAsOutputStream()) {
+            serializer.serialize(xLog, out);
+        }
     }
     
 }
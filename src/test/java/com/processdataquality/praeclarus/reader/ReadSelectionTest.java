@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.processdataquality.praeclarus.option.Options;
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.columns.AbstractColumnParser;
+import tech.tablesaw.io.Source;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import java.time.LocalDateTime;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that row filters treat raw and typed values of the filter column alike.
+ *
+ * @author Michael Adams
+ * @date 28/8/2022
+ */
+class ReadSelectionTest {
+
+    @Test
+    void filtersRawAndTypedStringsByPrefix() {
+        ReadSelection selection = selection("activity", "", "", "app");
+        Predicate<String> raw = selection.valueFilter(parser(ColumnType.STRING));
+        Predicate<Object> typed = selection.typedFilter(ColumnType.STRING);
+        for (String value : new String[] { "approve", "apply", "reject", "" }) {
+            assertEquals(value.startsWith("app"), raw.test(value), value);
+            assertEquals(value.startsWith("app"), typed.test(value), value);
+        }
+    }
+
+
+    @Test
+    void filtersRawAndTypedDateTimesByRange() {
+        ReadSelection selection = selection("time", "2022-01-01 10:00:00",
+                "2022-01-01 12:00:00", "");
+        Predicate<String> raw = selection.valueFilter(parser(ColumnType.LOCAL_DATE_TIME));
+        Predicate<Object> typed = selection.typedFilter(ColumnType.LOCAL_DATE_TIME);
+        assertTrue(raw.test("2022-01-01 11:30:00"));
+        assertTrue(typed.test(LocalDateTime.of(2022, 1, 1, 11, 30)));
+        assertFalse(raw.test("2022-01-01 12:30:00"));
+        assertFalse(typed.test(LocalDateTime.of(2022, 1, 1, 12, 30)));
+    }
+
+
+    @Test
+    void rejectsPrefixOnColumnsOtherThanStrings() {
+        ReadSelection selection = selection("time", "", "", "2022-01-01 10");
+        assertThrows(InvalidOptionValueException.class,
+                () -> selection.valueFilter(parser(ColumnType.LOCAL_DATE_TIME)));
+        assertThrows(InvalidOptionValueException.class,
+                () -> selection.typedFilter(ColumnType.LOCAL_DATE_TIME));
+        assertThrows(InvalidOptionValueException.class,
+                () -> selection.typedFilter(ColumnType.INTEGER));
+    }
+
+
+    private ReadSelection selection(String column, String from, String to, String prefix) {
+        Options options = new Options();
+        ReadSelection.addDefaults(options);
+        options.get(ReadSelection.FILTER_COLUMN).setValue(column);
+        options.get(ReadSelection.FILTER_FROM).setValue(from);
+        options.get(ReadSelection.FILTER_TO).setValue(to);
+        options.get(ReadSelection.FILTER_PREFIX).setValue(prefix);
+        return new ReadSelection(options);
+    }
+
+
+    private AbstractColumnParser<?> parser(ColumnType type) {
+        return type.customParser(CsvReadOptions.builder(Source.fromString("")).build());
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.reader;
+
+import com.processdataquality.praeclarus.exception.InvalidOptionValueException;
+import com.processdataquality.praeclarus.util.TableStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.Table;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads from an in-memory H2 database, to check that column selections and row
+ * filters are pushed down into the query, and that streamed reads arrive in batches.
+ *
+ * @author Michael Adams
+ * @date 27/8/2022
+ */
+class SqlDataReaderTest {
+
+    private static final String URL = "jdbc:h2:mem:sql_reader_test;DB_CLOSE_DELAY=-1";
+    private static final int ROWS = 25;
+
+    private static Connection connection;       // keeps the in-memory database alive
+
+
+    @BeforeAll
+    static void createTable() throws Exception {
+        connection = DriverManager.getConnection(URL, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE EVENTS (ID INT PRIMARY KEY, " +
+                    "CASE_ID VARCHAR(20), ACTIVITY VARCHAR(20), AMOUNT INT)");
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO EVENTS VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= ROWS; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, "case" + (i % 5));
+                insert.setString(3, i % 2 == 1 ? "approve" : "reject");
+                insert.setInt(4, i * 10);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+
+    @AfterAll
+    static void dropTable() throws Exception {
+        new SqlDataSources(4, 60).shutdown();           // closes the readers' pools
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE EVENTS");
+        }
+        connection.close();
+    }
+
+
+    @Test
+    void readsWholeTable() throws Exception {
+        Table table = newReader().read();
+        assertEquals(ROWS, table.rowCount());
+        assertEquals(List.of("ID", "CASE_ID", "ACTIVITY", "AMOUNT"), table.columnNames());
+    }
+
+
+    @Test
+    void loadsOnlySelectedColumns() throws Exception {
+        SqlDataReader reader = newReader();
+        set(reader, ReadSelection.COLUMNS, "ACTIVITY,\nID");
+        Table table = reader.read();
+        assertEquals(ROWS, table.rowCount());
+        assertEquals(List.of("ACTIVITY", "ID"), table.columnNames());
+    }
+
+
+    @Test
+    void pushesWhereClauseIntoQuery() throws Exception {
+        SqlDataReader reader = newReader();
+        set(reader, "Where", "AMOUNT > 200 AND ACTIVITY = 'approve'");
+        Table table = reader.read();
+        assertEquals(List.of(21, 23, 25), ids(table));
+    }
+
+
+    @Test
+    void filtersOnRangeOfUnselectedColumn() throws Exception {
+        SqlDataReader reader = newReader();
+        set(reader, ReadSelection.COLUMNS, "ID");
+        set(reader, ReadSelection.FILTER_COLUMN, "AMOUNT");
+        set(reader, ReadSelection.FILTER_FROM, "50");
+        set(reader, ReadSelection.FILTER_TO, "100");
+        Table table = reader.read();
+
+        // the filter column is queried, but dropped from the loaded table
+        assertEquals(List.of("ID"), table.columnNames());
+        assertEquals(List.of(5, 6, 7, 8, 9, 10), ids(table));
+    }
+
+
+    @Test
+    void combinesWhereClauseAndPrefixFilter() throws Exception {
+        SqlDataReader reader = newReader();
+        set(reader, "Where", "ID <= 10");
+        set(reader, ReadSelection.FILTER_COLUMN, "ACTIVITY");
+        set(reader, ReadSelection.FILTER_PREFIX, "app");
+        Table table = reader.read();
+        assertEquals(List.of(1, 3, 5, 7, 9), ids(table));
+        assertTrue(table.stringColumn("ACTIVITY").asList().stream()
+                .allMatch("approve"::equals));
+    }
+
+
+    @Test
+    void rejectsFilterValueOfWrongType() {
+        SqlDataReader reader = newReader();
+        set(reader, ReadSelection.FILTER_COLUMN, "AMOUNT");
+        set(reader, ReadSelection.FILTER_FROM, "lots");
+        assertThrows(InvalidOptionValueException.class, reader::read);
+    }
+
+
+    @Test
+    void streamsRowsInBatches() throws Exception {
+        SqlDataReader reader = newReader();
+        set(reader, "Fetch Size", 4);
+        set(reader, ReadSelection.COLUMNS, "ID");
+        TableStream stream = new TableStream(1);     // producer waits on the consumer
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = executor.submit(() -> {
+                try {
+                    reader.read(10, stream);
+                }
+                catch (Exception e) {
+                    stream.fail(e);                  // don't leave the consumer waiting
+                    throw e;
+                }
+                return null;
+            });
+
+            List<Integer> batchSizes = new ArrayList<>();
+            List<Integer> ids = new ArrayList<>();
+            Table batch;
+            while ((batch = stream.next()) != null) {
+                assertEquals(List.of("ID"), batch.columnNames());
+                batchSizes.add(batch.rowCount());
+                ids.addAll(ids(batch));
+            }
+            producer.get(30, TimeUnit.SECONDS);
+
+            assertEquals(List.of(10, 10, 5), batchSizes);
+            assertEquals(ROWS, stream.getRowCount());
+            Collections.sort(ids);
+            assertEquals(ROWS, ids.stream().distinct().count());
+            assertEquals(1, (int) ids.get(0));
+            assertEquals(ROWS, (int) ids.get(ROWS - 1));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private SqlDataReader newReader() {
+        SqlDataReader reader = new SqlDataReader();
+        set(reader, "DB URL", URL);
+        set(reader, "Driver Class", "org.h2.Driver");
+        set(reader, "User Name", "sa");
+        set(reader, "Password", "");
+        set(reader, "Table Name", "EVENTS");
+        return reader;
+    }
+
+
+    // sorted, since the queries don't specify an order
+    private List<Integer> ids(Table table) {
+        List<Integer> ids = new ArrayList<>(table.intColumn("ID").asList());
+        Collections.sort(ids);
+        return ids;
+    }
+
+
+    private void set(SqlDataReader reader, String key, Object value) {
+        reader.getOptions().get(key).setValue(value);
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2022 Queensland University of Technology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.processdataquality.praeclarus.repo;
+
+import com.processdataquality.praeclarus.graph.Graph;
+import com.processdataquality.praeclarus.repo.graph.GraphRepository;
+import com.processdataquality.praeclarus.repo.graph.GraphStore;
+import com.processdataquality.praeclarus.repo.store.TableStores;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs maintenance over a repo in a temporary directory, to check that the commits
+ * it retains can still be read by the ids they had before their history was
+ * rewritten, and that the space held by the commits it drops is reclaimed.
+ *
+ * @author Michael Adams
+ * @date 27/8/2022
+ */
+class RepoMaintenanceTest {
+
+    private static final String TABLE = "log";
+    private static final int VERSIONS = 5;
+    private static final int KEEP_PER_TABLE = 2;
+
+    @TempDir
+    static Path dir;
+
+    private static final List<Graph> workflows = new ArrayList<>();
+
+
+    @BeforeAll
+    static void setUp() {
+        new RepoShards("none", dir.resolve("repo").toString(),
+                dir.resolve("shards").toString());
+        GraphRepository graphs = mock(GraphRepository.class);
+        when(graphs.findAll()).thenReturn(workflows);
+        new GraphStore(graphs);
+    }
+
+
+    @Test
+    void retainedCommitsResolveAfterRewrite() throws Exception {
+        List<String> commitIDs = new ArrayList<>();
+        for (int version = 1; version <= VERSIONS; version++) {
+            commitIDs.add(Repo.commit(version(TABLE, version), "v" + version, "tester"));
+        }
+
+        // the first version is held by a stored workflow, the last two by the policy
+        workflows.add(workflowReferencing(commitIDs.get(0)));
+        Set<String> retained = new HashSet<>(List.of(commitIDs.get(0),
+                commitIDs.get(VERSIONS - 2), commitIDs.get(VERSIONS - 1)));
+
+        Map<String, String> objectIDs = new HashMap<>();
+        for (String commitID : retained) {
+            objectIDs.put(commitID, Repo.getObjectID(commitID, TABLE));
+        }
+
+        // keep-days of 0 retains only commits made in the current second
+        Thread.sleep(1100);
+        new RepoMaintenance(KEEP_PER_TABLE, 0, new SimpleMeterRegistry()).run();
+        TableCache.clear();                  // so reads go to the rewritten history
+
+        for (int i = 0; i < VERSIONS; i++) {
+            String commitID = commitIDs.get(i);
+            if (retained.contains(commitID)) {
+                Table table = Repo.getTable(commitID, TABLE);
+                assertNotNull(table, "commit of v" + (i + 1) + " should resolve");
+                assertEquals(String.valueOf(i + 1), table.column("version").getString(0));
+                assertEquals(i + 1, table.rowCount());
+                assertEquals(objectIDs.get(commitID), Repo.getObjectID(commitID, TABLE));
+            }
+        }
+
+        // the middle versions were dropped, and the rewritten commits keep their messages
+        List<String> messages = new ArrayList<>();
+        for (LogEntry entry : Repo.getFullLog()) {
+            if (entry.getMessage().startsWith("v")) {     // skip the other test's commits
+                messages.add(entry.getMessage());
+            }
+        }
+        Collections.sort(messages);
+        assertEquals(List.of("v1", "v4", "v5"), messages);
+    }
+
+
+    @Test
+    void droppedReaderRunsAreReclaimed() throws Exception {
+
+        // each run of a reader node writes its output under a new table name
+        String message = "Node: " + UUID.randomUUID() +
+                "; Plugin: Reader; Plugin Class: TestReader";
+        List<String> commitIDs = new ArrayList<>();
+        List<String> tableNames = new ArrayList<>();
+        List<String> objectIDs = new ArrayList<>();
+        for (int run = 1; run <= VERSIONS; run++) {
+            String tableName = UUID.randomUUID().toString();
+            String commitID = Repo.commit(version(tableName, run * 100), message, "tester");
+            commitIDs.add(commitID);
+            tableNames.add(tableName);
+            objectIDs.add(Repo.getObjectID(commitID, tableName));
+        }
+
+        Thread.sleep(1100);
+        long reclaimed = new RepoMaintenance(KEEP_PER_TABLE, 0,
+                new SimpleMeterRegistry()).run();
+        TableCache.clear();
+        assertTrue(reclaimed > 0, "maintenance should reclaim space");
+
+        // the runs before the last two are gone from the work tree and the object store
+        RepoShard shard = RepoShards.all().get(0);
+        ObjectDatabase objects = shard.getRepository().getObjectDatabase();
+        for (int i = 0; i < VERSIONS; i++) {
+            boolean kept = i >= VERSIONS - KEEP_PER_TABLE;
+            String fileName = tableNames.get(i) + TableStores.current().getExtension();
+            assertEquals(kept, new File(shard.getDirectory(), fileName).exists(),
+                    "work tree file of run " + (i + 1));
+            assertEquals(kept, objects.has(ObjectId.fromString(objectIDs.get(i))),
+                    "stored table of run " + (i + 1));
+            if (kept) {
+                Table table = Repo.getTable(commitIDs.get(i), tableNames.get(i));
+                assertEquals((i + 1) * 100, table.rowCount());
+            }
+        }
+    }
+
+
+    // a table whose rows differ in number and content for each version
+    private Table version(String name, int version) {
+        int[] versions = new int[version];
+        String[] activities = new String[version];
+        for (int i = 0; i < version; i++) {
+            versions[i] = version;
+            activities[i] = "activity" + i;
+        }
+        return Table.create(name, IntColumn.create("version", versions),
+                StringColumn.create("activity", activities));
+    }
+
+
+    private Graph workflowReferencing(String commitID) {
+        Graph graph = mock(Graph.class);
+        when(graph.getUserContent()).thenReturn(
+                "{\"nodes\":[{\"commitID\":\"" + commitID + "\"}]}");
+        return graph;
+    }
+
+}